@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares two JMH result files, written with -rf json, to spot regressions.
+ *
+ * Usage: java -cp benchmarks.jar benchmarks.CompareResults baseline.json
+ *        current.json [threshold percentage, default 10]
+ *
+ * Prints the change of every benchmark found in both files. A benchmark has
+ * regressed if it got slower by more than the threshold, and by more than
+ * the error margins of both measurements. Exits with status 1 if any
+ * benchmark regressed, so it can be used in a build.
+ */
+public final class CompareResults {
+	private static final double DEFAULT_THRESHOLD = 10;
+
+	private CompareResults() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: CompareResults baseline.json current.json " +
+							"[threshold %]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) :
+						DEFAULT_THRESHOLD;
+		Map<String, JSONObject> baseline = read(args[0]);
+		Map<String, JSONObject> current = read(args[1]);
+
+		int regressions = 0;
+		for (Map.Entry<String, JSONObject> entry : current.entrySet()) {
+			JSONObject before = baseline.get(entry.getKey());
+			if (null == before) {
+				System.out.println(String.format("%-70s       new", entry.getKey()));
+				continue;
+			}
+			JSONObject after = entry.getValue();
+			// positive change is slower, for both time and throughput modes
+			double change = slowdown(before, after);
+			double margin = error(before) + error(after);
+			boolean regressed = change > threshold && change > margin;
+			if (regressed) {
+				regressions++;
+			}
+			System.out.println(String.format("%-70s %+8.1f%%%s", entry.getKey(),
+							change, regressed ? "  REGRESSION" : ""));
+		}
+		System.out.println(regressions + " regression(s) above " + threshold + "%");
+		System.exit(0 == regressions ? 0 : 1);
+	}
+
+	/**
+	 * Reads a JMH result file.
+	 *
+	 * @param fileName
+	 *      JSON result file.
+	 * @return
+	 *      Results by benchmark name and parameters.
+	 */
+	private static Map<String, JSONObject> read(String fileName) throws IOException {
+		String json = new String(Files.readAllBytes(Paths.get(fileName)),
+						StandardCharsets.UTF_8);
+		Map<String, JSONObject> results = new TreeMap<>();
+		for (Object result : new JSONArray(json)) {
+			JSONObject r = (JSONObject) result;
+			StringBuilder key = new StringBuilder(r.getString("benchmark"));
+			JSONObject params = r.optJSONObject("params");
+			if (null != params) {
+				new TreeMap<>(params.toMap()).forEach((name, value) ->
+								key.append(' ').append(name).append('=').append(value));
+			}
+			results.put(key.toString(), r);
+		}
+		return results;
+	}
+
+	/**
+	 * @return
+	 *      How much slower the benchmark got, in percent, negative if faster.
+	 */
+	private static double slowdown(JSONObject before, JSONObject after) {
+		double b = score(before);
+		double a = score(after);
+		if ("thrpt".equals(after.getString("mode"))) {
+			return (b / a - 1) * 100;
+		}
+		return (a / b - 1) * 100;
+	}
+
+	/**
+	 * @return
+	 *      Error margin of the measurement, in percent of the score.
+	 */
+	private static double error(JSONObject result) {
+		double error = result.getJSONObject("primaryMetric").optDouble("scoreError");
+		return Double.isNaN(error) ? 0 : error / score(result) * 100;
+	}
+
+	private static double score(JSONObject result) {
+		return result.getJSONObject("primaryMetric").getDouble("score");
+	}
+}
@@ -0,0 +1,212 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Access to the code generator classes for the benchmarks.
+ *
+ * The code generator classes are in the default package, which can't be
+ * imported from a named package, and JMH benchmarks have to be in a named
+ * package. The benchmarks reach the code generator through the method handles
+ * below instead. The handles are constants, so the JIT compiler inlines them
+ * like direct calls.
+ */
+final class Engine {
+	private static final MethodHandle NEW_PARAM = constructor("Param",
+					int.class, String.class, String.class, String.class);
+	private static final MethodHandle SORT_PARAMS = method("Param", "sortParams",
+					Collection.class);
+	private static final MethodHandle FILL_IN_PARAM = method("Param",
+					"fillInParam", String.class);
+	private static final MethodHandle READ_PARAM_CSV = method("Utilities",
+					"readParamCSV", String.class, int.class);
+	private static final MethodHandle CHECK_BRACES = method("Utilities",
+					"checkBraces", ArrayList.class, String.class, String.class);
+	private static final MethodHandle START_LOG_CAPTURE = method("Utilities",
+					"startLogCapture");
+	private static final MethodHandle STOP_LOG_CAPTURE = method("Utilities",
+					"stopLogCapture");
+	private static final MethodHandle NEW_TEMPLATE_PROCESSOR = constructor(
+					"TemplateProcessor", String.class, String.class, String.class,
+					boolean.class, boolean.class, int.class, String.class);
+	private static final MethodHandle PROCESS_TEMPLATE = method(
+					"TemplateProcessor", "processTemplate", String.class,
+					type("GenerationContext"));
+	private static final MethodHandle NEW_GENERATION_CONTEXT = constructor(
+					"GenerationContext", type("ParamTable"));
+
+	private Engine() {
+	}
+
+	/**
+	 * new Param(id, name, dataType, defaultValue)
+	 */
+	static Object newParam(int id, String name, String dataType, String defaultValue) {
+		try {
+			return NEW_PARAM.invoke(id, name, dataType, defaultValue);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Param.sortParams(params)
+	 */
+	static ArrayList<?> sortParams(ArrayList<?> params) {
+		try {
+			return (ArrayList<?>) SORT_PARAMS.invoke(params);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * param.fillInParam(line)
+	 */
+	static String fillInParam(Object param, String line) {
+		try {
+			return (String) FILL_IN_PARAM.invoke(param, line);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Utilities.readParamCSV(fileName, autoIncrementStartId)
+	 */
+	static Object readParamCSV(String fileName, int autoIncrementStartId) {
+		try {
+			return READ_PARAM_CSV.invoke(fileName,
+							autoIncrementStartId);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Utilities.checkBraces(code, fileName, templateFile)
+	 */
+	static void checkBraces(ArrayList<String> code, String fileName, String templateFile) {
+		try {
+			CHECK_BRACES.invoke(code, fileName, templateFile);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Holds back all log output of the current thread, so the benchmarks
+	 * don't measure printing. See Utilities.startLogCapture.
+	 */
+	static void startLogCapture() {
+		try {
+			START_LOG_CAPTURE.invoke();
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Stops holding back log output of the current thread.
+	 *
+	 * @return
+	 *      Lines logged since startLogCapture.
+	 */
+	@SuppressWarnings("unchecked")
+	static ArrayList<String> stopLogCapture() {
+		try {
+			return (ArrayList<String>) STOP_LOG_CAPTURE.invoke();
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * new TemplateProcessor(...), with the program defaults for a subsystem
+	 * named BENCH.
+	 */
+	static Object newTemplateProcessor(String templateDir, int parallelThreshold) {
+		try {
+			return NEW_TEMPLATE_PROCESSOR.invoke("BENCH", templateDir,
+							"\\.cgen_template", true, true, parallelThreshold, "");
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * new GenerationContext(parameters)
+	 */
+	static Object newGenerationContext(Object parameters) {
+		try {
+			return NEW_GENERATION_CONTEXT.invoke(parameters);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * templateProcessor.processTemplate(templateFile, context)
+	 */
+	@SuppressWarnings("unchecked")
+	static ArrayList<String> processTemplate(
+					Object templateProcessor,
+					String templateFile,
+					Object context
+	) {
+		try {
+			return (ArrayList<String>) PROCESS_TEMPLATE.invoke(templateProcessor,
+							templateFile, context);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Unwraps a failure of a code generator call, to throw it unchecked.
+	 */
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return t instanceof RuntimeException ? (RuntimeException) t :
+						new IllegalStateException(t);
+	}
+
+	private static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("code generator class " + name +
+							" not found, is the CodeGenerator jar on the classpath?", e);
+		}
+	}
+
+	private static MethodHandle method(String type, String name, Class<?>... params) {
+		try {
+			Method m = type(type).getDeclaredMethod(name, params);
+			m.setAccessible(true);
+			return MethodHandles.lookup().unreflect(m);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("code generator method " + type + "." +
+							name + " not found", e);
+		}
+	}
+
+	private static MethodHandle constructor(String type, Class<?>... params) {
+		try {
+			Constructor<?> c = type(type).getDeclaredConstructor(params);
+			c.setAccessible(true);
+			return MethodHandles.lookup().unreflectConstructor(c);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("code generator constructor " + type +
+							" not found", e);
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures Param.sortParams on shuffled parameters, from 10 to 1,000,000
+ * parameters, and Param.fillInParam on a line using every parameter keyword.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ParamBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Shuffled {
+		@Param({"10", "1000", "100000", "1000000"})
+		public int size;
+
+		ArrayList<Object> params;
+
+		@Setup
+		public void setup() {
+			params = Workload.shuffledParams(size);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Single {
+		Object param;
+		String line = "p#dataType p#name = p#defaultValue; // p#id p#hexId p#enumName p#dType";
+
+		@Setup
+		public void setup() {
+			param = Workload.shuffledParams(1).get(0);
+		}
+	}
+
+	@Benchmark
+	public ArrayList<?> sortParams(Shuffled state) {
+		return Engine.sortParams(state.params);
+	}
+
+	@Benchmark
+	public String fillInParam(Single state) {
+		return Engine.fillInParam(state.param, state.line);
+	}
+}
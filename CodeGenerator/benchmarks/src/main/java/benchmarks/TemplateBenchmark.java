@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures TemplateProcessor.processTemplate for each benchmark template of
+ * the Workload class, from 10 to 1,000,000 parameters. The templates are
+ * compiled and cached during warmup, as in a normal run after the first file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TemplateBenchmark {
+	@Param({"10", "1000", "100000", "1000000"})
+	public int size;
+
+	@Param({"variables", "p-line", "p-block", "p-template", "nested"})
+	public String template;
+
+	private Path dir;
+	private Object processor;
+	private Object params;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Workload.create(size);
+		params = Workload.params(dir);
+		processor = Engine.newTemplateProcessor(dir.resolve("templates") + "/", -1);
+		// a benchmark template that logs anything is broken
+		Engine.startLogCapture();
+		processTemplate();
+		ArrayList<String> log = Engine.stopLogCapture();
+		if (!log.isEmpty()) {
+			throw new IllegalStateException("template " + template + " : " + log);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Workload.delete(dir);
+	}
+
+	@Benchmark
+	public ArrayList<String> processTemplate() {
+		return Engine.processTemplate(processor, template + ".cgen_template",
+						Engine.newGenerationContext(params));
+	}
+}
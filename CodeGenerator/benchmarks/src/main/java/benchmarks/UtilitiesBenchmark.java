@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures Utilities.readParamCSV and Utilities.checkBraces, from 10 to
+ * 1,000,000 parameters or lines of code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class UtilitiesBenchmark {
+	@Param({"10", "1000", "100000", "1000000"})
+	public int size;
+
+	private Path dir;
+	private String csv;
+	private ArrayList<String> code;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Workload.create(size);
+		csv = dir.resolve("params.csv").toString();
+		code = Workload.code(size);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Workload.delete(dir);
+	}
+
+	@Benchmark
+	public Object readParamCSV() {
+		return Engine.readParamCSV(csv, -1);
+	}
+
+	@Benchmark
+	public void checkBraces() {
+		Engine.checkBraces(code, "bench.c", "bench.cgen_template");
+	}
+}
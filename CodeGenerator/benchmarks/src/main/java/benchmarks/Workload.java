@@ -0,0 +1,167 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic parameter sets and templates for the benchmarks, written to a
+ * temporary directory.
+ *
+ * Parameters are named param_0 .. param_n with varying data types. All
+ * templates expand every parameter, so the work grows with the number of
+ * parameters:
+ * - variables : variables filled in on each expanded line
+ * - p-line    : one line per parameter
+ * - p-block   : a block of lines per parameter
+ * - p-template: a sub template per parameter
+ * - nested    : nested sub templates, each with parameter commands
+ */
+final class Workload {
+	private static final String[] DATA_TYPES =
+					{"uint8_t", "uint16_t", "uint32_t", "int32_t", "float"};
+
+	private Workload() {
+	}
+
+	/**
+	 * Creates a temporary directory with a parameter file of the specified
+	 * size and all benchmark templates.
+	 *
+	 * @param size
+	 *      Number of parameters.
+	 * @return
+	 *      The directory, containing params.csv and a templates directory.
+	 * @throws IOException
+	 *      If the files could not be written.
+	 */
+	static Path create(int size) throws IOException {
+		Path dir = Files.createTempDirectory("codegenerator-bench");
+		Path templates = Files.createDirectories(dir.resolve("templates"));
+		try (BufferedWriter csv = Files.newBufferedWriter(dir.resolve("params.csv"),
+						StandardCharsets.UTF_8)) {
+			for (int i = 0; i < size; i++) {
+				csv.write(i + ",param_" + i + "," + DATA_TYPES[i % DATA_TYPES.length] +
+								"," + (i * 7 % 1000));
+				csv.newLine();
+			}
+		}
+
+		write(templates, "variables",
+						"$var$ \\{prefix\\} BENCH_",
+						"$var$ \\{type\\} volatile",
+						"$var$ \\{suffix\\} ; // variable",
+						"$p-line$ [all] \\{type\\} p#dataType \\{prefix\\}p#name = p#defaultValue\\{suffix\\}");
+		write(templates, "p-line",
+						"$p-line$ [all] p#dataType p#name = p#defaultValue; // p#id p#hexId");
+		write(templates, "p-block",
+						"void set(int id, uint32_t value) {",
+						"\tswitch (id) {",
+						"\t\t$p-block$ [all] \\{",
+						"\t\tcase p#enumName:",
+						"\t\t\tp#name = (p#dataType) value;",
+						"\t\t\tbreak;",
+						"\t\t\\}",
+						"\t}",
+						"}");
+		write(templates, "p-template",
+						"$p-template$ [all] sub.cgen_template");
+		write(templates, "sub",
+						"// p#name",
+						"p#dataType get_p#name(void) {",
+						"\treturn p#name;",
+						"}");
+		write(templates, "nested",
+						"$var$ \\{prefix\\} BENCH_",
+						"struct params {",
+						"\t$template$ nested_1.cgen_template",
+						"};");
+		write(templates, "nested_1",
+						"$p-line$ [all] p#dataType \\{prefix\\}p#name;",
+						"\t$template$ nested_2.cgen_template");
+		write(templates, "nested_2",
+						"$p-block$ [all] \\{",
+						"// p#id",
+						"\\}");
+		return dir;
+	}
+
+	/**
+	 * Reads the parameters of a workload directory.
+	 *
+	 * @param dir
+	 *      Directory created by create.
+	 * @return
+	 *      The parameter table.
+	 */
+	static Object params(Path dir) {
+		return Engine.readParamCSV(dir.resolve("params.csv").toString(), -1);
+	}
+
+	/**
+	 * Creates the specified number of parameters in random id order.
+	 *
+	 * @param size
+	 *      Number of parameters.
+	 * @return
+	 *      Shuffled parameters, the same for each call with the same size.
+	 */
+	static ArrayList<Object> shuffledParams(int size) {
+		ArrayList<Object> params = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			params.add(Engine.newParam(i, "param_" + i,
+							DATA_TYPES[i % DATA_TYPES.length], Integer.toString(i)));
+		}
+		Collections.shuffle(params, new Random(size));
+		return params;
+	}
+
+	/**
+	 * Creates balanced code of the specified number of lines, for checking
+	 * braces.
+	 *
+	 * @param size
+	 *      Number of lines.
+	 * @return
+	 *      Lines of code, with properly nested braces.
+	 */
+	static ArrayList<String> code(int size) {
+		ArrayList<String> code = new ArrayList<>(size + 2);
+		code.add("void f(void) {");
+		for (int i = 0; i < size; i++) {
+			code.add(i % 2 == 0 ? "\tif (x) { y(); }" : "\tz = p[" + i + "];");
+		}
+		code.add("}");
+		return code;
+	}
+
+	/**
+	 * Deletes a workload directory.
+	 *
+	 * @param dir
+	 *      Directory created by create.
+	 * @throws IOException
+	 *      If the directory could not be listed.
+	 */
+	static void delete(Path dir) throws IOException {
+		if (null == dir) {
+			return;
+		}
+		Files.walk(dir).sorted(Collections.reverseOrder())
+						.forEach(path -> path.toFile().delete());
+	}
+
+	private static void write(Path templates, String name, String... lines)
+					throws IOException {
+		List<String> content = Arrays.asList(lines);
+		Files.write(templates.resolve(name + ".cgen_template"), content,
+						StandardCharsets.UTF_8);
+	}
+}
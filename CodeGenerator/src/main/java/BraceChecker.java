@@ -0,0 +1,107 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks generated code for a mismatch in number of opening / closing braces
+ * while the code is being generated, so the code does not need to be kept in
+ * memory for the check. WARNING : does not check if they were used in the
+ * correct place, only reports a mismatched number.
+ *
+ * Lines are passed on to another sink unchanged. Reports the same errors as
+ * checking the complete code from top to bottom for closing braces and from
+ * bottom to top for opening braces.
+ */
+public class BraceChecker implements CodeSink {
+	// sink to pass lines on to, null to only check
+	private final CodeSink target;
+	private int lines = 0;
+	// braces opened and not yet closed up to the current line
+	private int braces = 0;
+	// first line with more closing than opening braces up to it, -1 if none
+	private int extraClosing = -1;
+	// last line at which each number of open braces occurred
+	private final Map<Integer, Integer> lastLine = new HashMap<>();
+	
+	/**
+	 * Constructs a brace checker.
+	 *
+	 * @param target
+	 *      Sink to pass the checked lines on to, null to only check.
+	 */
+	public BraceChecker(CodeSink target) {
+		this.target = target;
+	}
+	
+	@Override
+	public void add(String line) {
+		braces += countBraces(line);
+		if (braces < 0 && -1 == extraClosing) {
+			extraClosing = lines;
+		}
+		lastLine.put(braces, lines);
+		lines++;
+		if (null != target) {
+			target.add(line);
+		}
+	}
+	
+	@Override
+	public int size() {
+		return lines;
+	}
+	
+	/**
+	 * Reports mismatched braces in the code checked so far.
+	 *
+	 * An unclosed brace is reported at the last line from which the remaining
+	 * code opens more braces than it closes, which is the line after the last
+	 * line up to which less braces were opened than in total.
+	 *
+	 * @param fileName
+	 *      FileName given to the code.
+	 * @param templateFile
+	 *      Template file used to generate the code.
+	 */
+	public void check(String fileName, String templateFile) {
+		if (-1 != extraClosing) {
+			Utilities.log("Error: Extra closing bracket on line " + extraClosing +
+							" of code produced by " + templateFile + " for " + fileName +
+							"!");
+		}
+		int unclosed = -1;
+		for (Map.Entry<Integer, Integer> open : lastLine.entrySet()) {
+			if (open.getKey() < braces && open.getValue() > unclosed) {
+				unclosed = open.getValue();
+			}
+		}
+		if (-1 != unclosed) {
+			Utilities.log("Error: Unclosed bracket on line " + (unclosed + 2) +
+							" of code produced by " + templateFile + " for " + fileName +
+							"!");
+		}
+	}
+	
+	/**
+	 * Compares the number of opening and closing braces on a specified line. 0
+	 * if matching, negative if too many closing braces, positive if too many
+	 * opening braces.
+	 * @param line
+	 *      Line to check braces on.
+	 * @return
+	 *      Difference in number of opening and closing braces.
+	 */
+	private static int countBraces(String line) {
+		int braces = 0;
+		int size = line.length();
+		for (int i = 0; i < size; i++) {
+			char c = line.charAt(i);
+			if (c == '{') {
+				braces++;
+			}
+			if (c == '}') {
+				braces--;
+			}
+		}
+		return braces;
+	}
+}
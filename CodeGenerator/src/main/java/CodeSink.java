@@ -0,0 +1,38 @@
+import java.util.List;
+
+/**
+ * Destination for generated code lines. Template processing appends each
+ * generated line to a sink as soon as it is produced, instead of splicing
+ * command results into the template lines.
+ *
+ * See ListSink to collect lines in a list and PrefixSink for indentation.
+ */
+public interface CodeSink {
+	/**
+	 * Appends a single line of code.
+	 *
+	 * @param line
+	 *      Line to append.
+	 */
+	void add(String line);
+	
+	/**
+	 * Returns the number of lines appended to this sink so far.
+	 *
+	 * @return
+	 *      Number of lines.
+	 */
+	int size();
+	
+	/**
+	 * Appends several lines of code, in order.
+	 *
+	 * @param lines
+	 *      Lines to append.
+	 */
+	default void addAll(List<String> lines) {
+		for (String line : lines) {
+			add(line);
+		}
+	}
+}
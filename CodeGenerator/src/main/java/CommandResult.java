@@ -1,24 +1,19 @@
-import java.util.ArrayList;
-
 /**
- * This class represents the result of a command as a number of lines to remove
- * from the template and a set of lines to add.
+ * This class represents the result of a command as a number of template
+ * lines used by the command. The code generated by a command is written to the
+ * output directly, see the CodeSink interface.
  */
 public class CommandResult {
 	public int removed;
-	public ArrayList<String> added;
 	
 	/**
-	 * Represents the result of a command as a number of lines to remove from
-	 * the template and a set of lines to add.
+	 * Represents the result of a command as a number of template lines used by
+	 * the command, which are not processed any further.
 	 *
 	 * @param removed
-	 *      Lines to remove from the template.
-	 * @param added
-	 *      Lines to add to the template.
+	 *      Template lines used by the command.
 	 */
-	public CommandResult(int removed, ArrayList<String> added) {
+	public CommandResult(int removed) {
 		this.removed = removed;
-		this.added = added;
 	}
 }
@@ -0,0 +1,200 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a template in an immutable, pre-parsed form. Template comments
+ * are removed and each line is parsed once into a TemplateLine, so processing
+ * a template for many parameters does not require reading and parsing the
+ * template file again for each parameter.
+ *
+ * The bodies of $p-block$ commands are compiled along with the template, each
+ * body is itself a compiled template. The escaped braces of all blocks are
+ * matched in a single pass, so blocks may be nested. Block braces are on
+ * lines of their own, or end and start the command line, see
+ * TemplateProcessor.compileTemplate.
+ *
+ * Compiled templates are shared through the TemplateCache, they should not be
+ * modified after they are created.
+ */
+public class CompiledTemplate {
+	// template file the lines were read from, null for p-block bodies
+	public final String fileName;
+	// template file the lines were read from, for p-block bodies the file of
+	// the enclosing template
+	final String source;
+	// content hash of the template file when it was read, see FileHashes
+	final String hash;
+	// pre-parsed template lines
+	public final List<TemplateLine> lines;
+	// end line of the p-block starting at each line, -1 if none
+	private final int[] blockEnds;
+	// compiled body of the p-block starting at each line, null if none
+	private final CompiledTemplate[] blocks;
+
+	/**
+	 * Constructs a compiled template from a set of pre-parsed template lines.
+	 *
+	 * @param fileName
+	 *      Template file the lines were read from, null if not from a file.
+	 * @param hash
+	 *      Content hash of the template file when it was read, null if unknown.
+	 * @param lines
+	 *      Pre-parsed template lines.
+	 */
+	CompiledTemplate(
+					String fileName,
+					String hash,
+					List<TemplateLine> lines
+	) {
+		this(fileName, fileName, hash, lines);
+	}
+
+	/**
+	 * Constructs a compiled template, or the compiled body of a p-block.
+	 *
+	 * @param fileName
+	 *      Template file the lines were read from, null for p-block bodies.
+	 * @param source
+	 *      Template file the lines were read from, also for p-block bodies.
+	 * @param hash
+	 *      Content hash of the template file when it was read, null if unknown.
+	 * @param lines
+	 *      Pre-parsed template lines.
+	 */
+	private CompiledTemplate(
+					String fileName,
+					String source,
+					String hash,
+					List<TemplateLine> lines
+	) {
+		this.fileName = fileName;
+		this.source = source;
+		this.hash = hash;
+		this.lines = Collections.unmodifiableList(new ArrayList<>(lines));
+
+		// match the p-block braces once, instead of on each use of the template
+		int count = lines.size();
+		blockEnds = new int[count];
+		blocks = new CompiledTemplate[count];
+		Arrays.fill(blockEnds, -1);
+		// start lines of the blocks that are not closed yet, innermost first
+		ArrayDeque<Integer> open = new ArrayDeque<>();
+		for (int i = 0; i < count; i++) {
+			TemplateLine line = lines.get(i);
+			for (int closing = closingBraces(line.text); closing > 0
+							&& !open.isEmpty(); closing--) {
+				blockEnds[open.pop()] = i;
+			}
+			if (isBlockStart(line)) {
+				open.push(i);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			if (-1 != blockEnds[i]) {
+				blocks[i] = new CompiledTemplate(null, source, null,
+								lines.subList(i + 1, blockEnds[i]));
+			}
+		}
+	}
+
+	/**
+	 * Returns the line number of the escaped closing brace '\}' that ends the
+	 * p-block starting at the specified line.
+	 *
+	 * @param blockStart
+	 *      Line number of the line containing the $p-block$ command.
+	 * @return
+	 *      Line number of the closing line, -1 if there is none.
+	 */
+	int blockEnd(int blockStart) {
+		if (-1 != blockEnds[blockStart]) {
+			return blockEnds[blockStart];
+		}
+		// line only became a p-block after filling in variables
+		return findBlockEnd(blockStart);
+	}
+
+	/**
+	 * Returns the compiled body of the p-block starting at the specified line.
+	 *
+	 * @param blockStart
+	 *      Line number of the line containing the $p-block$ command.
+	 * @return
+	 *      Lines between the p-block command and the closing line as a compiled
+	 *      template, null if the p-block has no closing line.
+	 */
+	CompiledTemplate block(int blockStart) {
+		if (null != blocks[blockStart]) {
+			return blocks[blockStart];
+		}
+		int blockEnd = blockEnd(blockStart);
+		if (-1 == blockEnd) {
+			return null;
+		}
+		return new CompiledTemplate(null, source, null,
+						lines.subList(blockStart + 1, blockEnd));
+	}
+
+	/**
+	 * Searches the lines following the specified line for the escaped closing
+	 * brace '\}' of a p-block, skipping the braces of nested blocks.
+	 *
+	 * @param blockStart
+	 *      Line number of the line containing the $p-block$ command.
+	 * @return
+	 *      Line number of the closing line, -1 if there is none.
+	 */
+	private int findBlockEnd(int blockStart) {
+		int size = lines.size();
+		int depth = 1;
+		for (int i = blockStart + 1; i < size; i++) {
+			TemplateLine line = lines.get(i);
+			depth -= closingBraces(line.text);
+			if (depth <= 0) {
+				return i;
+			}
+			if (isBlockStart(line)) {
+				depth++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return
+	 *      Whether the line is a $p-block$ command that opens a block.
+	 */
+	private static boolean isBlockStart(TemplateLine line) {
+		return "p-block".equals(line.command) && line.blockStart;
+	}
+
+	/**
+	 * Counts the escaped closing braces '\}' in a line that are not matched by
+	 * an opening brace '\{' earlier on the same line, such as those of
+	 * variable names. These close p-blocks started on earlier lines.
+	 *
+	 * @param text
+	 *      Line text.
+	 * @return
+	 *      Number of unmatched closing braces.
+	 */
+	static int closingBraces(String text) {
+		int opening = 0;
+		int closing = 0;
+		for (int i = text.indexOf('\\'); -1 != i; i = text.indexOf('\\', i + 1)) {
+			if (text.startsWith("\\{", i)) {
+				opening++;
+			} else if (text.startsWith("\\}", i)) {
+				if (0 != opening) {
+					opening--;
+				} else {
+					closing++;
+				}
+			}
+		}
+		return closing;
+	}
+}
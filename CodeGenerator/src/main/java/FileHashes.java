@@ -0,0 +1,87 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes of files and strings, used to find out if the inputs of a
+ * generated file changed.
+ *
+ * File hashes are not cached here, a file is read each time it is hashed.
+ * Generator runs hash each file once, see RunCache.
+ */
+public class FileHashes {
+	/**
+	 * Returns the hash of the content of the specified file, always reading the
+	 * file.
+	 *
+	 * @param fileName
+	 *      File to hash.
+	 * @return
+	 *      Hex encoded SHA-256 hash of the file, null if the file does not
+	 *      exist or could not be read.
+	 */
+	static String hash(String fileName) {
+		try {
+			return hash(Files.readAllBytes(Paths.get(fileName)));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the canonical path of a file, used as key by the caches of files
+	 * so a file reached through different paths is cached once.
+	 *
+	 * @param fileName
+	 *      File to find the path of.
+	 * @return
+	 *      Canonical path of the file, the absolute path if it can't be found.
+	 */
+	static String canonical(String fileName) {
+		File file = new File(fileName);
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+	
+	/**
+	 * Returns the hash of the specified String.
+	 *
+	 * @param str
+	 *      String to hash.
+	 * @return
+	 *      Hex encoded SHA-256 hash of the UTF-8 encoded String.
+	 */
+	static String hashString(String str) {
+		return hash(str.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Returns the hash of the specified bytes.
+	 *
+	 * @param bytes
+	 *      Bytes to hash.
+	 * @return
+	 *      Hex encoded SHA-256 hash.
+	 */
+	private static String hash(byte[] bytes) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest(bytes)) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
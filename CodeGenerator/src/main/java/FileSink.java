@@ -0,0 +1,192 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Code sink that writes each line to a file as it is generated, through a
+ * fixed size buffer. The generated code is never kept in memory as a whole.
+ *
+ * Produces the same file as Utilities.writeLinesToFile would for the same
+ * lines. Log output about the file is held back until the sink is closed, so
+ * it is printed at the same point as when writing the file afterwards.
+ *
+ * If only writing changed files, the lines are written to a temporary file
+ * which replaces the file when the sink is closed, only if the content
+ * changed. See Utilities.writeLinesToFile.
+ */
+public class FileSink implements CodeSink, Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String fileName;
+	// file to write, null if the file is skipped
+	private Path filePath;
+	// temporary file to write to first, null if writing the file directly
+	private Path temp;
+	// open file, null if the file is skipped or could not be written
+	private FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private int lines = 0;
+	// log lines held back until the sink is closed
+	private ArrayList<String> log;
+
+	/**
+	 * Opens the specified file for writing. See Utilities.writeLinesToFile for
+	 * how existing files are handled.
+	 *
+	 * @param fileName
+	 *      File to write to.
+	 * @param overwriteExisting
+	 *      Whether an existing file should be overwritten.
+	 * @param onlyIfChanged
+	 *      Whether the file should only be written if it's content changed.
+	 */
+	public FileSink(
+					String fileName,
+					boolean overwriteExisting,
+					boolean onlyIfChanged
+	) {
+		this.fileName = fileName;
+		Utilities.startLogCapture();
+		try {
+			filePath = Utilities.prepareOutputFile(fileName, overwriteExisting,
+							!onlyIfChanged);
+			if (null != filePath && onlyIfChanged) {
+				temp = Utilities.createTempFile(filePath);
+			}
+			if (null != filePath) {
+				channel = FileChannel.open(null == temp ? filePath : temp,
+								StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+								StandardOpenOption.WRITE);
+			}
+		} catch (IOException e) {
+			Utilities.log("Error writing to file!");
+		} finally {
+			log = Utilities.stopLogCapture();
+		}
+	}
+
+	@Override
+	public void add(String line) {
+		lines++;
+		if (null == channel || null == line) {
+			return;
+		}
+		CharBuffer chars = CharBuffer.wrap(line + System.lineSeparator());
+		while (encoder.encode(chars, buffer, false).isOverflow()) {
+			flush();
+			if (null == channel) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return lines;
+	}
+
+	/**
+	 * Writes the remaining buffered code to the file and closes it. Replaces
+	 * the file with the temporary file if the content changed. Prints the held
+	 * back log output.
+	 */
+	@Override
+	public void close() {
+		CharBuffer empty = CharBuffer.allocate(0);
+		while (null != channel && encoder.encode(empty, buffer, true).isOverflow()) {
+			flush();
+		}
+		while (null != channel && encoder.flush(buffer).isOverflow()) {
+			flush();
+		}
+		if (null != channel) {
+			flush();
+		}
+		boolean written = null != channel;
+		if (null != channel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.add("Error writing to file!");
+				written = false;
+			}
+			channel = null;
+		}
+		if (null != temp) {
+			Utilities.startLogCapture();
+			if (written) {
+				Utilities.replaceIfChanged(temp, filePath, fileName);
+			} else {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException ignored) {
+					// nothing left to do
+				}
+			}
+			log.addAll(Utilities.stopLogCapture());
+			temp = null;
+		}
+		Utilities.log(log);
+	}
+
+	/**
+	 * Stops writing the file without finishing it, used if generating the
+	 * code failed. The temporary file is deleted, so a file that is only
+	 * written if it's content changed keeps it's previous content. A file
+	 * written directly is left as far as it was written. Prints the held back
+	 * log output.
+	 */
+	public void abort() {
+		if (null != channel) {
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+				// the file is discarded anyway
+			}
+			channel = null;
+		}
+		if (null != temp) {
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+				// nothing left to do
+			}
+			temp = null;
+		}
+		Utilities.log(log);
+	}
+
+	/**
+	 * Writes the buffered bytes to the file. Stops writing to the file if
+	 * writing fails.
+	 */
+	private void flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			log.add("Error: writing to file " + fileName + " failed!");
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+				// already reported
+			}
+			channel = null;
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,112 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds the state of generating a single output file, shared by all
+ * templates processed for that file.
+ *
+ * Keeps the parameters specified for the file and records every input file
+ * that was read while generating it. For incremental generation a hash of the
+ * content of each input is recorded as well, and the recorded inputs are
+ * stored in the generation manifest, see the GenerationManifest class.
+ *
+ * If metrics or tracing are enabled, the context also holds the metrics of
+ * the file and the trace of the run, see the GenerationMetrics and
+ * GenerationTrace classes.
+ */
+public class GenerationContext {
+	// parameters specified for the file
+	public final ParamTable parameters;
+	// metrics of the file, null if metrics are disabled
+	final GenerationMetrics.FileMetrics metrics;
+	// trace of the run, null if tracing is disabled
+	final GenerationTrace trace;
+	// files read during the run
+	final RunCache run;
+	// whether to record the content hash of the input files
+	private final boolean hashInputs;
+	// input files read for the file and their content hash, null if missing or
+	// not hashed
+	private final Map<String, String> inputs = new TreeMap<>();
+	
+	/**
+	 * Constructs the context for generating a file.
+	 *
+	 * @param parameters
+	 *      Table of all parameters specified for the file.
+	 */
+	public GenerationContext(ParamTable parameters) {
+		this(parameters, new RunCache(), false, null, null);
+	}
+	
+	/**
+	 * Constructs the context for generating a file, recording input hashes,
+	 * metrics and trace spans.
+	 *
+	 * @param parameters
+	 *      Table of all parameters specified for the file.
+	 * @param run
+	 *      Files read during the run, shared by the files of the run.
+	 * @param hashInputs
+	 *      Whether to record the content hash of the input files.
+	 * @param metrics
+	 *      Metrics of the file, null to disable metrics.
+	 * @param trace
+	 *      Trace of the run, null to disable tracing.
+	 */
+	GenerationContext(
+					ParamTable parameters,
+					RunCache run,
+					boolean hashInputs,
+					GenerationMetrics.FileMetrics metrics,
+					GenerationTrace trace
+	) {
+		this.parameters = parameters;
+		this.run = run;
+		this.hashInputs = hashInputs;
+		this.metrics = metrics;
+		this.trace = trace;
+	}
+	
+	/**
+	 * Records that the specified input file was read, or was looked for but
+	 * did not exist.
+	 *
+	 * @param fileName
+	 *      Input file, as used to read it.
+	 */
+	synchronized void addInput(String fileName) {
+		if (!inputs.containsKey(fileName)) {
+			inputs.put(fileName, hashInputs ? run.hash(fileName) : null);
+		}
+	}
+	
+	/**
+	 * Adds to a metric of a template or variables file, if metrics are
+	 * enabled.
+	 *
+	 * @param fileName
+	 *      Template or variables file, as read.
+	 * @param metric
+	 *      Metric to add to.
+	 * @param value
+	 *      Amount to add, in nanoseconds for times.
+	 */
+	void record(String fileName, GenerationMetrics.Metric metric, long value) {
+		if (null != metrics) {
+			metrics.add(fileName, metric, value);
+		}
+	}
+	
+	/**
+	 * Returns the input files recorded so far.
+	 *
+	 * @return
+	 *      Input files and their content hash, null for missing files or if
+	 *      hashes are not recorded.
+	 */
+	synchronized Map<String, String> inputs() {
+		return Collections.unmodifiableMap(new TreeMap<>(inputs));
+	}
+}
@@ -0,0 +1,183 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+/**
+ * Records which inputs were used to generate each output file, so output
+ * files whose inputs did not change can be skipped on the next run.
+ *
+ * For each output file the manifest holds a hash of it's settings, a hash of
+ * every template, variables file and parameter file read while generating it
+ * and a hash of the generated output. An output file is up to date if all of
+ * these still match. Missing input files are recorded as well, so creating a
+ * file that was missing causes the output to be generated again.
+ *
+ * Manifest format:
+ * { "output file" : { "settings" : hash, "output" : hash,
+ *                     "inputs" : { "input file" : hash or null, ... } }, ... }
+ */
+public class GenerationManifest {
+	// entries from the previous run
+	private final JSONObject previous;
+	// entries for this run, output files that are not generated are dropped
+	private final Map<String, JSONObject> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a manifest based on the entries of a previous run.
+	 *
+	 * @param previous
+	 *      Manifest of the previous run, empty for a first run.
+	 */
+	private GenerationManifest(JSONObject previous) {
+		this.previous = previous;
+	}
+
+	/**
+	 * Loads the manifest of the previous run from the specified file.
+	 *
+	 * @param fileName
+	 *      Manifest file to load.
+	 * @return
+	 *      The loaded manifest, an empty manifest if the file does not exist or
+	 *      could not be read.
+	 */
+	static GenerationManifest load(String fileName) {
+		JSONObject previous = null;
+		if (new File(fileName).isFile()) {
+			previous = Utilities.readJSONFromFile(fileName);
+		}
+		if (null == previous) {
+			previous = new JSONObject();
+		}
+		return new GenerationManifest(previous);
+	}
+
+	/**
+	 * Checks if the specified output file is up to date. If so, it's entry is
+	 * kept for the next run.
+	 *
+	 * @param fileName
+	 *      Output file as named in the settings.
+	 * @param settings
+	 *      Hash of the settings used for the output file.
+	 * @param outputFile
+	 *      Location of the output file.
+	 * @param run
+	 *      Files read during this run, holds the content hash of the inputs.
+	 * @return
+	 *      Whether the output file exists unchanged and all of it's inputs are
+	 *      unchanged since the previous run.
+	 */
+	boolean upToDate(
+					String fileName,
+					String settings,
+					String outputFile,
+					RunCache run
+	) {
+		JSONObject entry = previous.optJSONObject(fileName);
+		if (null == entry
+						|| !settings.equals(entry.optString("settings"))
+						|| !entry.optString("output").equals(FileHashes.hash(outputFile))) {
+			return false;
+		}
+		JSONObject inputs = entry.optJSONObject("inputs");
+		if (null == inputs) {
+			return false;
+		}
+		for (String input : inputs.keySet()) {
+			String hash = run.hash(input);
+			Object recorded = inputs.get(input);
+			if (null == hash ? JSONObject.NULL != recorded : !hash.equals(recorded)) {
+				return false;
+			}
+		}
+		entries.put(fileName, entry);
+		return true;
+	}
+
+	/**
+	 * Keeps the entry of the previous run for the specified output file, for
+	 * output files that are not checked in this run.
+	 *
+	 * @param fileName
+	 *      Output file as named in the settings.
+	 */
+	void keep(String fileName) {
+		JSONObject entry = previous.optJSONObject(fileName);
+		if (null != entry) {
+			entries.put(fileName, entry);
+		}
+	}
+
+	/**
+	 * Returns the input files recorded for the specified output file.
+	 *
+	 * @param fileName
+	 *      Output file as named in the settings.
+	 * @return
+	 *      Recorded input files, empty if there is no entry.
+	 */
+	Set<String> inputs(String fileName) {
+		JSONObject entry = entries.get(fileName);
+		if (null == entry) {
+			entry = previous.optJSONObject(fileName);
+		}
+		if (null == entry || null == entry.optJSONObject("inputs")) {
+			return new HashSet<>();
+		}
+		return entry.getJSONObject("inputs").keySet();
+	}
+
+	/**
+	 * Records the inputs used to generate the specified output file.
+	 *
+	 * @param fileName
+	 *      Output file as named in the settings.
+	 * @param settings
+	 *      Hash of the settings used for the output file.
+	 * @param context
+	 *      Context the output file was generated with.
+	 * @param outputFile
+	 *      Location of the output file.
+	 */
+	void record(
+					String fileName,
+					String settings,
+					GenerationContext context,
+					String outputFile
+	) {
+		String output = FileHashes.hash(outputFile);
+		if (null == output) {
+			// nothing was written, generate again next run
+			entries.remove(fileName);
+			return;
+		}
+		JSONObject inputs = new JSONObject();
+		context.inputs().forEach((input, hash) ->
+						inputs.put(input, null == hash ? JSONObject.NULL : hash));
+		JSONObject entry = new JSONObject();
+		entry.put("settings", settings);
+		entry.put("output", output);
+		entry.put("inputs", inputs);
+		entries.put(fileName, entry);
+	}
+
+	/**
+	 * Writes the manifest of this run to the specified file.
+	 *
+	 * @param fileName
+	 *      Manifest file to write.
+	 */
+	void save(String fileName) {
+		JSONObject manifest = new JSONObject();
+		entries.forEach(manifest::put);
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add(manifest.toString(1));
+		Utilities.writeLinesToFile(lines, fileName, true);
+	}
+}
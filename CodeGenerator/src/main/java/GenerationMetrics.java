@@ -0,0 +1,292 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONObject;
+
+/**
+ * Collects performance metrics of a single Generator run, so the cost of
+ * generating each file, and of each template used for it, can be tracked over
+ * time. Written as a JSON report when metrics are enabled in the settings.
+ *
+ * For each output file the report holds the totals for the file and the
+ * metrics of each template and variables file read for it:
+ * - uses : number of times the template was processed
+ * - cache_hits, cache_misses : cache lookups, see TemplateCache and
+ *   VariableCache
+ * - io_ms : time spent reading the file, for output files also writing it
+ * - parse_ms : time spent compiling the template
+ * - expansion_ms : time spent processing the template, including the
+ *   templates it includes
+ * - p-line, p-block, p-template : number of parameters the parameter
+ *   commands in the template were expanded for
+ * - lines, bytes : code produced by the template, including the templates
+ *   it includes, bytes as encoded in UTF-8 with line separators
+ *
+ * Report format:
+ * { "subsystem" : name, "total_ms" : time, "params_ms" : time,
+ *   "files" : { "output file" : { "total_ms" : time, "skipped" : boolean,
+ *                                 metrics...,
+ *                                 "templates" : { "template file" : { metrics... },
+ *                                                 ... } }, ... } }
+ *
+ * Metrics can be recorded from several threads at the same time.
+ */
+public class GenerationMetrics {
+	/**
+	 * Measured quantities, the key is used in the report. Times are measured
+	 * in nanoseconds and reported in milliseconds.
+	 */
+	enum Metric {
+		USES("uses", false),
+		CACHE_HITS("cache_hits", false),
+		CACHE_MISSES("cache_misses", false),
+		IO_TIME("io_ms", true),
+		PARSE_TIME("parse_ms", true),
+		EXPANSION_TIME("expansion_ms", true),
+		P_LINE("p-line", false),
+		P_BLOCK("p-block", false),
+		P_TEMPLATE("p-template", false),
+		LINES("lines", false),
+		BYTES("bytes", false);
+
+		final String key;
+		final boolean time;
+
+		Metric(String key, boolean time) {
+			this.key = key;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Metrics of a single template or file.
+	 */
+	static class Counters {
+		private final AtomicLongArray values =
+						new AtomicLongArray(Metric.values().length);
+
+		/**
+		 * Adds to the specified metric.
+		 *
+		 * @param metric
+		 *      Metric to add to.
+		 * @param value
+		 *      Amount to add, in nanoseconds for times.
+		 */
+		void add(Metric metric, long value) {
+			values.addAndGet(metric.ordinal(), value);
+		}
+
+		/**
+		 * @return
+		 *      Value of the specified metric, in nanoseconds for times.
+		 */
+		long get(Metric metric) {
+			return values.get(metric.ordinal());
+		}
+
+		/**
+		 * Counts code lines as produced.
+		 *
+		 * @param line
+		 *      Produced line.
+		 */
+		void addLine(String line) {
+			add(Metric.LINES, 1);
+			add(Metric.BYTES, bytes(line));
+		}
+
+		/**
+		 * Adds the metrics to a report object.
+		 *
+		 * @param json
+		 *      Report object to add to.
+		 * @return
+		 *      The report object.
+		 */
+		JSONObject toJSON(JSONObject json) {
+			for (Metric metric : Metric.values()) {
+				long value = get(metric);
+				if (metric.time) {
+					json.put(metric.key, millis(value));
+				} else {
+					json.put(metric.key, value);
+				}
+			}
+			return json;
+		}
+	}
+
+	/**
+	 * Metrics of a single output file and the templates read for it.
+	 */
+	static class FileMetrics extends Counters {
+		private final Map<String, Counters> templates = new ConcurrentHashMap<>();
+		private volatile long total;
+		private volatile boolean skipped;
+
+		/**
+		 * Returns the metrics of a template or variables file read for this
+		 * file.
+		 *
+		 * @param fileName
+		 *      Template or variables file, as read.
+		 * @return
+		 *      Metrics of the template, created if not present.
+		 */
+		Counters template(String fileName) {
+			return templates.computeIfAbsent(fileName, name -> new Counters());
+		}
+
+		/**
+		 * Adds to the specified metric of a template, and to the total of this
+		 * file. Only for metrics that do not include those of other templates.
+		 *
+		 * @param fileName
+		 *      Template or variables file, as read.
+		 * @param metric
+		 *      Metric to add to.
+		 * @param value
+		 *      Amount to add, in nanoseconds for times.
+		 */
+		void add(String fileName, Metric metric, long value) {
+			template(fileName).add(metric, value);
+			add(metric, value);
+		}
+
+		/**
+		 * Records the time taken to generate or skip the file.
+		 *
+		 * @param total
+		 *      Time in nanoseconds.
+		 * @param skipped
+		 *      Whether the file was skipped, as it's inputs did not change.
+		 */
+		void finish(long total, boolean skipped) {
+			this.total = total;
+			this.skipped = skipped;
+		}
+
+		@Override
+		JSONObject toJSON(JSONObject json) {
+			json.put("total_ms", millis(total));
+			json.put("skipped", skipped);
+			super.toJSON(json);
+			JSONObject templateMetrics = new JSONObject();
+			templates.forEach((fileName, counters) ->
+							templateMetrics.put(fileName, counters.toJSON(new JSONObject())));
+			json.put("templates", templateMetrics);
+			return json;
+		}
+	}
+
+	private final String subsystem;
+	// start of the run
+	private final long start = System.nanoTime();
+	private long params = 0;
+	private final Map<String, FileMetrics> files = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs the metrics of a run, starting now.
+	 *
+	 * @param subsystem
+	 *      Name of the generated subsystem.
+	 */
+	GenerationMetrics(String subsystem) {
+		this.subsystem = subsystem;
+	}
+
+	/**
+	 * Returns the metrics of an output file.
+	 *
+	 * @param fileName
+	 *      Output file as named in the settings.
+	 * @return
+	 *      Metrics of the file, created if not present.
+	 */
+	FileMetrics file(String fileName) {
+		return files.computeIfAbsent(fileName, name -> new FileMetrics());
+	}
+
+	/**
+	 * Records time spent loading the parameter files.
+	 *
+	 * @param time
+	 *      Time in nanoseconds.
+	 */
+	synchronized void addParamsTime(long time) {
+		params += time;
+	}
+
+	/**
+	 * Writes the report of this run to the specified file.
+	 *
+	 * @param fileName
+	 *      Report file to write.
+	 */
+	synchronized void save(String fileName) {
+		JSONObject report = new JSONObject();
+		report.put("subsystem", subsystem);
+		report.put("total_ms", millis(System.nanoTime() - start));
+		report.put("params_ms", millis(params));
+		JSONObject fileMetrics = new JSONObject();
+		files.forEach((name, metrics) ->
+						fileMetrics.put(name, metrics.toJSON(new JSONObject())));
+		report.put("files", fileMetrics);
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add(report.toString(1));
+		Utilities.writeLinesToFile(lines, fileName, true);
+	}
+
+	/**
+	 * Returns the size of a code line as written to a file.
+	 *
+	 * @param line
+	 *      Code line.
+	 * @return
+	 *      Number of bytes in UTF-8, including the line separator.
+	 */
+	static long bytes(String line) {
+		long size = System.lineSeparator().length();
+		if (null == line) {
+			return size;
+		}
+		int length = line.length();
+		for (int i = 0; i < length; i++) {
+			if (line.charAt(i) >= 0x80) {
+				// not plain ASCII, let the encoder count
+				return size + line.getBytes(StandardCharsets.UTF_8).length;
+			}
+		}
+		return size + length;
+	}
+
+	/**
+	 * Counts code lines that were produced at once.
+	 *
+	 * @param counters
+	 *      Metrics to count the lines for.
+	 * @param lines
+	 *      Produced lines.
+	 */
+	static void addLines(Counters counters, List<String> lines) {
+		long size = 0;
+		for (String line : lines) {
+			size += bytes(line);
+		}
+		counters.add(Metric.LINES, lines.size());
+		counters.add(Metric.BYTES, size);
+	}
+
+	/**
+	 * @return
+	 *      Time in milliseconds, rounded to microseconds.
+	 */
+	private static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+}
@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a single Generator run: the files that were generated or
+ * skipped, and everything that was logged while generating them.
+ *
+ * Errors and warnings are the logged lines starting with "Error" or
+ * "Warning", the same lines the program prints for the user.
+ */
+public class GenerationResult {
+	private final List<String> log;
+	private final List<String> generated;
+	private final List<String> skipped;
+
+	/**
+	 * Constructs the result of a run.
+	 *
+	 * @param log
+	 *      Lines logged during the run.
+	 * @param generated
+	 *      Output files that were generated.
+	 * @param skipped
+	 *      Output files that were skipped, as their inputs did not change.
+	 */
+	GenerationResult(List<String> log, List<String> generated, List<String> skipped) {
+		this.log = Collections.unmodifiableList(new ArrayList<>(log));
+		this.generated = Collections.unmodifiableList(new ArrayList<>(generated));
+		this.skipped = Collections.unmodifiableList(new ArrayList<>(skipped));
+	}
+
+	/**
+	 * @return
+	 *      All lines logged during the run, in order.
+	 */
+	public List<String> log() {
+		return log;
+	}
+
+	/**
+	 * @return
+	 *      Logged errors, in order.
+	 */
+	public List<String> errors() {
+		return startingWith("Error");
+	}
+
+	/**
+	 * @return
+	 *      Logged warnings, in order.
+	 */
+	public List<String> warnings() {
+		return startingWith("Warning");
+	}
+
+	/**
+	 * @return
+	 *      Output files that were generated, as named in the settings.
+	 */
+	public List<String> generatedFiles() {
+		return generated;
+	}
+
+	/**
+	 * @return
+	 *      Output files that were skipped by incremental generation, as named
+	 *      in the settings.
+	 */
+	public List<String> skippedFiles() {
+		return skipped;
+	}
+
+	/**
+	 * @return
+	 *      Whether the run finished without logging errors.
+	 */
+	public boolean success() {
+		return errors().isEmpty();
+	}
+
+	/**
+	 * Finds the logged lines starting with the specified prefix.
+	 *
+	 * @param prefix
+	 *      Prefix to look for, after any leading line breaks.
+	 * @return
+	 *      Matching lines, in order.
+	 */
+	private List<String> startingWith(String prefix) {
+		ArrayList<String> lines = new ArrayList<>();
+		for (String line : log) {
+			if (line.trim().startsWith(prefix)) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Records the expansion of templates during a single Generator run as nested
+ * spans, so a slow run can be traced back to the template and parameter that
+ * caused it. Written as a trace in the Chrome trace event format when tracing
+ * is enabled, which can be opened in chrome://tracing or ui.perfetto.dev.
+ *
+ * Spans are recorded for each output file, each template processed for it,
+ * each parameter a $p-template$ or $p-block$ command is expanded for and each
+ * $p-line$ command. Each span holds the number of code lines produced in it.
+ * Spans are recorded per thread, spans on the same thread nest by time.
+ *
+ * Trace format:
+ * { "displayTimeUnit" : "ms",
+ *   "traceEvents" : [ { "name" : name, "cat" : category, "ph" : "X",
+ *                       "ts" : start, "dur" : duration, "pid" : 1,
+ *                       "tid" : thread, "args" : { "lines" : lines, ... } },
+ *                     ... ] }
+ * Times are in microseconds from the start of the run.
+ *
+ * Spans can be recorded from several threads at the same time.
+ */
+public class GenerationTrace {
+	/**
+	 * A finished span.
+	 */
+	private static class Span {
+		private final String name;
+		private final String category;
+		private final long thread;
+		private final long start;
+		private final long end;
+		private final int lines;
+		// additional arguments, as key value pairs
+		private final String[] args;
+
+		private Span(
+						String name,
+						String category,
+						long thread,
+						long start,
+						long end,
+						int lines,
+						String[] args
+		) {
+			this.name = name;
+			this.category = category;
+			this.thread = thread;
+			this.start = start;
+			this.end = end;
+			this.lines = lines;
+			this.args = args;
+		}
+	}
+
+	// start of the run
+	private final long start = System.nanoTime();
+	private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+	// name of each thread spans were recorded on
+	private final Map<Long, String> threads = new ConcurrentHashMap<>();
+
+	/**
+	 * Records a span on the current thread that ends now.
+	 *
+	 * @param name
+	 *      Name of the span, shown in the trace viewer.
+	 * @param category
+	 *      Kind of span, such as the command that caused it.
+	 * @param start
+	 *      Start time of the span, from System.nanoTime.
+	 * @param lines
+	 *      Number of code lines produced in the span.
+	 * @param args
+	 *      Additional arguments, as key value pairs.
+	 */
+	void span(String name, String category, long start, int lines, String... args) {
+		long end = System.nanoTime();
+		Thread thread = Thread.currentThread();
+		threads.putIfAbsent(thread.getId(), thread.getName());
+		spans.add(new Span(name, category, thread.getId(), start, end, lines, args));
+	}
+
+	/**
+	 * Writes the trace of this run to the specified file.
+	 *
+	 * @param fileName
+	 *      Trace file to write.
+	 */
+	void save(String fileName) {
+		JSONArray events = new JSONArray();
+		threads.forEach((id, name) -> {
+			JSONObject event = new JSONObject();
+			event.put("name", "thread_name");
+			event.put("ph", "M");
+			event.put("pid", 1);
+			event.put("tid", id);
+			event.put("args", new JSONObject().put("name", name));
+			events.put(event);
+		});
+		for (Span span : spans) {
+			JSONObject args = new JSONObject();
+			args.put("lines", span.lines);
+			for (int i = 0; i + 1 < span.args.length; i += 2) {
+				args.put(span.args[i], span.args[i + 1]);
+			}
+			JSONObject event = new JSONObject();
+			event.put("name", span.name);
+			event.put("cat", span.category);
+			event.put("ph", "X");
+			event.put("ts", micros(span.start - start));
+			event.put("dur", micros(span.end - span.start));
+			event.put("pid", 1);
+			event.put("tid", span.thread);
+			event.put("args", args);
+			events.put(event);
+		}
+		JSONObject trace = new JSONObject();
+		trace.put("displayTimeUnit", "ms");
+		trace.put("traceEvents", events);
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add(trace.toString());
+		Utilities.writeLinesToFile(lines, fileName, true);
+	}
+
+	/**
+	 * @return
+	 *      Time in microseconds.
+	 */
+	private static double micros(long nanos) {
+		return nanos / 1000.0;
+	}
+}
@@ -0,0 +1,635 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+
+/**
+ * Generates all files specified by a set of settings.
+ *
+ * In this class:
+ * - Handling of parameters files
+ * - Creation of directories and files
+ * - Starting base template processing for each file from settings
+ *
+ * A generator keeps all of it's state in the instance, so any number of
+ * generators can be used in one program, also at the same time on separate
+ * threads. Each run returns the files it generated and everything it logged,
+ * instead of printing it; see GenerationResult. The log of a run is filtered
+ * by the log settings of it's own generator, see LogFilter. Compiled templates, parameter
+ * files and file hashes are cached for the whole program, see TemplateCache,
+ * ParamCache and FileHashes.
+ *
+ * If metrics are enabled, each run writes a report of the time taken and
+ * code generated per file and per template, see GenerationMetrics. If
+ * tracing is enabled, each run writes a trace of all template expansions, see
+ * GenerationTrace.
+ *
+ * To change template processing behaviour, see TemplateProcessor.java
+ */
+public class Generator {
+	private final GeneratorSettings settings;
+	// Table of all available parameters
+	private ParamTable params = new ParamTable();
+	// Table of parameters to use for each file
+	private final Map<String, ParamTable> fileParams = new HashMap<>();
+	// parameter csv file used for each file
+	private final Map<String, String> fileParamsCSV = new HashMap<>();
+	// hash of the settings used for each file
+	private final Map<String, String> fileSettings = new HashMap<>();
+	// input files read for each file when it was last generated
+	private final Map<String, Set<Path>> fileInputs = new ConcurrentHashMap<>();
+	private GenerationManifest manifest;
+	// metrics of the current run, null if metrics are disabled
+	private GenerationMetrics metrics;
+	// files read during the current run
+	private RunCache run;
+	// trace of the current run, null if tracing is disabled
+	private GenerationTrace trace;
+	// files generated and skipped in the current run
+	private final Set<String> generated = ConcurrentHashMap.newKeySet();
+	private final Set<String> skipped = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Constructs a generator for the specified settings. The settings should
+	 * not be changed while the generator is used.
+	 *
+	 * @param settings
+	 *      Settings to generate files with.
+	 */
+	public Generator(GeneratorSettings settings) {
+		this.settings = settings;
+	}
+	
+	/**
+	 * @return
+	 *      The settings of this generator.
+	 */
+	public GeneratorSettings settings() {
+		return settings;
+	}
+	
+	/**
+	 * Loads the parameters and generates all specified files. Unexpected
+	 * failures are logged as errors instead of thrown.
+	 *
+	 * @return
+	 *      The generated files and the log output of this run.
+	 */
+	public synchronized GenerationResult generate() {
+		return generate(false);
+	}
+	
+	/**
+	 * Loads the parameters and generates all specified files, see generate().
+	 *
+	 * @param print
+	 *      Whether the log output should also be printed while generating,
+	 *      instead of only being returned. Used by the command line program.
+	 * @return
+	 *      The generated files and the log output of this run.
+	 */
+	public synchronized GenerationResult generate(boolean print) {
+		startLogCapture(print);
+		try {
+			generated.clear();
+			skipped.clear();
+			run = new RunCache();
+			fileInputs.clear();
+			startReports();
+			
+			// Create map of all available parameters
+			long start = System.nanoTime();
+			preloadParams();
+			readParams();
+			long paramsTime = System.nanoTime() - start;
+			
+			// generate all required directories specified in settings
+			Utilities.log("\nMaking required directories...");
+			makeDirs();
+			
+			// load subsystem parameters.
+			Utilities.log("\nLoading subsystem parameters...");
+			start = System.nanoTime();
+			loadParams();
+			if (null != metrics) {
+				metrics.addParamsTime(paramsTime + System.nanoTime() - start);
+			}
+			
+			// generate all required files specified in settings
+			Utilities.log("Generating specified files...");
+			if (settings.incremental_generation) {
+				manifest = GenerationManifest.load(settings.path(settings.manifest_file));
+			}
+			makeFiles(settings.files);
+			if (settings.incremental_generation) {
+				manifest.save(settings.path(settings.manifest_file));
+			}
+			saveReports();
+			
+			// Indicate ending for user.
+			String exit =
+						"\nSuccessfully finished generating " + settings.subsystem_name +
+						" Subsystem!\n" +
+						"Please do check the output files in ./" + settings.subsystem_name +
+						" and take any possible warnings or errors above into account";
+			Utilities.log(exit);
+		} catch (RuntimeException e) {
+			Utilities.log("Error: generation failed : " + e);
+		}
+		return result(Utilities.stopLogCapture());
+	}
+	
+	/**
+	 * Generates the files affected by the specified changed files again. If a
+	 * parameter file changed, the parameters are loaded again. Files without
+	 * recorded inputs are always generated again. Changes to the settings are
+	 * not detected, use a new generator for changed settings.
+	 *
+	 * @param changed
+	 *      Changed files, as absolute paths.
+	 * @return
+	 *      The generated files and the log output of this run, null if none of
+	 *      the files were affected.
+	 */
+	public synchronized GenerationResult regenerate(Set<Path> changed) {
+		// files with a changed input, files without recorded inputs to be sure
+		Map<String, String> affected = new HashMap<>();
+		settings.files.forEach((fileName, baseTemplate) -> {
+			Set<Path> inputs = fileInputs.get(fileName);
+			if (null == inputs || !Collections.disjoint(inputs, changed)) {
+				affected.put(fileName, baseTemplate);
+			}
+		});
+		if (affected.isEmpty()) {
+			return null;
+		}
+		
+		startLogCapture(false);
+		try {
+			generated.clear();
+			skipped.clear();
+			run = new RunCache();
+			startReports();
+			changed.forEach(file -> Utilities.log("\nChanged : " + file));
+			boolean paramsChanged =
+							changed.contains(absolute(settings.path(settings.parameters_file)));
+			for (String csv : fileParamsCSV.values()) {
+				paramsChanged |= changed.contains(absolute(csv));
+			}
+			if (paramsChanged) {
+				Utilities.log("\nLoading subsystem parameters...");
+				long start = System.nanoTime();
+				preloadParams();
+				readParams();
+				loadParams();
+				if (null != metrics) {
+					metrics.addParamsTime(System.nanoTime() - start);
+				}
+			}
+			
+			if (settings.incremental_generation) {
+				manifest = GenerationManifest.load(settings.path(settings.manifest_file));
+				settings.files.keySet().stream()
+								.filter(fileName -> !affected.containsKey(fileName))
+								.forEach(manifest::keep);
+			}
+			makeFiles(affected);
+			if (settings.incremental_generation) {
+				manifest.save(settings.path(settings.manifest_file));
+			}
+			saveReports();
+		} catch (RuntimeException e) {
+			Utilities.log("Error: generation failed : " + e);
+		}
+		return result(Utilities.stopLogCapture());
+	}
+	
+	/**
+	 * Starts capturing the log output of a run. Lines below the log_level and
+	 * repeats beyond the log_repeat_limit of the settings are left out as they
+	 * are logged.
+	 *
+	 * @param print
+	 *      Whether the log output should also be printed.
+	 */
+	private void startLogCapture(boolean print) {
+		Utilities.startLogCapture(print,
+						new LogFilter(settings.log_level, settings.log_repeat_limit));
+		if (null == LogWriter.Level.named(settings.log_level)) {
+			Utilities.log("Warning: unknown log level " + settings.log_level +
+							", using info");
+		}
+	}
+	
+	/**
+	 * Returns all input files of the last run: the parameter files and every
+	 * file read while generating the files.
+	 *
+	 * @return
+	 *      Input files, as absolute paths.
+	 */
+	public synchronized Set<Path> inputFiles() {
+		Set<Path> inputs = new HashSet<>();
+		inputs.add(absolute(settings.path(settings.parameters_file)));
+		fileParamsCSV.values().forEach(csv -> inputs.add(absolute(csv)));
+		fileInputs.values().forEach(inputs::addAll);
+		return inputs;
+	}
+	
+	/**
+	 * Collects the result of the current run.
+	 *
+	 * @param log
+	 *      Lines logged during the run.
+	 * @return
+	 *      Result of the run, files in the order of the settings.
+	 */
+	private GenerationResult result(List<String> log) {
+		ArrayList<String> generatedFiles = new ArrayList<>();
+		ArrayList<String> skippedFiles = new ArrayList<>();
+		for (String fileName : settings.files.keySet()) {
+			if (generated.contains(fileName)) {
+				generatedFiles.add(fileName);
+			} else if (skipped.contains(fileName)) {
+				skippedFiles.add(fileName);
+			}
+		}
+		return new GenerationResult(log, generatedFiles, skippedFiles);
+	}
+	
+	/**
+	 * Starts recording the metrics and trace of a run, if enabled.
+	 */
+	private void startReports() {
+		metrics = settings.metrics ? new GenerationMetrics(settings.subsystem_name) :
+						null;
+		trace = settings.trace ? new GenerationTrace() : null;
+	}
+	
+	/**
+	 * Writes the metrics report and trace of the current run, if enabled.
+	 */
+	private void saveReports() {
+		if (null != metrics) {
+			metrics.save(settings.path(settings.metrics_file));
+		}
+		if (null != trace) {
+			trace.save(settings.path(settings.trace_file));
+		}
+	}
+	
+	/**
+	 * Parses the parameter files that are not cached yet at the same time on
+	 * separate threads, if parallel generation is enabled. The log output is
+	 * dropped, it is logged when the parameters are read from the cache.
+	 */
+	private void preloadParams() {
+		Map<String, Integer> csvFiles = new HashMap<>();
+		csvFiles.put(settings.path(settings.parameters_file),
+						settings.auto_increment_start_id);
+		settings.fileParameters.values().forEach(parameters -> {
+			if (parameters instanceof String) {
+				csvFiles.putIfAbsent(settings.path((String) parameters), -1);
+			}
+		});
+		if (!settings.parallel_generation || csvFiles.size() < 2) {
+			return;
+		}
+		
+		int threads = Math.min(csvFiles.size(),
+						Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<?>> tasks = new ArrayList<>();
+		csvFiles.forEach((csv, startId) -> tasks.add(pool.submit(() -> {
+			Utilities.startLogCapture();
+			try {
+				ParamCache.read(csv, run.hash(csv), startId);
+			} finally {
+				Utilities.stopLogCapture();
+			}
+		})));
+		pool.shutdown();
+		for (Future<?> task : tasks) {
+			try {
+				task.get();
+			} catch (InterruptedException | ExecutionException e) {
+				// read again when the parameters are loaded
+			}
+		}
+	}
+	
+	/**
+	 * Reads the main parameter file.
+	 */
+	private void readParams() {
+		String csv = settings.path(settings.parameters_file);
+		params = ParamCache.read(csv, run.hash(csv), settings.auto_increment_start_id);
+		if (null == params) {
+			params = new ParamTable();
+		}
+	}
+	
+	/**
+	 * Loads specified parameters per file from the settings.
+	 */
+	private void loadParams() {
+		fileParams.clear();
+		fileParamsCSV.clear();
+		fileSettings.clear();
+		// find parameters to use for each file
+		for (String fileName : settings.files.keySet()) {
+			// make empty table of params belonging to this file
+			ParamTable filePars = new ParamTable();
+			fileParamsCSV.put(fileName, settings.path(settings.parameters_file));
+			// settings that affect the generated code of this file
+			fileSettings.put(fileName, FileHashes.hashString(
+							settings.fileDescriptions.get(fileName) + "|" +
+							settings.subsystem_name + "|" + settings.continue_indentation +
+							"|" + settings.auto_increment_start_id + "|" +
+							settings.template_dir + "|" + settings.template_extension));
+			// each file might have specified it's parameters
+			Object parameters = settings.fileParameters.get(fileName);
+			if (parameters instanceof String) {
+				// parameters is a filename containing parameter descriptions
+				String csv = settings.path((String) parameters);
+				fileParamsCSV.put(fileName, csv);
+				ParamTable pars = ParamCache.read(csv, run.hash(csv), -1);
+				if (null != pars) {
+					filePars = pars;
+				}
+			} else if (parameters instanceof JSONArray) {
+				// parameters is an array containing parameter dsecriptions
+				for (Object par : (JSONArray) parameters) {
+					// description is a default parameter name
+					if (par instanceof String) {
+						Param p = params.get((String) par);
+						if (null == p) {
+							Utilities.log("Error: Unknown parameter : " + par + " : " +
+											"Parameter skipped!");
+						} else {
+							filePars.add(p);
+						}
+					}
+					// description is a new custom parameter
+					if (par instanceof JSONArray) {
+						filePars.add(new Param((JSONArray) par));
+					}
+				}
+			} else if (null == parameters) {
+				// all parameters, the table is shared by these files
+				filePars = params;
+			}
+			// add the list of parameters for this file to the map
+			fileParams.put(fileName, filePars);
+		}
+	}
+	
+	/**
+	 * Checks if any of the specified directories should be created.
+	 *
+	 * Deletes pre-existing directories if clear folders is enabled.
+	 */
+	private void makeDirs() {
+		String subSysName = settings.subsystem_name;
+		Path SubsFolder = Paths.get(settings.path("./" + subSysName));
+		
+		if (Files.exists(SubsFolder) && settings.clear_directories) {
+			deleteDirectoryStream(SubsFolder);
+		}
+		
+		// Try to make the main directory
+		try {
+			Files.createDirectory(SubsFolder);
+		} catch(FileAlreadyExistsException e) {
+			Utilities.log("Warning: The main directory " + subSysName + " " +
+							"already" +
+							" exists!");
+		} catch (IOException e) {
+			Utilities.log("Error: unable to create main directory " + subSysName + "!");
+		}
+		// Try to make the subdirectories
+		settings.subdirectories.forEach(dir -> {
+			Path subDir = Paths.get(settings.path("./" + subSysName + "/" + dir));
+			if (Files.exists(subDir) && settings.clear_directories) {
+				deleteDirectoryStream(subDir);
+			}
+			try {
+				Files.createDirectory(subDir);
+			} catch(FileAlreadyExistsException e) {
+				Utilities.log("Warning: The subdirectory " + dir + " already " +
+								"exists!");
+			} catch (IOException e) {
+				Utilities.log("Error: unable to create subdirectory " + dir + "!");
+			}
+		});
+	}
+	
+	/**
+	 * Generates the specified files.
+	 *
+	 * If parallel generation is enabled the files are generated at the same
+	 * time on separate threads. The log output of each file is held back and
+	 * logged in the same order as for sequential generation.
+	 *
+	 * @param files
+	 *      Files to generate and their base templates.
+	 */
+	private void makeFiles(Map<String, String> files) {
+		TemplateProcessor tProc = new TemplateProcessor(settings.subsystem_name,
+						settings.path(settings.template_dir), settings.template_extension,
+						settings.continue_indentation, settings.overwrite_existing,
+						settings.parallel_expansion_threshold, settings.base_directory);
+		if (!settings.parallel_generation || files.size() < 2) {
+			files.forEach((fileName, baseTemplate) ->
+							makeFile(tProc, fileName, baseTemplate));
+			return;
+		}
+		
+		int threads = Math.min(files.size(),
+						Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// log output per file, in order of the files
+		ArrayList<Future<ArrayList<String>>> logs = new ArrayList<>();
+		files.forEach((fileName, baseTemplate) -> logs.add(pool.submit(() -> {
+			// repeats are left out when the logs are joined, in file order
+			Utilities.startLogCapture(false, new LogFilter(settings.log_level, -1));
+			try {
+				makeFile(tProc, fileName, baseTemplate);
+			} catch (RuntimeException e) {
+				Utilities.log("Error: unable to generate file " + fileName + " : " +
+								e);
+			}
+			return Utilities.stopLogCapture();
+		})));
+		pool.shutdown();
+		for (Future<ArrayList<String>> log : logs) {
+			try {
+				Utilities.log(log.get());
+			} catch (InterruptedException | ExecutionException e) {
+				Utilities.log("Error: parallel file generation was interrupted!");
+			}
+		}
+	}
+	
+	/**
+	 * Generates a single file by processing it's base template, then checks
+	 * and writes the result.
+	 *
+	 * If streaming output is enabled the code is written to the file and
+	 * checked while it is generated, instead of being kept in memory.
+	 *
+	 * If incremental generation is enabled the file is skipped if it and it's
+	 * inputs did not change since the previous run, see GenerationManifest.
+	 *
+	 * @param tProc
+	 *      Template processor to use.
+	 * @param fileName
+	 *      File to generate, relative to the subsystem directory.
+	 * @param baseTemplate
+	 *      Base template to generate the file from.
+	 */
+	private void makeFile(
+					TemplateProcessor tProc,
+					String fileName,
+					String baseTemplate
+	) {
+		Utilities.log("\nProcessing file : " + fileName);
+		long start = System.nanoTime();
+		GenerationMetrics.FileMetrics fileMetrics = null == metrics ? null :
+						metrics.file(fileName);
+		String outputFile = settings.path(settings.subsystem_name + "/" + fileName);
+		String settingsHash = fileSettings.get(fileName);
+		if (settings.incremental_generation
+						&& manifest.upToDate(fileName, settingsHash, outputFile, run)) {
+			Utilities.log("Inputs unchanged since last generation : File skipped!");
+			fileInputs.put(fileName, absolute(manifest.inputs(fileName)));
+			skipped.add(fileName);
+			if (null != fileMetrics) {
+				fileMetrics.finish(System.nanoTime() - start, true);
+			}
+			return;
+		}
+		
+		GenerationContext context = new GenerationContext(fileParams.get(fileName),
+						run, settings.incremental_generation, fileMetrics, trace);
+		int lines = 0;
+		context.addInput(fileParamsCSV.get(fileName));
+		// time spent writing the output file
+		long written;
+		if (settings.stream_output) {
+			FileSink file = new FileSink(outputFile, settings.overwrite_existing,
+							settings.write_if_changed);
+			boolean finished = false;
+			try {
+				BraceChecker braces = new BraceChecker(file);
+				CodeSink out = null == fileMetrics ? braces :
+								new MetricsSink(braces, fileMetrics);
+				tProc.processTemplate(baseTemplate, context, out);
+				braces.check(fileName, baseTemplate);
+				lines = file.size();
+				finished = true;
+			} finally {
+				written = System.nanoTime();
+				// never replace the file with partly generated code
+				if (finished) {
+					file.close();
+				} else {
+					file.abort();
+				}
+				written = System.nanoTime() - written;
+			}
+		} else {
+			ArrayList<String> codeLines =
+							tProc.processTemplate(baseTemplate, context);
+			Utilities.checkBraces(codeLines, fileName, baseTemplate);
+			if (null != codeLines) {
+				lines = codeLines.size();
+				if (null != fileMetrics) {
+					GenerationMetrics.addLines(fileMetrics, codeLines);
+				}
+			}
+			written = System.nanoTime();
+			Utilities.writeLinesToFile(codeLines, outputFile,
+							settings.overwrite_existing, settings.write_if_changed);
+			written = System.nanoTime() - written;
+		}
+		generated.add(fileName);
+		if (null != fileMetrics) {
+			long total = System.nanoTime() - start;
+			fileMetrics.add(GenerationMetrics.Metric.IO_TIME, written);
+			fileMetrics.add(GenerationMetrics.Metric.EXPANSION_TIME, total - written);
+			fileMetrics.finish(total, false);
+		}
+		if (null != trace) {
+			trace.span(fileName, "file", start, lines, "base_template", baseTemplate);
+		}
+		
+		fileInputs.put(fileName, absolute(context.inputs().keySet()));
+		if (settings.incremental_generation) {
+			manifest.record(fileName, settingsHash, context, outputFile);
+		}
+	}
+	
+	/**
+	 * Deletes directories and subdirectories of the specified path.
+	 *
+	 * Used when clearing existing directories is enabled.
+	 *
+	 * @param path
+	 *      Starting path to delete
+	 */
+	private void deleteDirectoryStream(Path path) {
+		try {
+			Files.walk(path)
+					.sorted(Comparator.reverseOrder())
+					.map(Path::toFile)
+					.forEach(File::delete);
+		} catch (IOException e) {
+			Utilities.log("Error deleting " + settings.subsystem_name + " folder!");
+		}
+	}
+	
+	/**
+	 * Returns the normalized absolute path of a file.
+	 *
+	 * @param fileName
+	 *      File name, relative to the working directory.
+	 * @return
+	 *      Absolute path of the file.
+	 */
+	static Path absolute(String fileName) {
+		return Paths.get(fileName).toAbsolutePath().normalize();
+	}
+	
+	/**
+	 * Returns the normalized absolute paths of a set of files.
+	 *
+	 * @param fileNames
+	 *      File names, relative to the working directory.
+	 * @return
+	 *      Absolute paths of the files.
+	 */
+	private static Set<Path> absolute(Collection<String> fileNames) {
+		Set<Path> paths = new HashSet<>();
+		fileNames.forEach(fileName -> paths.add(absolute(fileName)));
+		return paths;
+	}
+}
@@ -0,0 +1,355 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+
+/**
+ * Keeps the code generator resident, so repeated generation requests don't
+ * pay for starting the JVM and reading all templates again each time.
+ *
+ * The daemon listens on a loopback socket. Each request generates all files
+ * specified in settings.json, exactly like a normal run, and sends the
+ * program output back to the client. Compiled templates and file hashes stay
+ * cached between requests, and are only read again if their file changed.
+ *
+ * The daemon works in the directory it was started in, as all paths in the
+ * settings are relative to it. At startup it writes a random token to a file
+ * in that directory that only the current user can read, see tokenFile.
+ * Clients must send the token with each request, so only clients of the same
+ * user started in the same directory are served. Each client is handled on a
+ * thread of it's own, a client that doesn't send it's request in time is
+ * disconnected. Requests are generated one at a time.
+ *
+ * Protocol, one line each in UTF-8:
+ * - client : "generate" followed by the token and the client's working
+ *   directory
+ * - daemon : "OK" or "ERROR" followed by a reason, then the program output
+ *   until the connection is closed.
+ */
+public class GeneratorDaemon {
+	// default port to listen on / connect to
+	static final int DEFAULT_PORT = 47110;
+	// time a client gets to send it's request, in milliseconds
+	static final int REQUEST_TIMEOUT = 10000;
+	// longest request line accepted
+	private static final int MAX_REQUEST = 8192;
+	private static final String REQUEST = "generate ";
+	private static final String OK = "OK";
+	private static final String ERROR = "ERROR ";
+	// held while generating, requests are generated one at a time
+	private static final Object generating = new Object();
+
+	/**
+	 * Listens for generation requests on the specified port and handles them
+	 * on a thread per client. Runs until the program is stopped.
+	 *
+	 * @param port
+	 *      Loopback port to listen on.
+	 */
+	static void serve(int port) {
+		String token = writeToken(port);
+		ServerSocket server = null == token ? null : listen(port);
+		if (null != server) {
+			accept(server, token);
+		}
+	}
+
+	/**
+	 * Starts listening for generation requests on the specified port, the
+	 * requests are accepted on a background thread. Closing the returned
+	 * socket stops the daemon.
+	 *
+	 * @param port
+	 *      Loopback port to listen on.
+	 * @return
+	 *      Socket the daemon listens on, null if it could not be started.
+	 */
+	static ServerSocket start(int port) {
+		String token = writeToken(port);
+		ServerSocket server = null == token ? null : listen(port);
+		if (null != server) {
+			Thread thread = new Thread(() -> accept(server, token),
+							"daemon port " + port);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return server;
+	}
+
+	/**
+	 * Opens the loopback socket to listen on.
+	 *
+	 * @param port
+	 *      Loopback port to listen on.
+	 * @return
+	 *      The listening socket, null if the port could not be used.
+	 */
+	private static ServerSocket listen(int port) {
+		try {
+			ServerSocket server = new ServerSocket(port, 50,
+							InetAddress.getLoopbackAddress());
+			Utilities.log("Code generator daemon listening on port " + port +
+							", stop the program to quit...");
+			return server;
+		} catch (IOException e) {
+			Utilities.log("Error: unable to listen on port " + port + " : " +
+							e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Accepts clients and handles each on a thread of it's own, until the
+	 * socket is closed.
+	 *
+	 * @param server
+	 *      Socket to accept clients on, closed when done.
+	 * @param token
+	 *      Token the clients must send.
+	 */
+	private static void accept(ServerSocket server, String token) {
+		try (ServerSocket socket = server) {
+			while (true) {
+				Socket client;
+				try {
+					client = socket.accept();
+				} catch (IOException e) {
+					// closing the socket is how the daemon is stopped
+					if (!socket.isClosed()) {
+						Utilities.log("Error: daemon stopped listening on port " +
+										socket.getLocalPort() + " : " + e.getMessage());
+					}
+					return;
+				}
+				Thread thread = new Thread(() -> serve(client, token),
+								"daemon client " + client.getPort());
+				thread.setDaemon(true);
+				thread.start();
+			}
+		} catch (IOException e) {
+			// the socket could not be closed, nothing left to stop
+		}
+	}
+
+	/**
+	 * Handles a single client and closes the connection.
+	 *
+	 * @param client
+	 *      Connection to the client.
+	 * @param token
+	 *      Token the client must send.
+	 */
+	private static void serve(Socket client, String token) {
+		try (Socket connection = client) {
+			connection.setSoTimeout(REQUEST_TIMEOUT);
+			handle(connection, token);
+		} catch (IOException e) {
+			Utilities.log("Warning: generation request failed : " +
+							e.getMessage());
+		}
+	}
+
+	/**
+	 * Handles a single generation request.
+	 *
+	 * @param client
+	 *      Connection to the client.
+	 * @param token
+	 *      Token the client must send.
+	 * @throws IOException
+	 *      If the connection fails, or the client did not send it's request in
+	 *      time.
+	 */
+	private static void handle(Socket client, String token) throws IOException {
+		Reader in = new InputStreamReader(client.getInputStream(),
+						StandardCharsets.UTF_8);
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+						client.getOutputStream(), StandardCharsets.UTF_8));
+		String request = readRequest(in);
+		// token, then the working directory of the client
+		String[] arguments = null == request || !request.startsWith(REQUEST) ?
+						null : request.substring(REQUEST.length()).split(" ", 2);
+		if (null == arguments || 2 != arguments.length) {
+			out.println(ERROR + "unknown request");
+		} else if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+						arguments[0].getBytes(StandardCharsets.UTF_8))) {
+			out.println(ERROR + "invalid token, start the client in the directory " +
+							"of the daemon, as the same user");
+		} else if (!workingDir().equals(arguments[1])) {
+			out.println(ERROR + "the daemon is running in " + workingDir() +
+							", start the client there or start a daemon in " +
+							arguments[1]);
+		} else {
+			// the client waits for the output as long as generating takes
+			client.setSoTimeout(0);
+			try {
+				ArrayList<String> log;
+				synchronized (generating) {
+					log = Main.generateAgain();
+				}
+				out.println(OK);
+				log.forEach(out::println);
+			} catch (RuntimeException e) {
+				out.println(ERROR + "generation failed : " + e);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads the request line of a client.
+	 *
+	 * @param in
+	 *      Input from the client.
+	 * @return
+	 *      The request, null if the client sent nothing or a line longer than
+	 *      MAX_REQUEST.
+	 * @throws IOException
+	 *      If the connection fails, or the client did not send a full line in
+	 *      time.
+	 */
+	private static String readRequest(Reader in) throws IOException {
+		StringBuilder request = new StringBuilder();
+		int c;
+		while (-1 != (c = in.read()) && '\n' != c) {
+			if (request.length() == MAX_REQUEST) {
+				return null;
+			}
+			request.append((char) c);
+		}
+		if (-1 == c && 0 == request.length()) {
+			return null;
+		}
+		int end = request.length();
+		if (end > 0 && '\r' == request.charAt(end - 1)) {
+			request.setLength(end - 1);
+		}
+		return request.toString();
+	}
+
+	/**
+	 * Sends a generation request to a running daemon, and prints the program
+	 * output it sends back.
+	 *
+	 * @param port
+	 *      Loopback port the daemon listens on.
+	 * @return
+	 *      Whether the daemon generated the files.
+	 */
+	static boolean request(int port) {
+		String token;
+		try {
+			token = new String(Files.readAllBytes(tokenFile(port)),
+							StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			System.out.println("Error: no code generator daemon found in " +
+							workingDir() + " on port " + port + " : " + e.getMessage());
+			return false;
+		}
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(
+							socket.getOutputStream(), StandardCharsets.UTF_8));
+			out.println(REQUEST + token + " " + workingDir());
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+							socket.getInputStream(), StandardCharsets.UTF_8));
+			String status = in.readLine();
+			if (null == status || !OK.equals(status)) {
+				String reason = null == status ? "no response" : status;
+				if (reason.startsWith(ERROR)) {
+					reason = reason.substring(ERROR.length());
+				}
+				System.out.println("Error: code generator daemon refused request : " +
+								reason);
+				return false;
+			}
+			String line;
+			while (null != (line = in.readLine())) {
+				System.out.println(line);
+			}
+			return true;
+		} catch (IOException e) {
+			System.out.println("Error: no code generator daemon found on port " +
+							port + " : " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the token for this daemon, and writes it to the token file, which
+	 * only the current user may read.
+	 *
+	 * @param port
+	 *      Loopback port the daemon listens on.
+	 * @return
+	 *      The token, null if it could not be written.
+	 */
+	private static String writeToken(int port) {
+		byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		StringBuilder token = new StringBuilder();
+		for (byte b : random) {
+			token.append(String.format("%02x", b));
+		}
+		Path file = tokenFile(port);
+		try {
+			Files.deleteIfExists(file);
+			if (FileSystems.getDefault().supportedFileAttributeViews()
+							.contains("posix")) {
+				Files.createFile(file, PosixFilePermissions.asFileAttribute(
+								PosixFilePermissions.fromString("rw-------")));
+			} else {
+				File created = Files.createFile(file).toFile();
+				created.setReadable(false, false);
+				created.setWritable(false, false);
+				created.setReadable(true, true);
+				created.setWritable(true, true);
+			}
+			Files.write(file, token.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			Utilities.log("Error: unable to write daemon token file " + file +
+							" : " + e.getMessage());
+			return null;
+		}
+		file.toFile().deleteOnExit();
+		return token.toString();
+	}
+
+	/**
+	 * Returns the file holding the token of the daemon listening on the
+	 * specified port, in the working directory.
+	 *
+	 * @param port
+	 *      Loopback port the daemon listens on.
+	 * @return
+	 *      Path of the token file.
+	 */
+	static Path tokenFile(int port) {
+		return Paths.get(".CodeGenerator-" + port + ".token");
+	}
+
+	/**
+	 * Returns the working directory of this program.
+	 *
+	 * @return
+	 *      Absolute path of the working directory.
+	 */
+	private static String workingDir() {
+		return Paths.get("").toAbsolutePath().normalize().toString();
+	}
+}
@@ -0,0 +1,321 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Settings for a Generator, either loaded from a settings.json file or set
+ * directly by a program that embeds the generator.
+ *
+ * The fields have the same names and defaults as the keys in settings.json,
+ * see the manual. File names are relative to the base directory, which is
+ * the working directory of the program unless specified otherwise.
+ */
+public class GeneratorSettings {
+	private static final String TEMPLATE_EXTENSION = ".cgen_template";
+	
+	// directory all other file names are relative to, "" for the working directory
+	public String base_directory = "";
+	// directory containing the templates
+	public String template_dir = "templates/";
+	// extension used for templates, in regex format
+	public String template_extension = "\\.cgen_template";
+	// main subsystem / directory name
+	public String subsystem_name = "generated_subsystem";
+	// subdirectories
+	public final ArrayList<String> subdirectories = new ArrayList<>();
+	// main parameter file location
+	public String parameters_file = "params.csv";
+	// whether or not to overwrite existing files
+	public boolean overwrite_existing = true;
+	public boolean clear_directories = false;
+	// whether or not to keep indentation for sub-templates
+	public boolean continue_indentation = true;
+	// whether or not to generate files in parallel
+	public boolean parallel_generation = false;
+	// whether or not to write generated code to file while generating
+	public boolean stream_output = false;
+	// whether or not to only write files whose content changed
+	public boolean write_if_changed = false;
+	// whether or not to skip files whose inputs did not change
+	public boolean incremental_generation = false;
+	// file recording the inputs of the previous run
+	public String manifest_file = "CodeGenerator.manifest.json";
+	// minimum number of parameters to expand in parallel, -1 to disable
+	public int parallel_expansion_threshold = -1;
+	// logging
+	public boolean logging = true;
+	// file for logging
+	public String logfile = "CodeGenerator.log";
+	// lowest level of log lines to print: info, warning or error
+	public String log_level = "info";
+	// number of times the same log line is printed, -1 for no limit
+	public int log_repeat_limit = -1;
+	// whether or not to write a report of the time taken per file and template
+	public boolean metrics = false;
+	// file for the metrics report
+	public String metrics_file = "CodeGenerator.metrics.json";
+	// whether or not to write a trace of all template expansions
+	public boolean trace = false;
+	// file for the trace
+	public String trace_file = "CodeGenerator.trace.json";
+	// start point for autoincrement parameter ids;
+	public int auto_increment_start_id = -1;
+	
+	// files to be generated and their base templates
+	final Map<String, String> files = new HashMap<>();
+	// parameters specified per file, a csv file name or a JSONArray
+	final Map<String, Object> fileParameters = new HashMap<>();
+	// description of each file as specified, part of it's settings hash
+	final Map<String, String> fileDescriptions = new HashMap<>();
+	
+	/**
+	 * Reads the settings from the specified settings.json file.
+	 *
+	 * @param fileName
+	 *      Settings file to read.
+	 * @return
+	 *      The settings, null if the file could not be read.
+	 */
+	public static GeneratorSettings load(String fileName) {
+		JSONObject settings = Utilities.readJSONFromFile(fileName);
+		return null == settings ? null : fromJSON(settings);
+	}
+	
+	/**
+	 * Reads the settings from a settings.json object. Settings that are not
+	 * specified, or have the wrong type, keep their default.
+	 *
+	 * @param settings
+	 *      Settings in settings.json format.
+	 * @return
+	 *      The settings.
+	 */
+	public static GeneratorSettings fromJSON(JSONObject settings) {
+		GeneratorSettings s = new GeneratorSettings();
+		
+		// find main directory from settings
+		s.subsystem_name = settings.getString("subsystem_name");
+		
+		// find subdirectories from settings
+		if (settings.has("subdirectories")) {
+			if (settings.get("subdirectories") instanceof JSONArray) {
+				JSONArray subdirectories = settings.getJSONArray("subdirectories");
+				for (Object folderName : subdirectories) {
+					if (folderName instanceof String) {
+						s.subdirectories.add((String) folderName);
+					}
+				}
+			}
+		}
+		
+		// find files to generate from settings
+		// files in settings.json should be an object array = [{..},{..},...]
+		if (settings.has("files_to_generate")) {
+			JSONArray sFiles = settings.getJSONArray("files_to_generate");
+			for (Object file : sFiles) {
+				if (file instanceof JSONObject) {
+					JSONObject fileObj = (JSONObject) file;
+					String fileName = fileObj.getString("filename");
+					// if a base template was specified, use that template
+					if (fileObj.has("base_template")) {
+						s.files.put(fileName, fileObj.getString("base_template"));
+					} else {
+						// use the filename to search for a base template
+						s.files.put(fileName, fileName + TEMPLATE_EXTENSION);
+					}
+					// each file object might have a parameter array
+					if (fileObj.has("parameters")) {
+						s.fileParameters.put(fileName, fileObj.get("parameters"));
+					}
+					s.fileDescriptions.put(fileName, fileObj.toString());
+				}
+			}
+		}
+		
+		// overwriting existing files
+		if (settings.has("overwrite_existing_files")) {
+			if (settings.get("overwrite_existing_files") instanceof Boolean) {
+				s.overwrite_existing = settings.getBoolean("overwrite_existing_files");
+			}
+		}
+		
+		// clear folders before generation
+		if (settings.has("clear_existing_directories")) {
+			if (settings.get("clear_existing_directories") instanceof Boolean) {
+				s.clear_directories = settings.getBoolean("clear_existing_directories");
+			}
+		}
+		
+		// keep indentation for subtemplates
+		if (settings.has("continue_indentation")) {
+			if (settings.get("continue_indentation") instanceof Boolean) {
+				s.continue_indentation = settings.getBoolean("continue_indentation");
+			}
+		}
+		
+		// alternative default parameters csv file
+		if (settings.has("parameters")) {
+			if (settings.get("parameters") instanceof String) {
+				s.parameters_file = (String) settings.get("parameters");
+			}
+		}
+		
+		// enable and set auto increment start id for parameter ids
+		if (settings.has("auto_increment_start_id")) {
+			if (settings.get("auto_increment_start_id") instanceof Integer) {
+				s.auto_increment_start_id = settings.getInt("auto_increment_start_id");
+			}
+		}
+		
+		// generate files in parallel?
+		if (settings.has("parallel_generation")) {
+			if (settings.get("parallel_generation") instanceof Boolean) {
+				s.parallel_generation = settings.getBoolean("parallel_generation");
+			}
+		}
+		
+		// write files while generating?
+		if (settings.has("stream_output")) {
+			if (settings.get("stream_output") instanceof Boolean) {
+				s.stream_output = settings.getBoolean("stream_output");
+			}
+		}
+		
+		// leave files with unchanged content untouched?
+		if (settings.has("write_if_changed")) {
+			if (settings.get("write_if_changed") instanceof Boolean) {
+				s.write_if_changed = settings.getBoolean("write_if_changed");
+			}
+		}
+		
+		// skip files with unchanged inputs?
+		if (settings.has("incremental_generation")) {
+			if (settings.get("incremental_generation") instanceof Boolean) {
+				s.incremental_generation = settings.getBoolean("incremental_generation");
+			}
+		}
+		
+		// alternative manifest file for incremental generation
+		if (settings.has("manifest_file")) {
+			if (settings.get("manifest_file") instanceof String) {
+				s.manifest_file = settings.getString("manifest_file");
+			}
+		}
+		
+		// expand parameter commands in parallel from this number of parameters
+		if (settings.has("parallel_expansion_threshold")) {
+			if (settings.get("parallel_expansion_threshold") instanceof Integer) {
+				s.parallel_expansion_threshold =
+								settings.getInt("parallel_expansion_threshold");
+			}
+		}
+		
+		// logging enabled?
+		if (settings.has("logging")) {
+			if (settings.get("logging") instanceof Boolean) {
+				s.logging = settings.getBoolean("logging");
+			}
+		}
+		
+		// logfile specified?
+		if (settings.has("logfile")) {
+			if (settings.get("logfile") instanceof String) {
+				s.logfile = (String) settings.get("logfile");
+			}
+		}
+		
+		// only log warnings and errors, or only errors?
+		if (settings.has("log_level")) {
+			if (settings.get("log_level") instanceof String) {
+				s.log_level = settings.getString("log_level");
+			}
+		}
+		
+		// leave out repeated log lines
+		if (settings.has("log_repeat_limit")) {
+			if (settings.get("log_repeat_limit") instanceof Integer) {
+				s.log_repeat_limit = settings.getInt("log_repeat_limit");
+			}
+		}
+		
+		// metrics report enabled?
+		if (settings.has("metrics")) {
+			if (settings.get("metrics") instanceof Boolean) {
+				s.metrics = settings.getBoolean("metrics");
+			}
+		}
+		
+		// alternative metrics report file
+		if (settings.has("metrics_file")) {
+			if (settings.get("metrics_file") instanceof String) {
+				s.metrics_file = settings.getString("metrics_file");
+			}
+		}
+		
+		// trace of template expansions enabled?
+		if (settings.has("trace")) {
+			if (settings.get("trace") instanceof Boolean) {
+				s.trace = settings.getBoolean("trace");
+			}
+		}
+		
+		// alternative trace file
+		if (settings.has("trace_file")) {
+			if (settings.get("trace_file") instanceof String) {
+				s.trace_file = settings.getString("trace_file");
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * Adds a file to generate, using all parameters of the main parameter
+	 * file.
+	 *
+	 * @param fileName
+	 *      File to generate, relative to the subsystem directory.
+	 * @param baseTemplate
+	 *      Base template to generate the file from, relative to the template
+	 *      directory.
+	 */
+	public void addFile(String fileName, String baseTemplate) {
+		files.put(fileName, baseTemplate);
+		fileParameters.remove(fileName);
+		fileDescriptions.put(fileName, fileName + "|" + baseTemplate);
+	}
+	
+	/**
+	 * Adds a file to generate, using the parameters of the specified
+	 * parameter file.
+	 *
+	 * @param fileName
+	 *      File to generate, relative to the subsystem directory.
+	 * @param baseTemplate
+	 *      Base template to generate the file from, relative to the template
+	 *      directory.
+	 * @param parametersFile
+	 *      Parameter csv file to use for this file.
+	 */
+	public void addFile(String fileName, String baseTemplate, String parametersFile) {
+		files.put(fileName, baseTemplate);
+		fileParameters.put(fileName, parametersFile);
+		fileDescriptions.put(fileName, fileName + "|" + baseTemplate + "|" +
+						parametersFile);
+	}
+	
+	/**
+	 * Returns the location of a file relative to the base directory.
+	 *
+	 * @param fileName
+	 *      File name as specified in the settings.
+	 * @return
+	 *      The file name unchanged if it is absolute or no base directory is
+	 *      set, the file name within the base directory otherwise.
+	 */
+	String path(String fileName) {
+		return Utilities.resolve(base_directory, fileName);
+	}
+}
@@ -0,0 +1,18 @@
+import java.util.ArrayList;
+
+/**
+ * Code sink that collects the generated lines in a list.
+ */
+public class ListSink implements CodeSink {
+	public final ArrayList<String> lines = new ArrayList<>();
+	
+	@Override
+	public void add(String line) {
+		lines.add(line);
+	}
+	
+	@Override
+	public int size() {
+		return lines.size();
+	}
+}
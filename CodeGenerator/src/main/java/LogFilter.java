@@ -0,0 +1,75 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides which lines are left out of a log: lines below the log level, and
+ * repeats of a line logged more often than the repeat limit. The line that
+ * reaches the limit is replaced by a warning that further repeats are left
+ * out.
+ *
+ * Each generator run filters it's log with a filter of it's own, see
+ * Utilities.startLogCapture, the program log is filtered by the filter set
+ * with Utilities.configureLog. Filters are not thread safe, they are used by
+ * one thread at a time.
+ */
+class LogFilter {
+	private final LogWriter.Level level;
+	// number of times the same line is logged before it is left out, -1 for no limit
+	private final int repeatLimit;
+	// number of times each line was logged, if repeats are limited, holds at
+	// most Utilities.LOG_LIMIT lines
+	private final Map<String, Integer> repeats = new HashMap<>();
+
+	/**
+	 * Constructs a filter.
+	 *
+	 * @param level
+	 *      Lowest level of lines to log: info, warning or error. Unknown levels
+	 *      log all lines.
+	 * @param repeatLimit
+	 *      Number of times the same line is logged before further repeats are
+	 *      left out, -1 for no limit.
+	 */
+	LogFilter(String level, int repeatLimit) {
+		LogWriter.Level named = LogWriter.Level.named(level);
+		this.level = null == named ? LogWriter.Level.INFO : named;
+		this.repeatLimit = repeatLimit < 0 ? -1 : repeatLimit;
+	}
+
+	/**
+	 * Filters a log line.
+	 *
+	 * @param line
+	 *      Logged line.
+	 * @return
+	 *      Line to log, the warning about further repeats for the line that
+	 *      reaches the repeat limit, null if the line is left out.
+	 */
+	String apply(String line) {
+		if (LogWriter.Level.of(line).compareTo(level) < 0) {
+			return null;
+		}
+		if (-1 == repeatLimit) {
+			return line;
+		}
+		if (repeats.size() >= Utilities.LOG_LIMIT && !repeats.containsKey(line)) {
+			repeats.clear();
+		}
+		int count = repeats.merge(line, 1, Integer::sum);
+		if (count > repeatLimit + 1) {
+			return null;
+		}
+		if (count == repeatLimit + 1) {
+			return "Warning: line logged " + repeatLimit + " times, further " +
+							"repeats are left out : " + line;
+		}
+		return line;
+	}
+
+	/**
+	 * Forgets how often each line was logged.
+	 */
+	void clear() {
+		repeats.clear();
+	}
+}
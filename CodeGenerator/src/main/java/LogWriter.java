@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes log lines to the console, and optionally to a log file, on a
+ * background thread, so logging doesn't wait for console output.
+ *
+ * Lines are passed to the writer thread through a fixed size ring buffer. If
+ * the buffer is full, logging waits until the writer thread has made room,
+ * so no lines are lost and the memory used stays bounded. Lines are written
+ * in the order they were added.
+ *
+ * The writer thread is a daemon thread, call flush before the program ends
+ * so all lines are written. A shutdown hook flushes the remaining lines as
+ * well.
+ */
+class LogWriter {
+	private static final int CAPACITY = 4096;
+
+	/**
+	 * Levels of log lines, derived from the line itself: lines starting with
+	 * "Error" are errors, lines starting with "Warning" are warnings, all other
+	 * lines are informational. See GenerationResult.
+	 */
+	enum Level {
+		INFO,
+		WARNING,
+		ERROR;
+
+		/**
+		 * Finds the level of a log line.
+		 *
+		 * @param line
+		 *      Logged line.
+		 * @return
+		 *      Level of the line.
+		 */
+		static Level of(String line) {
+			int length = line.length();
+			int start = 0;
+			while (start < length && Character.isWhitespace(line.charAt(start))) {
+				start++;
+			}
+			if (line.startsWith("Error", start)) {
+				return ERROR;
+			}
+			if (line.startsWith("Warning", start)) {
+				return WARNING;
+			}
+			return INFO;
+		}
+
+		/**
+		 * Finds a level by name, ignoring case.
+		 *
+		 * @param name
+		 *      Name of the level, such as "warning".
+		 * @return
+		 *      The level, null if there is no level with that name.
+		 */
+		static Level named(String name) {
+			for (Level level : values()) {
+				if (level.name().equalsIgnoreCase(name)) {
+					return level;
+				}
+			}
+			return null;
+		}
+	}
+
+	// lines waiting to be written, count lines starting at head
+	private final String[] ring = new String[CAPACITY];
+	private int head = 0;
+	private int count = 0;
+	// number of lines added and written so far, for flushing
+	private long added = 0;
+	private long written = 0;
+	// log file to write to as well, null if none
+	private Writer file;
+	private Thread thread;
+
+	/**
+	 * Adds a line to be written. Waits if the buffer is full.
+	 *
+	 * @param line
+	 *      Line to write.
+	 */
+	synchronized void add(String line) {
+		boolean interrupted = false;
+		while (CAPACITY == count) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		ring[(head + count) % CAPACITY] = line;
+		count++;
+		added++;
+		if (null == thread) {
+			start();
+		}
+		notifyAll();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits until all lines added so far are written.
+	 */
+	synchronized void flush() {
+		boolean interrupted = false;
+		long target = added;
+		while (written < target) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (null != file) {
+			try {
+				file.flush();
+			} catch (IOException e) {
+				closeFile("Error writing to log file!");
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes all lines added from now on to the specified log file as well,
+	 * after writing all lines added so far. Closes the previous log file.
+	 *
+	 * @param writer
+	 *      Log file to write to, null to stop writing to a log file.
+	 */
+	synchronized void setFile(Writer writer) {
+		flush();
+		closeFile(null);
+		file = writer;
+	}
+
+	/**
+	 * Closes the log file, reports a failure on the console.
+	 *
+	 * @param error
+	 *      Message to print, null if there was no failure.
+	 */
+	private synchronized void closeFile(String error) {
+		if (null == file) {
+			return;
+		}
+		try {
+			file.close();
+		} catch (IOException e) {
+			if (null == error) {
+				error = "Error writing to log file!";
+			}
+		}
+		file = null;
+		if (null != error) {
+			System.out.println(error);
+		}
+	}
+
+	/**
+	 * Starts the writer thread.
+	 */
+	private void start() {
+		thread = new Thread(this::run, "log writer");
+		thread.setDaemon(true);
+		thread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+	}
+
+	/**
+	 * Writes lines as they are added, runs until the program ends.
+	 */
+	private void run() {
+		String[] batch = new String[CAPACITY];
+		StringBuilder text = new StringBuilder();
+		String separator = System.lineSeparator();
+		while (true) {
+			int size;
+			Writer target;
+			synchronized (this) {
+				while (0 == count) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// keep writing, the thread ends with the program
+					}
+				}
+				size = count;
+				for (int i = 0; i < size; i++) {
+					batch[i] = ring[(head + i) % CAPACITY];
+					ring[(head + i) % CAPACITY] = null;
+				}
+				head = (head + size) % CAPACITY;
+				count = 0;
+				target = file;
+				// room was made in the buffer
+				notifyAll();
+			}
+
+			text.setLength(0);
+			for (int i = 0; i < size; i++) {
+				text.append(batch[i]).append(separator);
+				batch[i] = null;
+			}
+			System.out.print(text);
+			System.out.flush();
+			boolean failed = false;
+			if (null != target) {
+				try {
+					target.write(text.toString());
+				} catch (IOException e) {
+					failed = true;
+				}
+			}
+
+			synchronized (this) {
+				if (failed && target == file) {
+					closeFile("Error writing to log file!");
+				}
+				written += size;
+				notifyAll();
+			}
+		}
+	}
+}
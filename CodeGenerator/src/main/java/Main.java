@@ -1,325 +1,274 @@
 import java.io.*;
-import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.*;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.util.stream.Stream;
 
 /**
  * Main program, starting point for executable jar file.
  *
  * In this class:
+ * - Handling of command line arguments
  * - Handling of settings file
- * - Handling of parameters file
- * - Creation of directories and files
- * - Starting base template processing for each file from settings
+ * - Printing and logging the output of the generator
+ * - Watching for changes in watch mode
  *
+ * To change how files are generated, see Generator.java
  * To change template processing behaviour, see TemplateProcessor.java
  */
 public class Main {
 	// Program defaults
-	private static final String TEMPLATE_EXTENSION = ".cgen_template";
-	private static final String TEMPLATE_EXTENSION_REGEX = "\\.cgen_template";
-	private static final String TEMPLATE_DIR = "templates/";
 	private static final String SETTINGS_FILE = "settings.json";
-	// main parameter file location
-	private static String parameters_file = "params.csv";
-	// whether or not to overwrite existing files
-	private static boolean overwrite_existing = true;
-	private static boolean clear_directories = false;
-	// whether or not to keep indentation for sub-templates
-	private static boolean continue_indentation = true;
-	// logging
-	private static boolean logging = true;
-	// start point for autoincrement parameter ids;
-	private static int auto_increment_start_id = -1;
+	private static final String INTRO =
+				"\nThis is the PQ9_bus_software subsystem code generator!\n" +
+				"Code generator settings can be found in settings.json.\n" +
+				"Templates to use for generating files can be placed in the " +
+				"templates folder\n";
+	// time to wait for more changes in watch mode, in milliseconds
+	private static final long WATCH_DELAY = 200;
 	
-	// settings json file
-	private static JSONObject settings;
-	// main subsystem / directory name
-	private static String subSysName = "generated_subsystem";
-	// subdirectories
-	private static ArrayList<String> subDirs = new ArrayList<>();
-	// file for logging
-	private static String logfile = "CodeGenerator.log";
-	// files to be generated and their base templates
-	private static Map<String, String> files = new HashMap<>();
-	// Map of all available parameters
-	private static Map<String, Param> params = new HashMap<>();
-	private static ArrayList<Param> params_list = new ArrayList<>();
-	// Map of parameters to use for each file
-	private static Map<String, Map<String, Param>> fileParams =
-					new HashMap<>();
+	// generator for the current settings, null if the settings were not loaded
+	private static Generator generator;
 	
 	/**
 	 * Main program, starting point for executable jar file.
 	 *
+	 * When started with the --watch argument the program keeps running after
+	 * generating all files, and regenerates files when their inputs change.
+	 *
+	 * When started with the --daemon [port] argument the program keeps
+	 * running and generates all files for each request from a client, started
+	 * with the --client [port] argument. See GeneratorDaemon.
+	 *
 	 * @param args
 	 *      Arguments provided to program when starting the program.
 	 */
 	public static void main(String[] args) {
-		String intro =
-					"\nThis is the PQ9_bus_software subsystem code generator!\n" +
-					"Code generator settings can be found in settings.json.\n" +
-					"Templates to use for generating files can be placed in the " +
-					"templates folder\n";
-		Utilities.log(intro);
-		
-		// load program settings
-		settings = Utilities.readJSONFromFile(SETTINGS_FILE);
-		if (null == settings) {
+		List<String> arguments = null == args ? new ArrayList<>() :
+						Arrays.asList(args);
+		if (arguments.contains("--client")) {
+			if (!GeneratorDaemon.request(port(arguments, "--client"))) {
+				System.exit(1);
+			}
 			return;
-		} else {
-			loadSettings();
 		}
 		
-		// Create map of all available parameters
-		params_list = Utilities.readParamCSV(parameters_file, auto_increment_start_id);
-		params_list.forEach(par -> params.put(par.name, par));
-		
-		// generate all required directories specified in settings
-		Utilities.log("\nMaking required directories...");
-		makeDirs();
-		
-		// load subsystem parameters.
-		Utilities.log("\nLoading subsystem parameters...");
-		loadParams();
-		
-		// generate all required files specified in settings
-		Utilities.log("Generating specified files...");
-		makeFiles();
-		
-		// Indicate ending for user.
-		String exit =
-					"\nSuccessfully finished generating " + subSysName + " Subsystem!\n" +
-					"Please do check the output files in ./" + subSysName +
-					" and take any possible warnings or errors above into account";
-		Utilities.log(exit);
-		
-		Utilities.log("A log file of the printed output above has been " +
-						"created as " + logfile);
-		
-		if (logging) {
-			Utilities.printLog(logfile, overwrite_existing);
+		try {
+			Utilities.log(INTRO);
+			
+			if (arguments.contains("--daemon")) {
+				GeneratorDaemon.serve(port(arguments, "--daemon"));
+				return;
+			}
+			
+			if (!generate()) {
+				return;
+			}
+			
+			if (arguments.contains("--watch")) {
+				watch();
+			}
+		} finally {
+			// log output is printed in the background, print the rest first
+			Utilities.flushLog();
 		}
 	}
 	
 	/**
-	 * Loads various settings from the loaded json settings file.
+	 * Finds the port number following the specified argument.
+	 *
+	 * @param arguments
+	 *      Arguments provided to the program.
+	 * @param argument
+	 *      Argument that may be followed by a port number.
+	 * @return
+	 *      The specified port, the default daemon port if none was specified.
 	 */
-	private static void loadSettings() {
-		// find main directory from settings
-		subSysName = settings.getString("subsystem_name");
-		
-		// find subdirectories from settings
-		if (settings.has("subdirectories")) {
-			if (settings.get("subdirectories") instanceof JSONArray) {
-				JSONArray subdirectories = settings.getJSONArray("subdirectories");
-				for (Object folderName : subdirectories) {
-					if (folderName instanceof String) {
-						subDirs.add((String) folderName);
-					}
-				}
-			}
-		}
-		
-		// find files to generate from settings
-		// files in settings.json should be an object array = [{..},{..},...]
-		if (settings.has("files_to_generate")) {
-			JSONArray sFiles = settings.getJSONArray("files_to_generate");
-			for (Object file : sFiles) {
-				if (file instanceof JSONObject) {
-					JSONObject fileObj = (JSONObject) file;
-					// if a base template was specified, use that template
-					if (fileObj.has("base_template")) {
-						files.put(fileObj.getString("filename"), fileObj.getString("base_template"));
-					} else {
-						// use the filename to search for a base template
-						files.put(fileObj.getString("filename"), fileObj.getString("filename") + TEMPLATE_EXTENSION);
-					}
-				}
-			}
-		}
-		
-		// overwriting existing files
-		if (settings.has("overwrite_existing_files")) {
-			if (settings.get("overwrite_existing_files") instanceof Boolean) {
-				overwrite_existing = settings.getBoolean("overwrite_existing_files");
-			}
-		}
-		
-		// clear folders before generation
-		if (settings.has("clear_existing_directories")) {
-			if (settings.get("clear_existing_directories") instanceof Boolean) {
-				clear_directories = settings.getBoolean("clear_existing_directories");
+	private static int port(List<String> arguments, String argument) {
+		int index = arguments.indexOf(argument) + 1;
+		if (index < arguments.size()) {
+			try {
+				return Integer.parseInt(arguments.get(index));
+			} catch (NumberFormatException e) {
+				Utilities.log("Warning: invalid port " + arguments.get(index) +
+								", using port " + GeneratorDaemon.DEFAULT_PORT);
 			}
 		}
-		
-		// keep indentation for subtemplates
-		if (settings.has("continue_indentation")) {
-			if (settings.get("continue_indentation") instanceof Boolean) {
-				continue_indentation = settings.getBoolean("continue_indentation");
-			}
+		return GeneratorDaemon.DEFAULT_PORT;
+	}
+	
+	/**
+	 * Loads the settings again and generates all specified files. Compiled
+	 * templates stay cached. Used by the daemon for each request.
+	 *
+	 * @return
+	 *      Program output of this run.
+	 */
+	static ArrayList<String> generateAgain() {
+		Utilities.clearLog();
+		Utilities.log(INTRO);
+		generate();
+		return Utilities.getLog();
+	}
+	
+	/**
+	 * Loads the settings and generates all specified files. The output of the
+	 * generator is printed and written to the log file while generating.
+	 *
+	 * @return
+	 *      Whether the settings could be loaded.
+	 */
+	private static boolean generate() {
+		// load program settings
+		GeneratorSettings settings = GeneratorSettings.load(SETTINGS_FILE);
+		if (null == settings) {
+			generator = null;
+			return false;
 		}
-		
-		// alternative default parameters csv file
-		if (settings.has("parameters")) {
-			if (settings.get("parameters") instanceof String) {
-				parameters_file = (String) settings.get("parameters");
-			}
+		generator = new Generator(settings);
+		Utilities.configureLog(settings.log_level, settings.log_repeat_limit);
+		if (settings.logging) {
+			Utilities.streamLog(settings.path(settings.logfile),
+							settings.overwrite_existing);
 		}
 		
-		// enable and set auto increment start id for parameter ids
-		if (settings.has("auto_increment_start_id")) {
-			if (settings.get("auto_increment_start_id") instanceof Integer) {
-				auto_increment_start_id = settings.getInt("auto_increment_start_id");
-			}
-		}
+		generator.generate(true);
 		
-		// logging enabled?
-		if (settings.has("logging")) {
-			if (settings.get("logging") instanceof Boolean) {
-				logging = settings.getBoolean("logging");
-			}
-		}
+		Utilities.log("A log file of the printed output above has been " +
+						"created as " + settings.logfile);
 		
-		// logfile specified?
-		if (settings.has("logfile")) {
-			if (settings.get("logfile") instanceof String) {
-				logfile = (String) settings.get("logfile");
-			}
+		if (settings.logging) {
+			Utilities.printLog(settings.path(settings.logfile),
+							settings.overwrite_existing);
 		}
+		return true;
 	}
 	
 	/**
-	 * Loads specified parameters per file from settings.json.
+	 * Keeps watching the template directory, the parameter files, the
+	 * settings file and all other inputs of the generated files for changes.
+	 * Regenerates only the files that read a changed input, or all files if
+	 * the settings changed. Runs until the program is stopped.
 	 */
-	private static void loadParams() {
-		if (!settings.has("files_to_generate")) {
-			return;
-		}
-		// find parameters to use for each file
-		JSONArray sFiles = settings.getJSONArray("files_to_generate");
-		for (Object file : sFiles) {
-			if (file instanceof JSONObject) {
-				// each file object should have a specified filename key : value pair
-				String fileName = ((JSONObject) file).getString("filename");
-				// make empty list of params belonging to this file
-				Map<String, Param> filePars = new HashMap<>();
-				// each file object might have a parameter array
-				if (((JSONObject) file).has("parameters")) {
-					// make and add a param object for each element in the array
-					Object parameters = ((JSONObject) file).get(
-									"parameters");
-					// parameters is a filename containing parameter descriptions
-					if (parameters instanceof String) {
-						ArrayList<Param> pars =
-										Utilities.readParamCSV((String) parameters, -1);
-						pars.forEach(p -> filePars.put(p.name, p));
-					} else if (parameters instanceof JSONArray) {
-						// parameters is an array containing parameter dsecriptions
-						((JSONArray) parameters).forEach(par -> {
-							// description is a default parameter name
-							if (par instanceof String) {
-								Param p = params.get(par);
-								filePars.put(p.name, p);
-							}
-							// description is a new custom parameter
-							if (par instanceof JSONArray) {
-								Param p = new Param((JSONArray) par);
-								filePars.put(p.name, p);
-							}
-						});
+	private static void watch() {
+		Utilities.log("\nWatching for changes, stop the program to quit...");
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			Set<Path> watched = new HashSet<>();
+			watchDirs(watcher, watched);
+			while (true) {
+				WatchKey key = watcher.take();
+				// wait a little, so files saved together are handled together
+				Thread.sleep(WATCH_DELAY);
+				Set<Path> changed = new HashSet<>();
+				do {
+					Path dir = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (StandardWatchEventKinds.OVERFLOW == event.kind()) {
+							// changes were lost, consider the settings changed
+							changed.add(Generator.absolute(SETTINGS_FILE));
+						} else {
+							changed.add(dir.resolve((Path) event.context())
+											.toAbsolutePath().normalize());
+						}
+					}
+					if (!key.reset()) {
+						watched.remove(dir);
 					}
-				} else {
-					params_list.forEach(p -> filePars.put(p.name, p));
-				}
-				// add the list of parameters for this file to the map
-				fileParams.put(fileName, filePars);
+					key = watcher.poll();
+				} while (null != key);
+				regenerate(changed);
+				// new directories or input files may have to be watched
+				watchDirs(watcher, watched);
 			}
+		} catch (IOException e) {
+			Utilities.log("Error: unable to watch for changes : " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 	
 	/**
-	 * Checks if any of the specified directories should be created.
+	 * Registers all directories containing inputs with the watch service,
+	 * if not registered yet. These are all directories within the template
+	 * directory, the directory of the settings file and the directories of
+	 * all input files of the generator.
 	 *
-	 * Deletes pre-existing directories if clear folders is enabled.
+	 * @param watcher
+	 *      Watch service to register with.
+	 * @param watched
+	 *      Directories that are already registered.
 	 */
-	private static void makeDirs() {
-		Path SubsFolder = Paths.get("./" + subSysName);
-		
-		if (Files.exists(SubsFolder) && clear_directories) {
-			deleteDirectoryStream(SubsFolder);
-		}
-		
-		// Try to make the main directory
-		try {
-			Files.createDirectory(SubsFolder);
-		} catch(FileAlreadyExistsException e) {
-			Utilities.log("Warning: The main directory " + subSysName + " " +
-							"already" +
-							" exists!");
+	private static void watchDirs(WatchService watcher, Set<Path> watched) {
+		GeneratorSettings settings = null == generator ? new GeneratorSettings() :
+						generator.settings();
+		String templateDir = settings.path(settings.template_dir);
+		Set<Path> dirs = new HashSet<>();
+		dirs.add(Generator.absolute(SETTINGS_FILE).getParent());
+		try (Stream<Path> templateDirs = Files.walk(Generator.absolute(templateDir))) {
+			templateDirs.filter(Files::isDirectory)
+							.forEach(dir -> dirs.add(dir.toAbsolutePath().normalize()));
 		} catch (IOException e) {
-			Utilities.log("Error: unable to create main directory " + subSysName + "!");
+			Utilities.log("Warning: unable to watch template directory " +
+							templateDir);
+		}
+		if (null != generator) {
+			generator.inputFiles().forEach(input -> dirs.add(input.getParent()));
 		}
-		// Try to make the subdirectories
-		subDirs.forEach(dir -> {
-			Path subDir = Paths.get("./" + subSysName + "/" + dir);
-			if (Files.exists(subDir) && clear_directories) {
-				deleteDirectoryStream(subDir);
+		for (Path dir : dirs) {
+			if (watched.contains(dir) || !Files.isDirectory(dir)) {
+				continue;
 			}
 			try {
-				Files.createDirectory(subDir);
-			} catch(FileAlreadyExistsException e) {
-				Utilities.log("Warning: The subdirectory " + dir + " already " +
-								"exists!");
+				dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+								StandardWatchEventKinds.ENTRY_DELETE,
+								StandardWatchEventKinds.ENTRY_MODIFY);
+				watched.add(dir);
 			} catch (IOException e) {
-				Utilities.log("Error: unable to create subdirectory " + dir + "!");
+				Utilities.log("Warning: unable to watch directory " + dir);
 			}
-		});
-	}
-	
-	/**
-	 * Checks if any of the specified files should be created or overwritten.
-	 *
-	 * Set of files to create is specified by settings.json
-	 * Settings.json also specifies whether files should be overwritten.
-	 */
-	private static void makeFiles() {
-		TemplateProcessor tProc = new TemplateProcessor(subSysName, TEMPLATE_DIR,
-						TEMPLATE_EXTENSION_REGEX, continue_indentation, overwrite_existing);
-		files.forEach((fileName,baseTemplate) -> {
-			Utilities.log("\nProcessing file : " + fileName);
-			Map<String, Param> pars = fileParams.get(fileName);
-			ArrayList<String> codeLines =
-							tProc.processTemplate(baseTemplate, pars);
-			Utilities.checkBraces(codeLines, fileName, baseTemplate);
-			Utilities.writeLinesToFile(
-							codeLines,
-							subSysName + "/" + fileName, overwrite_existing
-			);
-		});
+		}
 	}
 	
 	/**
-	 * Deletes directories and subdirectories of the specified path.
-	 *
-	 * Used when overwrite existing files is enabled.
+	 * Regenerates the files affected by the specified changed files, see
+	 * Generator.regenerate. If the settings file changed, the settings are
+	 * loaded again and all files are generated again.
 	 *
-	 * @param path
-	 *      Starting path to delete
+	 * @param changed
+	 *      Changed files, as absolute paths.
 	 */
-	private static void deleteDirectoryStream(Path path) {
-		try {
-			Files.walk(path)
-					.sorted(Comparator.reverseOrder())
-					.map(Path::toFile)
-					.forEach(File::delete);
-		} catch (IOException e) {
-			Utilities.log("Error deleting " + subSysName + " folder!");
+	private static void regenerate(Set<Path> changed) {
+		if (null == generator || changed.contains(Generator.absolute(SETTINGS_FILE))) {
+			Utilities.clearLog();
+			Utilities.log("\nSettings changed, generating all files...");
+			generate();
+			return;
+		}
+		
+		GenerationResult result = generator.regenerate(changed);
+		if (null == result) {
+			return;
+		}
+		
+		GeneratorSettings settings = generator.settings();
+		Utilities.clearLog();
+		if (settings.logging) {
+			Utilities.streamLog(settings.path(settings.logfile),
+							settings.overwrite_existing);
+		}
+		Utilities.log(result.log());
+		int regenerated = result.generatedFiles().size() +
+						result.skippedFiles().size();
+		Utilities.log("\nRegenerated " + regenerated + " file(s), watching " +
+						"for changes...");
+		if (settings.logging) {
+			Utilities.printLog(settings.path(settings.logfile),
+							settings.overwrite_existing);
 		}
 	}
 }
@@ -0,0 +1,40 @@
+import java.util.List;
+
+/**
+ * Code sink that counts the lines and bytes passed on to another sink, for
+ * the generation metrics. See GenerationMetrics.
+ */
+public class MetricsSink implements CodeSink {
+	private final CodeSink target;
+	private final GenerationMetrics.Counters counters;
+
+	/**
+	 * Constructs a sink that counts the lines passed on.
+	 *
+	 * @param target
+	 *      Sink to pass lines on to.
+	 * @param counters
+	 *      Metrics to count the lines for.
+	 */
+	MetricsSink(CodeSink target, GenerationMetrics.Counters counters) {
+		this.target = target;
+		this.counters = counters;
+	}
+
+	@Override
+	public void add(String line) {
+		counters.addLine(line);
+		target.add(line);
+	}
+
+	@Override
+	public void addAll(List<String> lines) {
+		GenerationMetrics.addLines(counters, lines);
+		target.addAll(lines);
+	}
+
+	@Override
+	public int size() {
+		return target.size();
+	}
+}
@@ -2,7 +2,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 
 /**
  * Represents a parameter as a java object, includes the attributes:
@@ -17,10 +21,14 @@ import java.util.HashMap;
  * well as a toString implementation.
  *
  * Use this class to change the available parameter keywords and how they're
- * substituted, the addParamVariables and fillInParam functions below are used
+ * substituted, the keywords are defined below and can be extended with
+ * addKeyword. The addParamVariables and fillInParam functions below are used
  * for substitution in templates.
  *
- * To change how parameters are loaded and for which files, see the Main Class
+ * Parameter sets are kept in a ParamTable, which holds one Param object per
+ * parameter.
+ *
+ * To change how parameters are loaded and for which files, see the Generator Class
  * To change when parameters are used, see the TemplateProcessor Class
  */
 public class Param {
@@ -32,6 +40,40 @@ public class Param {
 	public String dType;
 	public String hexId;
 	
+	// orders parameters by id
+	private static final Comparator<Param> BY_ID =
+					Comparator.comparingInt(par -> par.id);
+	// all parameter keywords start with this prefix
+	static final String KEYWORD_PREFIX = "p#";
+	// parameter keywords, in order of definition
+	private static final List<Keyword> keywords = new CopyOnWriteArrayList<>();
+	// keywords by the character following the prefix, longest first,
+	// characters above 127 share the entry of character 0
+	private static volatile Keyword[][] keywordIndex = new Keyword[128][];
+	
+	static {
+		addKeyword("p#name", par -> par.name);
+		addKeyword("p#id", par -> Integer.toString(par.id));
+		addKeyword("p#enumName", par -> par.enumName);
+		addKeyword("p#dataType", par -> par.dataType);
+		addKeyword("p#defaultValue", par -> par.defaultValue);
+		addKeyword("p#dType", par -> par.dType);
+		addKeyword("p#hexId", par -> par.hexId);
+	}
+	
+	/**
+	 * A parameter keyword and the function finding it's value.
+	 */
+	private static final class Keyword {
+		private final String text;
+		private final Function<Param, String> value;
+		
+		private Keyword(String text, Function<Param, String> value) {
+			this.text = text;
+			this.value = value;
+		}
+	}
+	
 	/**
 	 * Constructor. Accepts an integer as id value.
 	 *
@@ -47,7 +89,28 @@ public class Param {
 		this.enumName = name + "_param_id";
 		this.dataType = dataType;
 		this.defaultValue = defaultValue;
-		this.dType = convertToLongDataType(this.dataType);
+		this.dType = longDataType(this.dataType);
+		this.hexId = Integer.toHexString(this.id);
+	}
+	
+	/**
+	 * Constructor. Accepts an integer as id value and an already converted
+	 * long data type, used by ParamTable.
+	 *
+	 * @param id
+	 * @param name
+	 * @param dataType
+	 * @param defaultValue
+	 * @param dType
+	 */
+	Param(int id, String name, String dataType, String defaultValue,
+	             String dType) {
+		this.id = id;
+		this.name = name;
+		this.enumName = name + "_param_id";
+		this.dataType = dataType;
+		this.defaultValue = defaultValue;
+		this.dType = dType;
 		this.hexId = Integer.toHexString(this.id);
 	}
 	
@@ -75,7 +138,7 @@ public class Param {
 		this.enumName = name + "_param_id";
 		this.dataType = dataType;
 		this.defaultValue = defaultValue;
-		this.dType = convertToLongDataType(this.dataType);
+		this.dType = longDataType(this.dataType);
 		this.hexId = Integer.toHexString(this.id);
 	}
 	
@@ -92,7 +155,7 @@ public class Param {
 			this.enumName = name + "_param_id";
 			this.dataType = par.getString(2);
 			this.defaultValue = par.getString(3);
-			this.dType = convertToLongDataType(this.dataType);
+			this.dType = longDataType(this.dataType);
 			this.hexId = Integer.toHexString(this.id);
 		} catch (JSONException e) {
 			Utilities.log(par.toString() + " : " + e.getMessage());
@@ -115,66 +178,20 @@ public class Param {
 	}
 	
 	/**
-	 * Sorts a list of parameters based on their ids. Uses a simple top down
-	 * merge sort.
+	 * Sorts a list of parameters based on their ids. The sort is stable,
+	 * parameters with the same id keep their order.
 	 * @param params
 	 *      List of parameters to sort.
 	 * @return
-	 *      Sorted list of parameters.
+	 *      Sorted copy of the list of parameters.
 	 */
-	static ArrayList<Param> sortParams(ArrayList<Param> params) {
+	static ArrayList<Param> sortParams(Collection<Param> params) {
 		if (null == params) {
 			return null;
 		}
-		int size = params.size();
-		if (1 >= size) {
-			return params;
-		}
-		
-		ArrayList<Param> left = new ArrayList<>();
-		ArrayList<Param> right = new ArrayList<>();
-		
-		for (int i = 0; i < size; i++) {
-			if (i < size/2) {
-				left.add(params.get(i));
-			} else {
-				right.add(params.get(i));
-			}
-		}
-		
-		ArrayList<Param> left_sort = sortParams(left);
-		ArrayList<Param> right_sort = sortParams(right);
-		
-		return mergeParams(left_sort, right_sort);
-	}
-	
-	/**
-	 * Merges two lists of parameters based on their ids.
-	 * @param left
-	 *      First list.
-	 * @param right
-	 *      Second List.
-	 * @return
-	 *      Merged result of the two lists.
-	 */
-	private static ArrayList<Param> mergeParams(ArrayList<Param> left,
-	                                     ArrayList<Param> right) {
-		ArrayList<Param> res = new ArrayList<>();
-		
-		while (!left.isEmpty() && !right.isEmpty()) {
-			if (left.get(0).id <= right.get(0).id) {
-				res.add(left.remove(0));
-			} else {
-				res.add(right.remove(0));
-			}
-		}
-		while (!left.isEmpty()) {
-			res.add(left.remove(0));
-		}
-		while (!right.isEmpty()) {
-			res.add(right.remove(0));
-		}
-		return res;
+		ArrayList<Param> sorted = new ArrayList<>(params);
+		sorted.sort(BY_ID);
+		return sorted;
 	}
 	
 	/**
@@ -185,7 +202,10 @@ public class Param {
 	 * @return
 	 *      The longer format of the specified dataType.
 	 */
-	private String convertToLongDataType(String dataType) {
+	static String longDataType(String dataType) {
+		if (null == dataType) {
+			return "";
+		}
 		switch (dataType) {
 			case "uint16_t" :
 				return "short";
@@ -197,22 +217,70 @@ public class Param {
 	}
 	
 	
+	/**
+	 * Defines a parameter keyword, or changes the value of an existing one.
+	 * Keywords must start with p# followed by at least one character. Where
+	 * keywords overlap the longest one is filled in.
+	 *
+	 * @param keyword
+	 *      The keyword, e.g. p#name.
+	 * @param value
+	 *      Function returning the value of the keyword for a parameter.
+	 */
+	static synchronized void addKeyword(String keyword, Function<Param, String> value) {
+		if (null == keyword || null == value || !keyword.startsWith(KEYWORD_PREFIX)
+						|| keyword.length() == KEYWORD_PREFIX.length()) {
+			throw new IllegalArgumentException("Invalid parameter keyword : " + keyword);
+		}
+		Keyword added = new Keyword(keyword, value);
+		boolean replaced = false;
+		for (int i = 0; i < keywords.size(); i++) {
+			if (keywords.get(i).text.equals(keyword)) {
+				keywords.set(i, added);
+				replaced = true;
+			}
+		}
+		if (!replaced) {
+			keywords.add(added);
+		}
+		
+		// index the keywords again, longest first within each character
+		ArrayList<Keyword> sorted = new ArrayList<>(keywords);
+		sorted.sort(Comparator.comparingInt(k -> -k.text.length()));
+		Keyword[][] index = new Keyword[128][];
+		for (Keyword k : sorted) {
+			int c = keywordChar(k.text, 0);
+			Keyword[] entry = null == index[c] ? new Keyword[0] : index[c];
+			Keyword[] extended = new Keyword[entry.length + 1];
+			System.arraycopy(entry, 0, extended, 0, entry.length);
+			extended[entry.length] = k;
+			index[c] = extended;
+		}
+		keywordIndex = index;
+	}
+	
+	/**
+	 * @return
+	 *      Index entry of the character following the keyword prefix at the
+	 *      specified position.
+	 */
+	private static int keywordChar(String line, int pos) {
+		char c = line.charAt(pos + KEYWORD_PREFIX.length());
+		return c < 128 ? c : 0;
+	}
+	
 	/**
 	 * Specifies which parameter keywords exist and what they should be replaced
 	 * with. This is achieved by adding the parameter keywords as variables to be
 	 * filled in.
 	 *
 	 * @param vars
-	 *      Set of template variables to add parameter keywords to.
+	 *      Scope of template variables to add parameter keywords to.
 	 */
-	void addParamVariables(HashMap<String, String> vars) {
-		vars.put("p#name", this.name);
-		vars.put("p#id", Integer.toString(this.id));
-		vars.put("p#enumName", this.enumName);
-		vars.put("p#dataType", this.dataType);
-		vars.put("p#defaultValue", this.defaultValue);
-		vars.put("p#dType", this.dType);
-		vars.put("p#hexId", this.hexId);
+	void addParamVariables(VariableScope vars) {
+		for (Keyword keyword : keywords) {
+			vars.put(keyword.text, keyword.value.apply(this));
+		}
 	}
 	
 	/**
@@ -225,6 +293,8 @@ public class Param {
 	 *  - p#enumName : replaced with name + '_param_id' suffix
 	 *  - p#dataType : replaced with data type of parameter
 	 *  - p#defaultValue : replaced with default value of parameter
+	 *  - p#dType : replaced with the long data type of parameter
+	 *  - p#hexId : replaced with the hexadecimal identifier of parameter
 	 *
 	 * @param line
 	 *      Line String where parameter values should be filled in.
@@ -233,19 +303,50 @@ public class Param {
 	 *      the specified parameter.
 	 */
 	String fillInParam(String line) {
-		//TODO : it might be possible to remove this function.
-		//The p-line and p-template commands in TemplateProcessor need to be
-		//reworked to work through variables to make this removable.
-		
-		// replace parameter keywords with param values
-		line = line.replace("p#name", this.name);
-		line = line.replace("p#id", Integer.toString(this.id));
-		line = line.replace("p#enumName", this.enumName);
-		line = line.replace("p#dataType", this.dataType);
-		line = line.replace("p#defaultValue", this.defaultValue);
-		line = line.replace("p#dType", this.dType);
-		line = line.replace("p#hexId", this.hexId);
-		
-		return line;
+		if (-1 == line.indexOf(KEYWORD_PREFIX)) {
+			return line;
+		}
+		StringBuilder out = new StringBuilder(line.length() + 32);
+		fillInParam(line, out);
+		return out.toString();
+	}
+	
+	/**
+	 * Fills in the values of this parameter for the parameter keywords in the
+	 * specified line, in a single pass over the line. Filled in values are not
+	 * searched for keywords again.
+	 *
+	 * @param line
+	 *      Line String where parameter values should be filled in.
+	 * @param out
+	 *      Builder to append the filled in line to, can be reused for each
+	 *      parameter.
+	 */
+	void fillInParam(String line, StringBuilder out) {
+		Keyword[][] index = keywordIndex;
+		int start = 0;
+		int pos = line.indexOf(KEYWORD_PREFIX);
+		while (-1 != pos) {
+			Keyword found = null;
+			if (pos + KEYWORD_PREFIX.length() < line.length()) {
+				Keyword[] candidates = index[keywordChar(line, pos)];
+				if (null != candidates) {
+					for (Keyword keyword : candidates) {
+						if (line.startsWith(keyword.text, pos)) {
+							found = keyword;
+							break;
+						}
+					}
+				}
+			}
+			if (null == found) {
+				pos = line.indexOf(KEYWORD_PREFIX, pos + 1);
+				continue;
+			}
+			out.append(line, start, pos).append(found.value.apply(this));
+			start = pos + found.text.length();
+			pos = line.indexOf(KEYWORD_PREFIX, start);
+		}
+		out.append(line, start, line.length());
 	}
 }
@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming reader for parameter CSV files.
+ *
+ * The file is read through a large buffer and parsed as bytes, records are
+ * added to the parameter table as soon as they are complete. No line strings,
+ * split arrays or parameter objects are made, ids are parsed from the bytes
+ * directly.
+ *
+ * Format, one parameter per record : id, name, data type, default value.
+ *  - records end with \n, \r\n or \r
+ *  - values are trimmed of spaces and tabs
+ *  - values can be quoted with ", a quoted value can contain commas, line
+ *    breaks and quotes written as ""
+ *  - empty lines and lines starting with # are skipped
+ *  - values after the default value are ignored
+ *  - a UTF-8 byte order mark at the start of the file is skipped
+ *
+ * Errors are logged with the file name and line number of the record.
+ */
+class ParamCSVReader {
+	private static final int BUFFER_SIZE = 1 << 16;
+	// id, name, data type, default value
+	private static final int FIELDS = 4;
+
+	private final String fileName;
+	private final int autoIncrementStartId;
+	private final ParamTable params = new ParamTable();
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	// line number of the current record, counting from 1
+	private int line = 1;
+	// values of the current record, as positions in the buffer
+	private final int[] starts = new int[FIELDS];
+	private final int[] ends = new int[FIELDS];
+	private final boolean[] escaped = new boolean[FIELDS];
+	private int fieldCount;
+	// line breaks within quoted values of the current record
+	private int recordLines;
+	// error in the current record, null if none
+	private String error;
+
+	// next id when auto incrementing, and whether any id was specified
+	private int currentId;
+	private boolean foundSpecifiedId = false;
+
+	private ParamCSVReader(String fileName, int autoIncrementStartId) {
+		this.fileName = fileName;
+		this.autoIncrementStartId = autoIncrementStartId;
+		this.currentId = autoIncrementStartId;
+	}
+
+	/**
+	 * Reads a parameter CSV file. See Utilities.readParamCSV.
+	 *
+	 * @param fileName
+	 *      The CSV file to read.
+	 * @param autoIncrementStartId
+	 *      The start value to be used for auto incrementing ids. -1 to disable.
+	 * @return
+	 *      Table of the parameters in the file, null if it could not be read.
+	 */
+	static ParamTable read(String fileName, int autoIncrementStartId) {
+		ParamCSVReader reader = new ParamCSVReader(fileName, autoIncrementStartId);
+		try {
+			reader.parse();
+		} catch (NoSuchFileException e) {
+			Utilities.log("File " + fileName + " not found!");
+			return null;
+		} catch (IOException e) {
+			Utilities.log("Error reading from file " + fileName + "!");
+			return null;
+		}
+
+		// incrementing id was used, but some ids were specified (not -1)
+		if (reader.foundSpecifiedId) {
+			Utilities.log("Warning: auto increment enabled for parameter ids," +
+							" id values from " + fileName + " ignored!" +
+							" Set id values to -1 in main .csv file to prevent " +
+							"this warning.");
+		}
+		return reader.params;
+	}
+
+	/**
+	 * Reads the file through the buffer, handling each complete record.
+	 */
+	private void parse() throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+						StandardOpenOption.READ)) {
+			ByteBuffer bytes = ByteBuffer.wrap(buffer);
+			int pos = 0;
+			int limit = 0;
+			boolean eof = false;
+			boolean start = true;
+			while (!eof || pos < limit) {
+				int end = pos < limit && !start ? record(pos, limit, eof) : -1;
+				if (-1 != end) {
+					handleRecord();
+					pos = end;
+					continue;
+				}
+				// record incomplete, move it to the front and read more
+				System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+				limit -= pos;
+				pos = 0;
+				if (limit == buffer.length) {
+					// record larger than the buffer
+					byte[] larger = new byte[2 * buffer.length];
+					System.arraycopy(buffer, 0, larger, 0, limit);
+					buffer = larger;
+					bytes = ByteBuffer.wrap(buffer);
+				}
+				bytes.limit(buffer.length).position(limit);
+				int read = channel.read(bytes);
+				if (-1 == read) {
+					eof = true;
+				} else {
+					limit += read;
+				}
+				if (start && (limit >= 3 || eof)) {
+					start = false;
+					if (limit >= 3 && (byte) 0xEF == buffer[0] &&
+									(byte) 0xBB == buffer[1] && (byte) 0xBF == buffer[2]) {
+						pos = 3;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the record starting at the specified position.
+	 *
+	 * @param pos
+	 *      Start of the record in the buffer.
+	 * @param limit
+	 *      End of the data in the buffer.
+	 * @param eof
+	 *      Whether the end of the file is at limit.
+	 * @return
+	 *      Position after the record and it's line break, -1 if the record
+	 *      continues after limit.
+	 */
+	private int record(int pos, int limit, boolean eof) {
+		fieldCount = 0;
+		recordLines = 0;
+		error = null;
+		int p = skipBlanks(pos, limit);
+		if (p < limit && '#' == buffer[p]) {
+			// comment, skip to end of line
+			while (p < limit && '\n' != buffer[p] && '\r' != buffer[p]) {
+				p++;
+			}
+			return lineEnd(p, limit, eof);
+		}
+		while (true) {
+			p = skipBlanks(p, limit);
+			int start;
+			int end;
+			boolean quotes = false;
+			if (p < limit && '"' == buffer[p]) {
+				// quoted value, up to the next single quote character
+				start = ++p;
+				while (true) {
+					if (p == limit) {
+						if (!eof) {
+							return -1;
+						}
+						error = "unterminated quoted value";
+						return limit;
+					}
+					if ('"' == buffer[p]) {
+						if (p + 1 == limit && !eof) {
+							return -1;
+						}
+						if (p + 1 < limit && '"' == buffer[p + 1]) {
+							quotes = true;
+							p += 2;
+							continue;
+						}
+						break;
+					}
+					if ('\n' == buffer[p] || ('\r' == buffer[p] &&
+									(p + 1 == limit || '\n' != buffer[p + 1]))) {
+						recordLines++;
+					}
+					p++;
+				}
+				end = p;
+				p = skipBlanks(p + 1, limit);
+				if (p < limit && ',' != buffer[p] && '\n' != buffer[p] &&
+								'\r' != buffer[p] && null == error) {
+					error = "unexpected character after quoted value";
+				}
+				// skip the rest of the value
+				while (p < limit && ',' != buffer[p] && '\n' != buffer[p] &&
+								'\r' != buffer[p]) {
+					p++;
+				}
+			} else {
+				start = p;
+				while (p < limit && ',' != buffer[p] && '\n' != buffer[p] &&
+								'\r' != buffer[p]) {
+					p++;
+				}
+				end = p;
+				while (end > start && (' ' == buffer[end - 1] || '\t' == buffer[end - 1])) {
+					end--;
+				}
+			}
+			if (p == limit && !eof) {
+				return -1;
+			}
+			if (fieldCount < FIELDS) {
+				starts[fieldCount] = start;
+				ends[fieldCount] = end;
+				escaped[fieldCount] = quotes;
+			}
+			fieldCount++;
+			if (p < limit && ',' == buffer[p]) {
+				p++;
+			} else {
+				return lineEnd(p, limit, eof);
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 *      Position after the line break at the specified position, -1 if it
+	 *      might continue after limit.
+	 */
+	private int lineEnd(int p, int limit, boolean eof) {
+		if (p == limit) {
+			return eof ? p : -1;
+		}
+		if ('\r' == buffer[p]) {
+			if (p + 1 == limit) {
+				return eof ? p + 1 : -1;
+			}
+			return '\n' == buffer[p + 1] ? p + 2 : p + 1;
+		}
+		return p + 1;
+	}
+
+	private int skipBlanks(int p, int limit) {
+		while (p < limit && (' ' == buffer[p] || '\t' == buffer[p])) {
+			p++;
+		}
+		return p;
+	}
+
+	/**
+	 * Adds the parameter of the current record to the table.
+	 */
+	private void handleRecord() {
+		int recordLine = line;
+		line += 1 + recordLines;
+		if (null != error) {
+			Utilities.log("Error: " + fileName + " line " + recordLine + " : " + error +
+							" : Parameter skipped!");
+			return;
+		}
+		if (0 == fieldCount || (1 == fieldCount && starts[0] == ends[0] && !escaped[0])) {
+			// empty line or comment
+			return;
+		}
+		if (fieldCount < FIELDS) {
+			Utilities.log("Error: " + fileName + " line " + recordLine + " : expected " +
+							FIELDS + " values, found " + fieldCount + " : Parameter skipped!");
+			return;
+		}
+
+		String name = value(1);
+		String dataType = value(2);
+		String defaultValue = value(3);
+		long id = parseId();
+		if (-1 != autoIncrementStartId) {
+			// should use auto-incrementing ids, the specified id is only checked
+			if (Long.MIN_VALUE == id) {
+				Utilities.log("Error: " + fileName + " line " + recordLine +
+								" : id value for parameter is not a number : " + value(0));
+			} else if (-1 != id) {
+				foundSpecifiedId = true;
+			}
+			id = currentId++;
+		} else if (Long.MIN_VALUE == id) {
+			Utilities.log("Error: " + fileName + " line " + recordLine +
+							" : Enum value for parameter is not a number : " + value(0));
+			id = 0;
+		}
+		params.add((int) id, name, dataType, defaultValue);
+	}
+
+	/**
+	 * Parses the id value of the current record.
+	 *
+	 * @return
+	 *      The id, Long.MIN_VALUE if it is not a decimal int.
+	 */
+	private long parseId() {
+		int p = starts[0];
+		int end = ends[0];
+		boolean negative = false;
+		if (p < end && ('-' == buffer[p] || '+' == buffer[p])) {
+			negative = '-' == buffer[p++];
+		}
+		if (p == end || end - p > 10) {
+			return Long.MIN_VALUE;
+		}
+		long id = 0;
+		for (; p < end; p++) {
+			int digit = buffer[p] - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.MIN_VALUE;
+			}
+			id = 10 * id + digit;
+		}
+		id = negative ? -id : id;
+		return id < Integer.MIN_VALUE || id > Integer.MAX_VALUE ? Long.MIN_VALUE : id;
+	}
+
+	/**
+	 * @return
+	 *      The specified value of the current record as a String.
+	 */
+	private String value(int field) {
+		String value = new String(buffer, starts[field], ends[field] - starts[field],
+						StandardCharsets.UTF_8);
+		return escaped[field] ? value.replace("\"\"", "\"") : value;
+	}
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of parsed parameter files, so a parameter file used for
+ * many output files, or in many runs of a generator, is only parsed once.
+ *
+ * Files are cached by canonical path and auto increment start id. Cached
+ * tables are checked against the content hash of their file, as hashed once
+ * per run, see RunCache. A file that was changed on disk is parsed again.
+ *
+ * The lines logged while parsing a file are kept with it's table, and logged
+ * again on each use, so the log of a run doesn't depend on the cache.
+ *
+ * Cached tables are shared, they must not be changed.
+ */
+public class ParamCache {
+	private static final Map<String, Entry> tables = new ConcurrentHashMap<>();
+
+	/**
+	 * Cached parameters of a single file.
+	 */
+	private static class Entry {
+		private final String hash;
+		private final ParamTable params;
+		private final ArrayList<String> log;
+
+		private Entry(String hash, ParamTable params, ArrayList<String> log) {
+			this.hash = hash;
+			this.params = params;
+			this.log = log;
+		}
+	}
+
+	/**
+	 * Returns the parameters of the specified parameter file, parsing it if it
+	 * is not cached or changed since it was parsed. See
+	 * Utilities.readParamCSV.
+	 *
+	 * @param fileName
+	 *      Parameter CSV file to read.
+	 * @param hash
+	 *      Current content hash of the file, null if it can't be read.
+	 * @param autoIncrementStartId
+	 *      The start value to be used for auto incrementing ids. -1 to disable.
+	 * @return
+	 *      Shared table of the parameters in the file, null if the file can't
+	 *      be read.
+	 */
+	static ParamTable read(String fileName, String hash, int autoIncrementStartId) {
+		if (null == fileName) {
+			return null;
+		}
+		if (null == hash) {
+			return Utilities.readParamCSV(fileName, autoIncrementStartId);
+		}
+		String key = FileHashes.canonical(fileName) + "|" + autoIncrementStartId;
+		Entry entry = tables.get(key);
+		if (null == entry || !hash.equals(entry.hash)) {
+			ParamTable params;
+			ArrayList<String> log;
+			Utilities.startLogCapture();
+			try {
+				params = Utilities.readParamCSV(fileName, autoIncrementStartId);
+			} finally {
+				log = Utilities.stopLogCapture();
+			}
+			if (null == params) {
+				Utilities.log(log);
+				return null;
+			}
+			entry = new Entry(hash, params, log);
+			tables.put(key, entry);
+		}
+		Utilities.log(entry.log);
+		return entry.params;
+	}
+
+	/**
+	 * Removes all parameter files from the cache.
+	 */
+	static void clear() {
+		tables.clear();
+	}
+}
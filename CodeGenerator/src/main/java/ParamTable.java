@@ -0,0 +1,404 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Holds a set of parameters in a compact, column based layout, with constant
+ * time lookup by name and by id.
+ *
+ * Each parameter occupies one slot, holding it's Param object, with the id
+ * and name also kept in an array per field for the indexes. Data types and
+ * default values are shared between parameters, the long data type is
+ * determined once per data type. The name index and the id index map to slots
+ * through open addressing on plain arrays.
+ *
+ * Param objects are created once when a parameter is added, every lookup
+ * returns the same object for a parameter. Adding a parameter with the name of
+ * an existing parameter replaces it, like a map keyed on the parameter name.
+ *
+ * A table should not be changed while it is used for generating files, it is
+ * safe for concurrent reads.
+ */
+public class ParamTable {
+	private static final int INITIAL_CAPACITY = 16;
+	// id ranges up to this many times the size use a dense id index
+	private static final int DENSE_FACTOR = 2;
+
+	private int size = 0;
+	// values per slot
+	private int[] ids = new int[INITIAL_CAPACITY];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private Param[] params = new Param[INITIAL_CAPACITY];
+	// distinct data types and their long data types, by type number
+	private String[] dataTypes = new String[INITIAL_CAPACITY];
+	private String[] longDataTypes = new String[INITIAL_CAPACITY];
+	private int typeCount = 0;
+	// type numbers and shared default values by value
+	private final HashMap<String, Integer> typeNumbers = new HashMap<>();
+	private final HashMap<String, String> sharedValues = new HashMap<>();
+	// name index, name hash << 32 | slot + 1 per hash position, 0 if empty,
+	// so positions of other names are mostly passed without reading the name
+	private long[] nameIndex = new long[2 * INITIAL_CAPACITY];
+
+	// id index, built on first use
+	private int[] idIndex;
+	// dense id index : slot + 1 per id - minId, sparse : slot + 1 per hash
+	private boolean denseIds;
+	private int minId;
+	// slots in order of id, built on first use
+	private int[] idOrder;
+
+	/**
+	 * Constructs an empty parameter table.
+	 */
+	ParamTable() {
+	}
+
+	/**
+	 * Constructs a parameter table holding the specified parameters.
+	 *
+	 * @param params
+	 *      Parameters to add, in order.
+	 */
+	ParamTable(Collection<Param> params) {
+		params.forEach(this::add);
+	}
+
+	/**
+	 * @return
+	 *      Number of parameters.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a parameter, replacing a parameter with the same name.
+	 *
+	 * @param par
+	 *      Parameter to add, it's values are copied.
+	 */
+	synchronized void add(Param par) {
+		add(par.id, par.name, par.dataType, par.defaultValue);
+	}
+
+	/**
+	 * Adds a parameter, replacing a parameter with the same name. Parameters
+	 * without a name are ignored, they could never be found.
+	 *
+	 * @param id
+	 * @param name
+	 * @param dataType
+	 * @param defaultValue
+	 */
+	synchronized void add(int id, String name, String dataType, String defaultValue) {
+		if (null == name) {
+			return;
+		}
+		int h = hash(name.hashCode());
+		int pos = position(name, h);
+		int slot;
+		if (0 == nameIndex[pos]) {
+			if (size == ids.length) {
+				grow();
+			}
+			slot = size++;
+			names[slot] = name;
+			if (2 * size > nameIndex.length) {
+				rebuildNameIndex(2 * nameIndex.length);
+			} else {
+				nameIndex[pos] = (long) h << 32 | (slot + 1);
+			}
+		} else {
+			slot = (int) nameIndex[pos] - 1;
+		}
+		ids[slot] = id;
+		int type = type(dataType);
+		params[slot] = new Param(id, name, dataTypes[type], share(defaultValue),
+						longDataTypes[type]);
+		idIndex = null;
+		idOrder = null;
+	}
+
+	/**
+	 * Finds a parameter by name.
+	 *
+	 * @param name
+	 *      Name of the parameter.
+	 * @return
+	 *      The parameter, null if there is no parameter with this name.
+	 */
+	public Param get(String name) {
+		int slot = slot(name);
+		return -1 == slot ? null : param(slot);
+	}
+
+	/**
+	 * Checks if there is a parameter with the specified name.
+	 *
+	 * @param name
+	 *      Name of the parameter.
+	 * @return
+	 *      Whether the table holds a parameter with this name.
+	 */
+	public boolean contains(String name) {
+		return -1 != slot(name);
+	}
+
+	/**
+	 * Finds a parameter by id. If several parameters have the same id, the
+	 * parameter added first is returned.
+	 *
+	 * @param id
+	 *      Id of the parameter.
+	 * @return
+	 *      The parameter, null if there is no parameter with this id.
+	 */
+	public Param getById(int id) {
+		int[] index = idIndex();
+		int slot;
+		if (denseIds) {
+			long pos = (long) id - minId;
+			slot = pos < 0 || pos >= index.length ? -1 : index[(int) pos] - 1;
+		} else {
+			slot = -1;
+			for (int pos = hash(id) & (index.length - 1); 0 != index[pos];
+							pos = (pos + 1) & (index.length - 1)) {
+				if (ids[index[pos] - 1] == id) {
+					slot = index[pos] - 1;
+					break;
+				}
+			}
+		}
+		return -1 == slot ? null : param(slot);
+	}
+
+	/**
+	 * Returns all parameters in the order they were added.
+	 *
+	 * @return
+	 *      Unmodifiable list of all parameters.
+	 */
+	public List<Param> values() {
+		int count = size;
+		return new AbstractList<Param>() {
+			@Override
+			public Param get(int index) {
+				if (index < 0 || index >= count) {
+					throw new IndexOutOfBoundsException(Integer.toString(index));
+				}
+				return param(index);
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * Returns all parameters in order of id. Parameters with the same id are
+	 * in the order they were added. The order is determined once, and reused
+	 * until the table is changed.
+	 *
+	 * @return
+	 *      Unmodifiable list of all parameters, in order of id.
+	 */
+	public List<Param> byId() {
+		int[] order = idOrder();
+		return new AbstractList<Param>() {
+			@Override
+			public Param get(int index) {
+				return param(order[index]);
+			}
+
+			@Override
+			public int size() {
+				return order.length;
+			}
+		};
+	}
+
+	/**
+	 * Returns the parameter object of a slot.
+	 *
+	 * @param slot
+	 *      Slot of the parameter.
+	 * @return
+	 *      The parameter object kept in the slot.
+	 */
+	private Param param(int slot) {
+		return params[slot];
+	}
+
+	/**
+	 * Finds the slot of a parameter by name.
+	 *
+	 * @param name
+	 *      Name of the parameter.
+	 * @return
+	 *      Slot of the parameter, -1 if not found.
+	 */
+	private int slot(String name) {
+		if (null == name) {
+			return -1;
+		}
+		long entry = nameIndex[position(name, hash(name.hashCode()))];
+		return (int) entry - 1;
+	}
+
+	/**
+	 * Finds the position of a name in the name index.
+	 *
+	 * @param name
+	 *      Name of the parameter.
+	 * @param h
+	 *      Spread hash code of the name.
+	 * @return
+	 *      Position of the name, or the empty position where it would be added.
+	 */
+	private int position(String name, int h) {
+		long[] index = nameIndex;
+		int pos = h & (index.length - 1);
+		while (0 != index[pos] && ((int) (index[pos] >>> 32) != h ||
+						!name.equals(names[(int) index[pos] - 1]))) {
+			pos = (pos + 1) & (index.length - 1);
+		}
+		return pos;
+	}
+
+	/**
+	 * Adds the name of a slot to the name index, which must have room.
+	 */
+	private void insertName(int slot) {
+		int h = hash(names[slot].hashCode());
+		int pos = h & (nameIndex.length - 1);
+		while (0 != nameIndex[pos]) {
+			pos = (pos + 1) & (nameIndex.length - 1);
+		}
+		nameIndex[pos] = (long) h << 32 | (slot + 1);
+	}
+
+	/**
+	 * Rebuilds the name index with the specified number of positions.
+	 */
+	private void rebuildNameIndex(int capacity) {
+		nameIndex = new long[capacity];
+		for (int slot = 0; slot < size; slot++) {
+			insertName(slot);
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the value arrays.
+	 */
+	private void grow() {
+		int capacity = 2 * ids.length;
+		ids = Arrays.copyOf(ids, capacity);
+		names = Arrays.copyOf(names, capacity);
+		params = Arrays.copyOf(params, capacity);
+	}
+
+	/**
+	 * Returns the type number of a data type, adding it if it is new.
+	 */
+	private int type(String dataType) {
+		Integer type = typeNumbers.get(dataType);
+		if (null != type) {
+			return type;
+		}
+		if (typeCount == dataTypes.length) {
+			dataTypes = Arrays.copyOf(dataTypes, 2 * typeCount);
+			longDataTypes = Arrays.copyOf(longDataTypes, 2 * typeCount);
+		}
+		dataTypes[typeCount] = dataType;
+		longDataTypes[typeCount] = Param.longDataType(dataType);
+		typeNumbers.put(dataType, typeCount);
+		return typeCount++;
+	}
+
+	/**
+	 * Returns a shared instance of a value.
+	 */
+	private String share(String value) {
+		if (null == value) {
+			return null;
+		}
+		String shared = sharedValues.putIfAbsent(value, value);
+		return null == shared ? value : shared;
+	}
+
+	/**
+	 * Returns the id index, building it if needed. Ids within a range of up to
+	 * twice the number of parameters are indexed directly, other ids through
+	 * open addressing.
+	 */
+	private synchronized int[] idIndex() {
+		if (null != idIndex) {
+			return idIndex;
+		}
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int slot = 0; slot < size; slot++) {
+			min = Math.min(min, ids[slot]);
+			max = Math.max(max, ids[slot]);
+		}
+		long range = (long) max - min + 1;
+		int[] index;
+		if (0 == size || range <= (long) DENSE_FACTOR * size + INITIAL_CAPACITY) {
+			denseIds = true;
+			minId = 0 == size ? 0 : min;
+			index = new int[0 == size ? 0 : (int) range];
+			for (int slot = size - 1; slot >= 0; slot--) {
+				index[ids[slot] - minId] = slot + 1;
+			}
+		} else {
+			denseIds = false;
+			index = new int[Integer.highestOneBit(2 * size) << 1];
+			for (int slot = 0; slot < size; slot++) {
+				int pos = hash(ids[slot]) & (index.length - 1);
+				boolean found = false;
+				while (0 != index[pos] && !found) {
+					found = ids[index[pos] - 1] == ids[slot];
+					pos = (pos + 1) & (index.length - 1);
+				}
+				if (!found) {
+					index[pos] = slot + 1;
+				}
+			}
+		}
+		idIndex = index;
+		return index;
+	}
+
+	/**
+	 * Returns the slots in order of id, determining the order if needed.
+	 */
+	private synchronized int[] idOrder() {
+		if (null == idOrder) {
+			// sort keys of id then slot, so equal ids stay in order of slot
+			long[] keys = new long[size];
+			for (int slot = 0; slot < size; slot++) {
+				keys[slot] = (long) ids[slot] << 32 | slot;
+			}
+			Arrays.sort(keys);
+			int[] slots = new int[size];
+			for (int i = 0; i < size; i++) {
+				slots[i] = (int) keys[i];
+			}
+			idOrder = slots;
+		}
+		return idOrder;
+	}
+
+	/**
+	 * Spreads the bits of a hash code, so similar keys don't cluster.
+	 */
+	private static int hash(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Code sink that adds a prefix to each line before passing it on to another
+ * sink. Used to continue the indentation of a command line for the code the
+ * command generates.
+ */
+public class PrefixSink implements CodeSink {
+	private final CodeSink target;
+	private final String prefix;
+	
+	/**
+	 * Constructs a sink that prefixes each line.
+	 *
+	 * @param target
+	 *      Sink to pass prefixed lines on to.
+	 * @param prefix
+	 *      Prefix to add for each line.
+	 */
+	public PrefixSink(CodeSink target, String prefix) {
+		this.target = target;
+		this.prefix = prefix;
+	}
+	
+	@Override
+	public void add(String line) {
+		target.add(prefix + line);
+	}
+	
+	@Override
+	public int size() {
+		return target.size();
+	}
+}
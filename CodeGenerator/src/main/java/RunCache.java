@@ -0,0 +1,57 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Files read during a single generator run, shared by all files generated
+ * in the run.
+ *
+ * Each input file is read and hashed once per run, on first use, see
+ * FileHashes.hash. Compiled templates are checked against that hash
+ * once, then kept here for the rest of the run, so a template used for many
+ * parameters is looked up in memory instead of on disk. Changes made to a
+ * file during a run are found in the next run.
+ */
+class RunCache {
+	// content hash of each file read so far, by file name as read, missing
+	// files are not kept
+	private final Map<String, String> hashes = new ConcurrentHashMap<>();
+	// compiled templates checked in this run, by file name as read
+	private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the content hash of a file, as it was when it was first hashed in
+	 * this run.
+	 *
+	 * @param fileName
+	 *      File to hash.
+	 * @return
+	 *      Hex encoded SHA-256 hash of the file, null if the file does not
+	 *      exist or could not be read.
+	 */
+	String hash(String fileName) {
+		return hashes.computeIfAbsent(fileName, FileHashes::hash);
+	}
+
+	/**
+	 * Returns the compiled template for a template file, if it was already
+	 * checked in this run.
+	 *
+	 * @param fileName
+	 *      Template file, as read.
+	 * @return
+	 *      Compiled template, null if not checked yet in this run.
+	 */
+	CompiledTemplate template(String fileName) {
+		return templates.get(fileName);
+	}
+
+	/**
+	 * Keeps a compiled template for the rest of the run.
+	 *
+	 * @param compiled
+	 *      Compiled template, checked against the hash of it's file in this run.
+	 */
+	void addTemplate(CompiledTemplate compiled) {
+		templates.put(compiled.fileName, compiled);
+	}
+}
@@ -0,0 +1,71 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of compiled templates, so each template file is only
+ * read and parsed once, no matter how often it is used.
+ *
+ * Templates are cached by canonical path, so a template reached through
+ * different template directories or relative paths is compiled only once.
+ * Cached templates are checked against the content hash of their template
+ * file, as hashed once per run, see RunCache. A template that was changed on
+ * disk is read and compiled again.
+ */
+public class TemplateCache {
+	private static final Map<String, CompiledTemplate> templates =
+					new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the compiled template for the specified template file, if it is
+	 * cached and the file did not change since it was compiled.
+	 *
+	 * @param fileName
+	 *      Template file to look up.
+	 * @param hash
+	 *      Current content hash of the template file, null if unknown.
+	 * @return
+	 *      Cached compiled template, null if not cached or out of date.
+	 */
+	static CompiledTemplate get(String fileName, String hash) {
+		String key = FileHashes.canonical(fileName);
+		CompiledTemplate compiled = templates.get(key);
+		if (null == compiled) {
+			return null;
+		}
+		if (null == hash || !hash.equals(compiled.hash)) {
+			templates.remove(key, compiled);
+			return null;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Adds a compiled template to the cache, under it's template file name.
+	 * Templates without a content hash are not cached.
+	 *
+	 * @param compiled
+	 *      Compiled template to store.
+	 */
+	static void put(CompiledTemplate compiled) {
+		if (null != compiled.hash) {
+			templates.put(FileHashes.canonical(compiled.fileName), compiled);
+		}
+	}
+
+	/**
+	 * Removes the specified template file from the cache.
+	 *
+	 * @param fileName
+	 *      Template file to remove.
+	 */
+	static void invalidate(String fileName) {
+		templates.remove(FileHashes.canonical(fileName));
+	}
+
+	/**
+	 * Removes all templates from the cache.
+	 */
+	static void clear() {
+		templates.clear();
+	}
+}
@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits template lines into tokens, see TemplateToken. Lines are scanned
+ * from left to right without regular expressions, except to find a template
+ * extension that isn't plain text.
+ *
+ * Line formats, after the indentation:
+ *  - $var$ \{name\} value
+ *  - $vars$ file, $template$ file
+ *  - $p-template$ [list] file
+ *  - $p-line$ [list] line
+ *  - $p-block$ [list] ...
+ *  - anything else is text, a $command$ found in it is tokenized as well
+ *
+ * A command runs from the first to the last $ of the line, a variable name
+ * from the first \{ after the command to the last \} of the line. A list runs
+ * from the first [ after the command to the first ] after that. A file name
+ * starts after the first space following the command or list, and ends with
+ * the last template extension in the line. Values following a variable name
+ * or list start after one separating character.
+ *
+ * A lexer is safe for concurrent use.
+ */
+class TemplateLexer {
+	private static final String VAR_OPEN = "\\{";
+	private static final String VAR_CLOSE = "\\}";
+	// regex meta characters, a template extension without them is plain text
+	private static final String REGEX_META = "\\^$.|?*+()[]{}";
+
+	// template extension as plain text, null if it is a regular expression
+	private final String extension;
+	// template extension pattern, used if it is not plain text
+	private final Pattern extensionPattern;
+
+	/**
+	 * Constructs a lexer for templates with the specified extension.
+	 *
+	 * @param templateExtension
+	 *      Extension used for templates in regex format.
+	 */
+	TemplateLexer(String templateExtension) {
+		this.extension = literal(templateExtension);
+		this.extensionPattern = null == extension ?
+						Pattern.compile(templateExtension) : null;
+	}
+
+	/**
+	 * Splits a template line into tokens.
+	 *
+	 * @param line
+	 *      Template line to split.
+	 * @return
+	 *      Tokens in order of position, empty for an empty line.
+	 */
+	List<TemplateToken> tokenize(String line) {
+		ArrayList<TemplateToken> tokens = new ArrayList<>(5);
+		int length = line.length();
+		int indentEnd = indentationEnd(line);
+		if (indentEnd > 0) {
+			tokens.add(new TemplateToken(TemplateToken.Type.INDENT, line, 0, indentEnd));
+		}
+		int first = line.indexOf('$');
+		int last = -1 == first ? -1 : line.lastIndexOf('$');
+		if (first == last) {
+			// no command
+			if (indentEnd < length) {
+				tokens.add(new TemplateToken(TemplateToken.Type.TEXT, line, indentEnd,
+								length));
+			}
+			return tokens;
+		}
+		if (first > indentEnd) {
+			tokens.add(new TemplateToken(TemplateToken.Type.TEXT, line, indentEnd, first));
+		}
+		TemplateToken command = new TemplateToken(TemplateToken.Type.COMMAND, line,
+						first + 1, last);
+		tokens.add(command);
+
+		// arguments of the command
+		int pos = last + 1;
+		switch (command.text) {
+			case "var" :
+				pos = variable(line, pos, tokens);
+				break;
+			case "vars" :
+			case "template" :
+				pos = file(line, pos, tokens);
+				break;
+			case "p-template" :
+				pos = list(line, pos, tokens);
+				if (tokens.get(tokens.size() - 1).type == TemplateToken.Type.LIST) {
+					pos = file(line, pos, tokens);
+				}
+				break;
+			case "p-line" :
+				int listEnd = list(line, pos, tokens);
+				if (listEnd != pos) {
+					// the line to fill in follows the list and a separator
+					int start = Math.min(listEnd + 1, length);
+					tokens.add(new TemplateToken(TemplateToken.Type.TEXT, line, start,
+									length));
+					pos = length;
+				}
+				break;
+			case "p-block" :
+				pos = list(line, pos, tokens);
+				break;
+			default :
+				break;
+		}
+		if (pos < length) {
+			tokens.add(new TemplateToken(TemplateToken.Type.TEXT, line, pos, length));
+		}
+		return tokens;
+	}
+
+	/**
+	 * Finds the variable definition in a line of a variables file, format
+	 * \{name\} value.
+	 *
+	 * @param line
+	 *      Line to search.
+	 * @return
+	 *      Variable name token followed by the value token, empty if the line
+	 *      contains no variable name.
+	 */
+	List<TemplateToken> variable(String line) {
+		ArrayList<TemplateToken> tokens = new ArrayList<>(2);
+		variable(line, 0, tokens);
+		return tokens;
+	}
+
+	/**
+	 * Checks if a line contains the template extension.
+	 *
+	 * @param line
+	 *      Line to search.
+	 * @return
+	 *      Whether the template extension was found.
+	 */
+	boolean hasExtension(String line) {
+		if (null != extension) {
+			return -1 != line.indexOf(extension);
+		}
+		return extensionPattern.matcher(line).find();
+	}
+
+	/**
+	 * Adds the variable name and value tokens found from the specified
+	 * position.
+	 *
+	 * @return
+	 *      Position after the tokens, the start position if none were found.
+	 */
+	private int variable(String line, int pos, List<TemplateToken> tokens) {
+		int open = line.indexOf(VAR_OPEN, pos);
+		if (-1 == open) {
+			return pos;
+		}
+		int close = line.lastIndexOf(VAR_CLOSE);
+		if (close < open + VAR_OPEN.length()) {
+			return pos;
+		}
+		if (open > pos) {
+			tokens.add(new TemplateToken(TemplateToken.Type.TEXT, line, pos, open));
+		}
+		tokens.add(new TemplateToken(TemplateToken.Type.VARIABLE, line,
+						open + VAR_OPEN.length(), close));
+		// value follows one separating character
+		int length = line.length();
+		int start = Math.min(close + VAR_CLOSE.length() + 1, length);
+		tokens.add(new TemplateToken(TemplateToken.Type.TEXT, line, start, length));
+		return length;
+	}
+
+	/**
+	 * Adds the parameter list token found from the specified position.
+	 *
+	 * @return
+	 *      Position after the closing ], the start position if no list was
+	 *      found.
+	 */
+	private int list(String line, int pos, List<TemplateToken> tokens) {
+		int open = line.indexOf('[', pos);
+		if (-1 == open) {
+			return pos;
+		}
+		int close = line.indexOf(']', open + 1);
+		if (-1 == close) {
+			return pos;
+		}
+		if (open > pos) {
+			tokens.add(new TemplateToken(TemplateToken.Type.TEXT, line, pos, open));
+		}
+		tokens.add(new TemplateToken(TemplateToken.Type.LIST, line, open + 1, close));
+		return close + 1;
+	}
+
+	/**
+	 * Adds the file name token found from the specified position.
+	 *
+	 * @return
+	 *      Position after the file name, the start position if no file name
+	 *      was found.
+	 */
+	private int file(String line, int pos, List<TemplateToken> tokens) {
+		int space = line.indexOf(' ', pos);
+		if (-1 == space) {
+			return pos;
+		}
+		int start = space + 1;
+		int end = -1;
+		if (null != extension) {
+			int found = line.lastIndexOf(extension);
+			if (found >= start) {
+				end = found + extension.length();
+			}
+		} else {
+			// last position the extension matches at
+			Matcher matcher = extensionPattern.matcher(line);
+			for (int found = line.length(); found >= start && -1 == end; found--) {
+				if (matcher.region(found, line.length()).lookingAt()) {
+					end = matcher.end();
+				}
+			}
+		}
+		if (-1 == end) {
+			return pos;
+		}
+		tokens.add(new TemplateToken(TemplateToken.Type.FILE, line, start, end));
+		return end;
+	}
+
+	/**
+	 * Returns the length of the leading whitespace of a line.
+	 *
+	 * @param line
+	 *      Line of which leading whitespace should be found.
+	 * @return
+	 *      Index of the first character that is not whitespace, the length of
+	 *      the line if there is none.
+	 */
+	static int indentationEnd(String line) {
+		int length = line.length();
+		int i = 0;
+		while (i < length && isWhitespace(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return
+	 *      Whether the character is whitespace, like \s in regular expressions.
+	 */
+	private static boolean isWhitespace(char c) {
+		return ' ' == c || '\t' == c || '\n' == c || 0x0B == c || '\f' == c
+						|| '\r' == c;
+	}
+
+	/**
+	 * Converts a regular expression to the plain text it matches, if it only
+	 * matches that text. Characters escaped with \ are taken literally.
+	 *
+	 * @param regex
+	 *      Regular expression to convert.
+	 * @return
+	 *      Plain text matched by the expression, null if the expression uses
+	 *      regex features.
+	 */
+	static String literal(String regex) {
+		if (null == regex || regex.isEmpty()) {
+			return null;
+		}
+		StringBuilder text = new StringBuilder(regex.length());
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if ('\\' == c) {
+				if (++i == regex.length() || Character.isLetterOrDigit(regex.charAt(i))) {
+					// \d, \Q and such
+					return null;
+				}
+				text.append(regex.charAt(i));
+			} else if (-1 != REGEX_META.indexOf(c)) {
+				return null;
+			} else {
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+}
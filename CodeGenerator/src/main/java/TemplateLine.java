@@ -0,0 +1,138 @@
+import java.util.List;
+
+/**
+ * Represents a single pre-parsed template line. Holds the original line text
+ * along with the command and command arguments that were found in it, so
+ * they don't have to be searched for again each time the line is processed.
+ *
+ * Template lines are immutable once created, they are shared between all
+ * uses of a compiled template. See the CompiledTemplate class.
+ */
+public class TemplateLine {
+	// original line text
+	public final String text;
+	// command name found between $$, null if the line is not a command
+	public final String command;
+	// position of the command name in the line, -1 if not a command
+	public final int commandStart;
+	public final int commandEnd;
+	// leading whitespace of the line, only found for command lines
+	public final String indent;
+	// entries of the [..|..] parameter list, null if not found
+	public final String[] paramList;
+	// template or variables file argument, null if not found
+	public final String fileName;
+	// name and value of a $var$ definition, null if not found
+	public final String varName;
+	public final String varValue;
+	// line content following the parameter list of a $p-line$ command
+	public final String paramLine;
+	// whether the line contains an opening '\{' for a $p-block$
+	public final boolean blockStart;
+	// whether the line contains the template extension
+	public final boolean templateExtension;
+	// whether the line contains a '$' character
+	public final boolean dollar;
+	// tokens of a command line, for positions in messages, empty otherwise
+	public final List<TemplateToken> tokens;
+
+	/**
+	 * Constructs a pre-parsed template line. See TemplateProcessor.parseLine
+	 * for how the arguments are found.
+	 *
+	 * @param text
+	 *      Original line text.
+	 * @param command
+	 *      Command name, null if the line is not a command.
+	 * @param commandStart
+	 *      Start index of the command name, -1 if not a command.
+	 * @param commandEnd
+	 *      End index of the command name, -1 if not a command.
+	 * @param indent
+	 *      Leading whitespace of the line.
+	 * @param paramList
+	 *      Parameter list entries, null if not found.
+	 * @param fileName
+	 *      Template or variables file argument, null if not found.
+	 * @param varName
+	 *      Variable name for $var$ commands, null if not found.
+	 * @param varValue
+	 *      Variable value for $var$ commands, null if not found.
+	 * @param paramLine
+	 *      Line content following the parameter list of a $p-line$ command.
+	 * @param blockStart
+	 *      Whether the line contains an opening '\{'.
+	 * @param templateExtension
+	 *      Whether the line contains the template extension.
+	 * @param dollar
+	 *      Whether the line contains a '$' character.
+	 * @param tokens
+	 *      Tokens of a command line, empty if not a command.
+	 */
+	TemplateLine(
+					String text,
+					String command,
+					int commandStart,
+					int commandEnd,
+					String indent,
+					String[] paramList,
+					String fileName,
+					String varName,
+					String varValue,
+					String paramLine,
+					boolean blockStart,
+					boolean templateExtension,
+					boolean dollar,
+					List<TemplateToken> tokens
+	) {
+		this.text = text;
+		this.command = command;
+		this.commandStart = commandStart;
+		this.commandEnd = commandEnd;
+		this.indent = indent;
+		this.paramList = paramList;
+		this.fileName = fileName;
+		this.varName = varName;
+		this.varValue = varValue;
+		this.paramLine = paramLine;
+		this.blockStart = blockStart;
+		this.templateExtension = templateExtension;
+		this.dollar = dollar;
+		this.tokens = tokens;
+	}
+
+	/**
+	 * Returns the column to report for a missing command argument: the column
+	 * following the command, or following the parameter list if present.
+	 *
+	 * @return
+	 *      Column counting from 1, -1 if the line is not a command.
+	 */
+	public int argumentColumn() {
+		int column = -1;
+		for (TemplateToken token : tokens) {
+			if (TemplateToken.Type.COMMAND == token.type ||
+							TemplateToken.Type.LIST == token.type) {
+				// skip the closing delimiter
+				column = token.end + 2;
+			}
+		}
+		return column;
+	}
+
+	/**
+	 * Returns the end of the variable name of a $var$ command, following the
+	 * name and the closing '\}'.
+	 *
+	 * @return
+	 *      Index in the line, -1 if the line has no variable name.
+	 */
+	public int varNameEnd() {
+		for (TemplateToken token : tokens) {
+			if (TemplateToken.Type.VARIABLE == token.type) {
+				return token.end + 2;
+			}
+		}
+		return -1;
+	}
+}
@@ -1,8 +1,17 @@
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Includes template processing functions
@@ -10,8 +19,11 @@ import java.util.regex.Pattern;
  * To add additional template commands, see the ParseCommand function and it's
  * currently implemented commands.
  *
- * To change the format used to identify commands and variables, modify the
- * regex patterns listen in the constructor just below.
+ * To change the format used to identify commands and variables, see the
+ * TemplateLexer class, which splits template lines into tokens.
+ *
+ * Templates are parsed once into a CompiledTemplate and kept in the
+ * TemplateCache, see the loadTemplate and parseLine functions.
  *
  * To change the available parameter keywords and how they're substituted, see
  * the Param.java class.
@@ -22,15 +34,15 @@ public class TemplateProcessor {
 	private String templateExtension;
 	private boolean continue_indentation;
 	private boolean overwrite_existing;
+	private int parallel_threshold;
+	private String baseDir;
 	
-	// define regex pattern variables
-	private String commandIdentifier;
-	private Pattern cmdPattern;
-	private Pattern varNamePattern;
-	private Pattern paramListPattern;
-	private String paramListDelimiter;
-	private Pattern templateNamePattern;
-	private Pattern templateCommentPattern;
+	// splits template lines into commands and their arguments
+	private final TemplateLexer lexer;
+	// separates the entries of a parameter list : |
+	private static final String paramListDelimiter = "\\|";
+	// identifies template comment lines
+	private static final String templateComment = "//<";
 	
 	/**
 	 * Constructs a template processor with the specified settings. Helps to
@@ -45,53 +57,32 @@ public class TemplateProcessor {
 	 *      Whether or not automatic indentation was enabled.
 	 * @param overwrite_existing
 	 *      Whether or not overwriting of existing files was enabled.
+	 * @param parallel_threshold
+	 *      Minimum number of parameters for which parameter commands are
+	 *      processed in parallel, -1 to disable.
+	 * @param baseDir
+	 *      Directory that variables files are relative to, "" for the working
+	 *      directory.
 	 */
 	public TemplateProcessor(
 					String subSysName,
 					String templateDir,
 					String templateExtension,
 					boolean continue_indentation,
-					boolean overwrite_existing
+					boolean overwrite_existing,
+					int parallel_threshold,
+					String baseDir
 	) {
 		this.subSysName = subSysName;
 		this.templateDir = templateDir;
 		this.templateExtension = templateExtension;
 		this.continue_indentation = continue_indentation;
 		this.overwrite_existing = overwrite_existing;
+		this.parallel_threshold = parallel_threshold;
+		this.baseDir = baseDir;
 		
-		/*
-		 * This section specifies the regex patterns used for templates.
-		 * - The enclosing identifiers for template commands : $ and $
-		 * - The enclosing identifiers for variable names : \{ and \}
-		 * - The identifiers for template file and parameter list arguments required
-		 *   for certain commands.
-		 * - The template comment identifier after whitespace : \\<
-		 *
-		 * They are specified separately here to make them easy to change, should you
-		 * need a different format for your application.
-		 *
-		 * //TODO: not yet applied for p-block due to it spanning multiple lines
-		 */
-		
-		// Be mindful when changing these that java requires an additional escape
-		// slash for certain regex operators. And regex requires one for certain
-		// opening operators only : \{ \[, but not necessarily for closing : } ]
-		
-		// command name regex pattern : anything between $$
-		commandIdentifier = "\\$";
-		String escOpenbrace = "\\\\\\{";
-		String escCloseBrace = "\\\\}";
-		cmdPattern = Pattern.compile("(?<=" + commandIdentifier + ").*(?=" + commandIdentifier + ")");
-		// variable name regex pattern : anything between \{ and \}
-		varNamePattern = Pattern.compile("(?<="+ escOpenbrace +").*(?="+ escCloseBrace +")");
-		// parameter list regex pattern : anything between [ and ]
-		paramListPattern = Pattern.compile("(?<=\\[).*(?=])");
-		// regex pattern to identify list entries : |
-		paramListDelimiter = "\\|";
-		// template filename regex pattern
-		templateNamePattern = Pattern.compile("(?<= ).*" + templateExtension);
-		// template comment regex pattern : \\< preceded by tabs or spaces
-		templateCommentPattern = Pattern.compile("[\\t ]*//<");
+		// the template format is specified in the TemplateLexer
+		lexer = new TemplateLexer(templateExtension);
 	}
 	
 	/**
@@ -110,16 +101,43 @@ public class TemplateProcessor {
 	 *
 	 * @param templateFile
 	 *      Specified template file to generate code lines from.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
 	 * @return
 	 *      A list of code lines generated from the specified template.
 	 */
 	ArrayList<String> processTemplate(
 					String templateFile,
-					Map<String, Param> parameters) {
+					GenerationContext context) {
+		ListSink out = new ListSink();
+		if (!processTemplate(templateFile, context, out)) {
+			return null;
+		}
+		return out.lines;
+	}
+	
+	/**
+	 * Generates code lines by processing a specified template file, and
+	 * appends them to the specified output as they are generated.
+	 *
+	 * @param templateFile
+	 *      Specified template file to generate code lines from.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
+	 * @param out
+	 *      Output to append the generated code lines to.
+	 * @return
+	 *      Whether the template file was found.
+	 */
+	boolean processTemplate(
+					String templateFile,
+					GenerationContext context,
+					CodeSink out
+	) {
 		// Use empty initial set of variables
-		HashMap<String, String> vars = new HashMap<>();
+		VariableScope vars = new VariableScope();
 		vars.put("s#name", subSysName);
-		return processTemplate(templateFile, parameters, vars);
+		return processTemplate(templateFile, context, vars, out);
 	}
 	
 	/**
@@ -140,19 +158,46 @@ public class TemplateProcessor {
 	 * @param templateFile
 	 *      Specified template file to generate code lines from.
 	 * @param variables
-	 *      Specified initial variables as (key,value) pairs.
+	 *      Scope containing the initial variables.
+	 * @param out
+	 *      Output to append the generated code lines to.
 	 * @return
-	 *      A list of code lines generated from the specified template.
+	 *      Whether the template file was found.
 	 */
-	private ArrayList<String> processTemplate(
+	private boolean processTemplate(
 					String templateFile,
-					Map<String, Param> parameters,
-					Map<String, String> variables
+					GenerationContext context,
+					VariableScope variables,
+					CodeSink out
 	) {
-		// read code from template file
-		ArrayList<String> code = Utilities.readLinesFromFile(templateDir + templateFile);
+		String fileName = templateDir + templateFile;
+		// find compiled template, only reads template file if not yet cached
+		CompiledTemplate compiled = loadTemplate(templateFile, context);
+		context.addInput(fileName);
 		
-		return processTemplate(templateFile, code, parameters, variables);
+		if (null == context.metrics && null == context.trace || null == compiled) {
+			return processTemplate(templateFile, compiled, context, variables, out);
+		}
+		long start = System.nanoTime();
+		int size = out.size();
+		CodeSink target = out;
+		GenerationMetrics.Counters counters = null;
+		if (null != context.metrics) {
+			// count the code produced by the template and the templates it includes
+			counters = context.metrics.template(fileName);
+			target = new MetricsSink(out, counters);
+		}
+		boolean found = processTemplate(templateFile, compiled, context, variables,
+						target);
+		if (null != counters) {
+			counters.add(GenerationMetrics.Metric.EXPANSION_TIME,
+							System.nanoTime() - start);
+			context.record(fileName, GenerationMetrics.Metric.USES, 1);
+		}
+		if (null != context.trace) {
+			context.trace.span(templateFile, "template", start, out.size() - size);
+		}
+		return found;
 	}
 	
 	/**
@@ -170,104 +215,387 @@ public class TemplateProcessor {
 	 * template may redefine a variable with a different value, the process
 	 * function will warn when this occurs to ensure intended variable usage
 	 *
-	 * @param code
-	 *      Specified template lines to generate code lines from.
+	 * @param compiled
+	 *      Specified compiled template to generate code lines from.
 	 * @param variables
-	 *      Specified initial variables as (key,value) pairs.
+	 *      Scope containing the initial variables.
+	 * @param out
+	 *      Output to append the generated code lines to.
 	 * @return
-	 *      A list of code lines generated from the specified template.
+	 *      Whether there was a template to process.
 	 */
-	private ArrayList<String> processTemplate(
+	private boolean processTemplate(
 					String templateFile,
-					ArrayList<String> code,
-					Map<String, Param> parameters,
-					Map<String, String> variables
+					CompiledTemplate compiled,
+					GenerationContext context,
+					VariableScope variables,
+					CodeSink out
 	) {
-		if (null == code) {
+		if (null == compiled) {
 			// no template lines, user is already warned
-			return null;
+			return false;
 		}
 		
-		// make local copy so parent variables aren't modified
-		HashMap<String, String> vars = new HashMap<>(variables);
+		// use child scope so parent variables aren't modified
+		VariableScope vars = variables.child();
+		
+		// check for commands, template comments were already removed when
+		// compiling
+		parseCommands(compiled, templateFile, context, vars, out);
 		
+		return true;
+	}
+	
+	/**
+	 * Finds the compiled version of the specified template file. The template
+	 * is read from file and compiled only if it was not yet cached, or if the
+	 * content of the template file changed after it was cached. Each template
+	 * is checked once per run, later uses in the run find it in the RunCache.
+	 *
+	 * @param templateFile
+	 *      Template file to find, relative to the template directory.
+	 * @param context
+	 *      Context of the file being generated, records the metrics.
+	 * @return
+	 *      Compiled template, null if the template file could not be read.
+	 */
+	private CompiledTemplate loadTemplate(
+					String templateFile,
+					GenerationContext context
+	) {
+		String fileName = templateDir + templateFile;
+		// already checked in this run
+		CompiledTemplate compiled = context.run.template(fileName);
+		if (null != compiled) {
+			context.record(fileName, GenerationMetrics.Metric.CACHE_HITS, 1);
+			return compiled;
+		}
+		// hash before reading, a change while reading is found next run
+		long start = System.nanoTime();
+		String hash = context.run.hash(fileName);
+		compiled = TemplateCache.get(fileName, hash);
+		if (null != compiled) {
+			context.record(fileName, GenerationMetrics.Metric.CACHE_HITS, 1);
+			context.run.addTemplate(compiled);
+			return compiled;
+		}
+		context.record(fileName, GenerationMetrics.Metric.CACHE_MISSES, 1);
+		ArrayList<String> code = Utilities.readLinesFromFile(fileName);
+		long read = System.nanoTime();
+		context.record(fileName, GenerationMetrics.Metric.IO_TIME, read - start);
+		if (null == code) {
+			// template not found, user is already warned
+			return null;
+		}
+		compiled = compileTemplate(fileName, hash, code);
+		context.record(fileName, GenerationMetrics.Metric.PARSE_TIME,
+						System.nanoTime() - read);
+		TemplateCache.put(compiled);
+		if (null != hash) {
+			context.run.addTemplate(compiled);
+		}
+		return compiled;
+	}
+	
+	/**
+	 * Compiles a set of template lines. Template comments are removed, the
+	 * braces of p-blocks are moved onto lines of their own and each remaining
+	 * line is parsed for commands and their arguments.
+	 *
+	 * @param fileName
+	 *      Template file the lines were read from.
+	 * @param hash
+	 *      Content hash of the template file.
+	 * @param code
+	 *      Template lines as read from the template file.
+	 * @return
+	 *      Compiled version of the template.
+	 */
+	private CompiledTemplate compileTemplate(
+					String fileName,
+					String hash,
+					ArrayList<String> code
+	) {
 		// remove comments beforehand just in case to prevent misinterpretation
 		removeTemplateComments(code);
 		
-		// check for commands
-		parseCommands(code, templateFile, parameters, vars);
+		ArrayList<TemplateLine> lines = new ArrayList<>(code.size());
+		splitBlockBraces(code).forEach(line -> lines.add(parseLine(line)));
+		return new CompiledTemplate(fileName, hash, lines);
+	}
+	
+	/**
+	 * Splits lines at the braces of p-blocks that start or end in the middle
+	 * of a line, so each block body consists of whole lines: the opening brace
+	 * '\{' ends the command line and the closing brace '\}' is on a line of
+	 * it's own. Text following a brace is moved to a new line with the
+	 * indentation of the line it was found in. Escaped braces that are matched
+	 * on the same line, such as those of variable names, are left unchanged.
+	 *
+	 * @param code
+	 *      Template lines, without template comments.
+	 * @return
+	 *      Template lines with the block braces split off.
+	 */
+	private ArrayList<String> splitBlockBraces(ArrayList<String> code) {
+		ArrayList<String> lines = new ArrayList<>(code.size());
+		// number of blocks opened and not yet closed
+		int depth = 0;
+		nextLine:
+		for (String line : code) {
+			if (-1 == line.indexOf("\\{") && -1 == line.indexOf("\\}")) {
+				lines.add(line);
+				continue;
+			}
+			String indent = line.substring(0, indentLength(line));
+			String rest = line;
+			nextPart:
+			while (true) {
+				int blockOpen = blockOpening(rest);
+				// escaped braces opened in this part of the line and not yet closed
+				int opening = 0;
+				for (int i = rest.indexOf('\\'); -1 != i; i = rest.indexOf('\\', i + 1)) {
+					if (rest.startsWith("\\{", i)) {
+						if (i != blockOpen) {
+							opening++;
+							continue;
+						}
+						depth++;
+						String after = rest.substring(i + 2);
+						if (after.trim().isEmpty()) {
+							break;
+						}
+						lines.add(rest.substring(0, i + 2));
+						rest = indent + after.substring(indentLength(after));
+						continue nextPart;
+					}
+					if (!rest.startsWith("\\}", i)) {
+						continue;
+					}
+					if (0 != opening) {
+						opening--;
+						continue;
+					}
+					if (0 == depth) {
+						// not in a block, left as is
+						continue;
+					}
+					depth--;
+					String before = rest.substring(0, i);
+					String after = rest.substring(i + 2);
+					if (before.trim().isEmpty() && after.trim().isEmpty()) {
+						break;
+					}
+					if (!before.trim().isEmpty()) {
+						lines.add(stripTrailing(before));
+					}
+					lines.add(indent + "\\}");
+					if (after.trim().isEmpty()) {
+						continue nextLine;
+					}
+					rest = indent + after.substring(indentLength(after));
+					continue nextPart;
+				}
+				lines.add(rest);
+				break;
+			}
+		}
+		return lines;
+	}
+	
+	/**
+	 * Finds the escaped brace '\{' that opens the block of a $p-block$
+	 * command line: the first one following the parameter list.
+	 *
+	 * @param line
+	 *      Template line to check.
+	 * @return
+	 *      Index of the opening brace, -1 if the line does not open a block.
+	 */
+	private int blockOpening(String line) {
+		if (-1 == line.indexOf("$p-block$")) {
+			return -1;
+		}
+		TemplateLine parsed = parseLine(line);
+		if (!"p-block".equals(parsed.command)) {
+			return -1;
+		}
+		for (TemplateToken token : parsed.tokens) {
+			if (TemplateToken.Type.LIST == token.type) {
+				// skip the closing ']' of the list
+				return line.indexOf("\\{", token.end + 1);
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return
+	 *      The line without trailing whitespace.
+	 */
+	private static String stripTrailing(String line) {
+		int end = line.length();
+		while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+			end--;
+		}
+		return line.substring(0, end);
+	}
+	
+	/**
+	 * @return
+	 *      Length of the leading whitespace of a line.
+	 */
+	private static int indentLength(String line) {
+		int length = line.length();
+		int i = 0;
+		while (i < length && Character.isWhitespace(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * Parses a single template line. Finds the command in the line and the
+	 * arguments used by that command, such as parameter lists, variable names
+	 * and template file names.
+	 *
+	 * @param line
+	 *      Template line to parse.
+	 * @return
+	 *      Pre-parsed template line.
+	 */
+	private TemplateLine parseLine(String line) {
+		boolean dollar = -1 != line.indexOf('$');
+		if (!dollar || line.indexOf('$') == line.lastIndexOf('$')) {
+			// not a command, only keep the line text
+			return new TemplateLine(line, null, -1, -1, null, null, null, null,
+							null, null, false, false, dollar, Collections.emptyList());
+		}
+		List<TemplateToken> tokens = lexer.tokenize(line);
+		
+		TemplateToken command = null;
+		String indent = "";
+		String[] paramList = null;
+		String fileName = null;
+		String varName = null;
+		String varValue = null;
+		String paramLine = null;
+		for (TemplateToken token : tokens) {
+			switch (token.type) {
+				case INDENT :
+					indent = token.text;
+					break;
+				case COMMAND :
+					command = token;
+					break;
+				case LIST :
+					paramList = token.text.split(paramListDelimiter);
+					break;
+				case VARIABLE :
+					varName = token.text;
+					break;
+				case FILE :
+					fileName = token.text;
+					break;
+				case TEXT :
+					// value of a variable, or line to fill in for each parameter,
+					// text in front of the command is neither
+					if (null != varName && null == varValue) {
+						varValue = token.text;
+					} else if (null != paramList && null == paramLine
+									&& "p-line".equals(command.text)) {
+						paramLine = token.text;
+					}
+					break;
+				default :
+					break;
+			}
+		}
 		
-		return code;
+		return new TemplateLine(line, command.text, command.start, command.end,
+						indent, paramList, fileName, varName, varValue, paramLine,
+						-1 != line.indexOf("\\{"), lexer.hasExtension(line), true,
+						tokens);
 	}
 	
 	/**
-	 * Loops through the specified code lines and checks for commands. If a line
-	 * contains a command the command is executed and the line is replaced with
-	 * the result from the command. If a line does not contain a command no
-	 * action is taken, the line remains in the specified set of code.
-	 * @param template
-	 *      Template lines as a list of String objects.
+	 * Loops through the lines of a compiled template and checks for commands.
+	 * If a line contains a command the command is executed and the code
+	 * generated by the command is written to the output instead of the line.
+	 * If a line does not contain a command no action is taken, the line is
+	 * written to the output with variables filled in.
+	 *
+	 * Output is only ever appended, so processing time is linear in the size
+	 * of the generated code.
+	 *
+	 * @param compiled
+	 *      The compiled template to process.
 	 * @param templateFile
 	 *      The template filename that is currently being processed.
-	 * @param parameters
-	 *      Map of all parameters specified for this code section.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
 	 * @param variables
-	 *      Map of all variables specified for this code section.
+	 *      Scope of all variables specified for this code section.
+	 * @param out
+	 *      Output to append the generated code lines to.
 	 */
 	private void parseCommands(
-					ArrayList<String> template,
+					CompiledTemplate compiled,
 					String templateFile,
-					Map<String, Param> parameters,
-					Map<String, String> variables
+					GenerationContext context,
+					VariableScope variables,
+					CodeSink out
 	) {
-		// loop through lines of code
-		int lineNumber = -1;
-		int size = template.size() - 1;
-		while (lineNumber < size){
-			lineNumber++;
-			// fill in variables
-			String str = template.get(lineNumber);
+		// output line numbers are counted from the start of this template
+		int start = out.size();
+		int size = compiled.lines.size();
+		// line of the compiled template that is currently being processed
+		int index = 0;
+		// finds variables in lines, rebuilt when variables are added
+		VariableMatcher matcher = null;
+		while (index < size) {
+			int lineNumber = out.size() - start;
+			TemplateLine line = compiled.lines.get(index);
 			
 			//TODO : should probably disallow '$' in variable definitions
-			// Make sure commands (anything between $$) remain unchanged by storing
-			// the original command in the line
-			RegexResult cmdRR = Utilities.firstMatch(str, cmdPattern, 0);
-			
-			// loop through vars, if str contains var key replace with var value
-			for (String key : variables.keySet()) {
-				String value = variables.get(key);
-				str = str.replace(key, value);
+			// fill in variables, in a single scan of the line
+			if (null == matcher) {
+				matcher = variables.matcher();
 			}
-			
-			// restore the original command after filling in variables
-			RegexResult newCmdRR = Utilities.firstMatch(str, cmdPattern, 0);
-			if (null != cmdRR && null != newCmdRR) {
-				str = str.replace(newCmdRR.strRes, cmdRR.strRes);
+			String str;
+			if (null == line.command) {
+				str = matcher.substitute(line.text);
+			} else if ("var".equals(line.command) && null != line.varName
+							&& variables.contains(line.varName)) {
+				// redefines a visible variable, keep the name as written
+				str = matcher.substitute(line.text, line.commandStart,
+								line.varNameEnd());
+			} else {
+				// Make sure commands (anything between $$) remain unchanged
+				str = matcher.substitute(line.text, line.commandStart,
+								line.commandEnd);
 			}
 			
-			template.set(lineNumber, str);
+			if (str != line.text) {
+				// variables changed the line, the compiled line no longer applies
+				line = parseLine(str);
+			}
 			
 			// check if line is a command
-			CommandResult res = parseCommand(template, lineNumber, templateFile,
-							parameters,	variables);
+			CommandResult res = parseCommand(line, compiled, index, lineNumber,
+							templateFile, context, variables, out);
+			if ("var".equals(line.command) || "vars".equals(line.command)) {
+				// variables may have been added
+				matcher = null;
+			}
 			if (null != res) {
-				// remove specified number of lines
-				for (int i = 0; i < res.removed; i++) {
-					template.remove(lineNumber);
-					size--;
-				}
-				// add the generated code from command
-				if (null != res.added) {
-					template.addAll(lineNumber, res.added);
-					size += res.added.size();
-					// check next line after what was added
-					lineNumber += res.added.size() - 1;
-				} else {
-					// specified lines removed, nothing added, recheck current line
-					lineNumber--;
-				}
+				// skip the lines used by the command in the compiled template
+				index += res.removed;
+			} else {
+				// line was not a command, copy to output
+				out.add(str);
+				index++;
 			}
-			// line was not a command, no action performed
 		}
 	}
 	
@@ -279,67 +607,70 @@ public class TemplateProcessor {
 	 *
 	 * Prints errors in console if command is badly formatted or unrecognized.
 	 *
-	 * @param template
-	 *      Template in which the command line was found
+	 * @param line
+	 *      Pre-parsed line to check for commands.
+	 * @param compiled
+	 *      Compiled template in which the command line was found
+	 * @param index
+	 *      Line of the compiled template the command line was found at.
 	 * @param lineNumber
-	 *      Line to check for commands.
-	 * @param parameters
-	 *      Map of all parameters specified for this code section.
+	 *      Line number in the output, used for warnings.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
 	 * @param variables
-	 *      Map of all variables specified for this code section.
+	 *      Scope of all variables specified for this code section.
+	 * @param out
+	 *      Output to append the code lines produced by the command to.
 	 * @return
-	 *      Set of code lines produced by the command in the specified line.
-	 *      Empty if no lines generated by the command in the specified line.
+	 *      Number of template lines used by the command in the specified line.
 	 *      null if no command found in this line.
 	 */
 	private CommandResult parseCommand(
-					ArrayList<String> template,
+					TemplateLine line,
+					CompiledTemplate compiled,
+					int index,
 					int lineNumber,
 					String templateFile,
-					Map<String, Param> parameters,
-					Map<String, String> variables
+					GenerationContext context,
+					VariableScope variables,
+					CodeSink out
 	) {
-		String line = template.get(lineNumber);
-		// try to find $command$ section in provided line
-		if (null == line) {
-			Utilities.log("Error: Line to check for command was null!");
-			return null;
-		}
-		
-		RegexResult cmdRR = Utilities.firstMatch(line, cmdPattern, 0);
-		if (null == cmdRR) {
+		if (null == line.command) {
 			// not a command -> no action required
 			
 			// check for single $, could have been an unclosed command
-			Pattern singleDollar = Pattern.compile(commandIdentifier);
-			RegexResult unclosedCommand = Utilities.firstMatch(line, singleDollar, 0);
-			
-			if (null != unclosedCommand) {
+			if (line.dollar) {
 				Utilities.log("Warning: single $ found in output on line : " +
-								(lineNumber+1) + " : " + line + " produced by " + templateFile +
-								", " + "possible unclosed command : Line copied!");
+								(lineNumber+1) + ", column : " + (line.text.indexOf('$') + 1) +
+								" : " + line.text + " produced by " +
+								templateFile + ", " + "possible unclosed command : Line copied!");
 			}
 			
 			return null;
 		}
 		
-		String cmd = cmdRR.strRes;
+		String cmd = line.command;
 		switch (cmd) {
 			case "var" :
 				return varCmd(line, lineNumber, templateFile, variables);
 			case "vars" :
-				return varsCmd(line, lineNumber, templateFile, variables);
+				return varsCmd(line, lineNumber, templateFile, context, variables);
 			case "p-template" :
-				return pTemplateCmd(line,lineNumber, templateFile, parameters, variables);
+				return pTemplateCmd(line, compiled, lineNumber, templateFile, context,
+								variables, out);
 			case "p-line" :
-				return pLineCmd(line, lineNumber, parameters);
+				return pLineCmd(line, compiled, lineNumber, context, out);
 			case "template" :
-				return templateCmd(line, lineNumber, templateFile, parameters, variables);
+				return templateCmd(line, lineNumber, templateFile, context,
+								variables, out);
 			case "p-block" :
-				return pBlockCmd(template, lineNumber, parameters, variables);
+				return pBlockCmd(line, compiled, index, lineNumber, context,
+								variables, out);
 			default :
-				Utilities.log("Error: Unrecognized command : " + cmd);
-				return new CommandResult(1, null);
+				Utilities.log("Error: Unrecognized command : " + cmd + " on line : " +
+								lineNumber + ", column : " + (line.commandStart + 1) + " in " +
+								templateFile);
+				return new CommandResult(1);
 		}
 	}
 	
@@ -358,24 +689,22 @@ public class TemplateProcessor {
 	 *      Whether a variable definition was found.
 	 */
 	private CommandResult varCmd(
-					String line,
+					TemplateLine line,
 					int lineNumber,
 					String templateFile,
-					Map<String, String> variables
+					VariableScope variables
 	) {
-		RegexResult varNameRR = Utilities.firstMatch(line, varNamePattern, 0);
-		if (null == varNameRR) {
+		if (null == line.varName) {
 			Utilities.log("Warning: No variable name specified on line : " +
-							lineNumber + " : " + line + " in " + templateFile + ": Line " +
-							"ignored!");
-			return new CommandResult(1, null);
+							lineNumber + ", column : " + line.argumentColumn() + " : " +
+							line.text + " in " + templateFile + ": Line ignored!");
+			return new CommandResult(1);
 		}
-		String v_name = varNameRR.strRes;
-		// remainder of string (one separating character) = variable value
-		String v_value = line.substring((varNameRR.end+3));
+		String v_name = line.varName;
+		String v_value = line.varValue;
 		
 		// if variable was already defined in parent template, warn user
-		if (variables.containsValue(v_name)) {
+		if (variables.contains(v_name) || variables.containsValue(v_name)) {
 			if (null == templateFile) {
 				Utilities.log("Warning: template overrides parent template " +
 								"variable " + v_name + " locally with value " + v_value);
@@ -388,11 +717,12 @@ public class TemplateProcessor {
 		// store variable in map as key, value
 		variables.put(v_name, v_value);
 		// remove line afterwards
-		return new CommandResult(1, null);
+		return new CommandResult(1);
 	}
 	
 	/**
-	 * Allows variable definitions to be included from another file.
+	 * Allows variable definitions to be included from another file. The file
+	 * is parsed once and attached to the scope as a whole, see VariableCache.
 	 *
 	 * @param line
 	 *      The line containing the command.
@@ -400,52 +730,123 @@ public class TemplateProcessor {
 	 *      The linenumber of the line containing the command, used for warnings.
 	 * @param templateFile
 	 *      The template file in which the command line was found.
+	 * @param context
+	 *      Context of the file being generated, records the variables file.
 	 * @param variables
 	 *      Existing set of variables to add to.
 	 * @return
 	 *      Whether a variable definition was found.
 	 */
 	private CommandResult varsCmd(
-					String line,
+					TemplateLine line,
 					int lineNumber,
 					String templateFile,
-					Map<String, String> variables
+					GenerationContext context,
+					VariableScope variables
 	) {
-		RegexResult fileName = Utilities.firstMatch(line, templateNamePattern, 0);
-		if (null == fileName) {
+		if (null == line.fileName) {
 			return noTemplateFile(line, lineNumber, templateFile);
 		}
 		
-		ArrayList<String> lines = Utilities.readLinesFromFile(fileName.strRes);
+		String varsFile = Utilities.resolve(baseDir, line.fileName);
+		VariableTable table = loadVariables(varsFile, context);
+		context.addInput(varsFile);
+		context.record(varsFile, GenerationMetrics.Metric.USES, 1);
 		
-		if (null == lines) {
+		if (null == table) {
 			// file not found, user is already warned
-			return new CommandResult(1, null);
+			return new CommandResult(1);
 		}
 		
-		int size = lines.size();
+		if (!table.overridesValue(variables::containsValue)) {
+			// only lines without a variable to warn about
+			for (int i : table.unnamedLines()) {
+				noVariableName(table, i, line.fileName);
+			}
+			variables.attach(table);
+			return new CommandResult(1);
+		}
+		
+		// replay the definitions in order, to warn about overridden values,
+		// keeping only the definitions of the file and their values
+		HashMap<String, String> defined = new HashMap<>();
+		HashMap<String, Integer> valueCounts = new HashMap<>();
+		int size = table.size();
 		for (int i = 0; i < size; i++) {
-			String str = lines.get(i);
-			RegexResult varNameRR = Utilities.firstMatch(str, varNamePattern, 0);
-			if (null == varNameRR) {
-				Utilities.log("Warning: No variable name specified on line : " +
-								i + " : " + str + " in " + fileName.strRes + ": Line ignored!");
+			String v_name = table.name(i);
+			if (null == v_name) {
+				noVariableName(table, i, line.fileName);
 				continue;
 			}
-			String v_name = varNameRR.strRes;
-			// remainder of string (one separating character) = variable value
-			String v_value = str.substring((varNameRR.end+3));
+			String v_value = table.value(i);
 			
 			// if variable was already defined in parent template, warn user
-			if (variables.containsValue(v_name)) {
-				Utilities.log("Warning: Line : " + i + " : " + str + " in " +
-								fileName.strRes + " overrides parent " + "template variable " +
+			if (valueCounts.containsKey(v_name) ||
+							variables.containsValue(v_name, defined)) {
+				Utilities.log("Warning: Line : " + i + " : " + table.line(i) + " in " +
+								line.fileName + " overrides parent " + "template variable " +
 								v_name + " locally with value " + v_value);
 			}
-			variables.put(v_name, v_value);
+			String old = defined.put(v_name, v_value);
+			if (null != old) {
+				valueCounts.computeIfPresent(old, (value, count) ->
+								1 == count ? null : count - 1);
+			}
+			valueCounts.merge(v_value, 1, Integer::sum);
 		}
+		variables.attach(table);
 		
-		return new CommandResult(1, null);
+		return new CommandResult(1);
+	}
+	
+	/**
+	 * Warns about a line of a variables file that does not define a variable.
+	 *
+	 * @param table
+	 *      Variables of the file.
+	 * @param index
+	 *      Index of the line in the file.
+	 * @param varsFile
+	 *      Variables file as named in the template, used for the warning.
+	 */
+	private void noVariableName(VariableTable table, int index, String varsFile) {
+		Utilities.log("Warning: No variable name specified on line : " + index +
+						" : " + table.line(index) + " in " + varsFile + ": Line ignored!");
+	}
+	
+	/**
+	 * Returns the variables of a variables file, from the VariableCache if the
+	 * file did not change since it was last read.
+	 *
+	 * @param varsFile
+	 *      Variables file to read.
+	 * @param context
+	 *      Context of the file being generated, records the metrics.
+	 * @return
+	 *      Variables of the file, null if the file could not be read.
+	 */
+	private VariableTable loadVariables(String varsFile, GenerationContext context) {
+		// hash before reading, a change while reading is found next run
+		String hash = context.run.hash(varsFile);
+		VariableTable table = VariableCache.get(varsFile, hash);
+		if (null != table) {
+			context.record(varsFile, GenerationMetrics.Metric.CACHE_HITS, 1);
+			return table;
+		}
+		context.record(varsFile, GenerationMetrics.Metric.CACHE_MISSES, 1);
+		long start = System.nanoTime();
+		ArrayList<String> lines = Utilities.readLinesFromFile(varsFile);
+		long read = System.nanoTime();
+		context.record(varsFile, GenerationMetrics.Metric.IO_TIME, read - start);
+		if (null == lines) {
+			// file not found, user is already warned
+			return null;
+		}
+		table = new VariableTable(varsFile, hash, lines, lexer);
+		context.record(varsFile, GenerationMetrics.Metric.PARSE_TIME,
+						System.nanoTime() - read);
+		VariableCache.put(table);
+		return table;
 	}
 	
 	/**
@@ -462,162 +863,112 @@ public class TemplateProcessor {
 	 *      not specify a template filename.
 	 */
 	private CommandResult noTemplateFile(
-					String line,
+					TemplateLine line,
 					int lineNumber,
 					String templateFile
 	) {
-		Pattern templExtPattern = Pattern.compile(templateExtension);
-		RegexResult templExt = Utilities.firstMatch(line, templExtPattern, 0);
-		if (null == templExt) {
+		if (!line.templateExtension) {
 			Utilities.log("Warning: No template extension found on line : " +
-							lineNumber + " : " + line + " in " + templateFile + ": Line " +
-							"ignored!");
+							lineNumber + ", column : " + line.argumentColumn() + " : " +
+							line.text + " in " + templateFile + ": Line ignored!");
 		} else {
 			Utilities.log("Warning: No template file specified on line : " +
-							lineNumber + " : " + line + " in " + templateFile + ": Line " +
-							"ignored!");
+							lineNumber + ", column : " + line.argumentColumn() + " : " +
+							line.text + " in " + templateFile + ": Line ignored!");
 		}
-		return new CommandResult(1, null);
+		return new CommandResult(1);
 	}
 	
 	/**
-	 * Tries to find a parameter list in the specified line. Parameter lists
-	 * have the format [param_name_1|param_name_2|...] and are used for several
-	 * of the parameter commands.
+	 * Warns the user that a command line did not contain the parameter list
+	 * required by the command.
 	 * @param line
-	 *      The line to search for a parameter list.
+	 *      The line containing the command.
 	 * @param lineNumber
 	 *      The linenumber of the specified line, useful for warnings.
 	 * @return
-	 *      List of (assumed to be) parameter name strings if the line
-	 *      contained a list format. Returns null otherwise.
+	 *      The result of a command that requires a parameter list but did not
+	 *      specify one.
 	 */
-	private String[] findParamList(String line, int lineNumber) {
-		//TODO: use regex
-		RegexResult paramListRR = Utilities.firstMatch(line, paramListPattern, 0);
-		if (null == paramListRR) {
-			Utilities.log("Error: no parameter list provided for command " +
-							"on line : " + lineNumber + " : " + line + " : Line ignored!");
-			return null;
-		}
-		String paramList = paramListRR.strRes;
-		
-		return paramList.split(paramListDelimiter);
+	private CommandResult noParamList(TemplateLine line, int lineNumber) {
+		Utilities.log("Error: no parameter list provided for command " +
+						"on line : " + lineNumber + ", column : " + line.argumentColumn() +
+						" : " + line.text + " : Line ignored!");
+		return new CommandResult(1);
 	}
 	
 	/**
 	 * Handles a line containing a $p-block$ command.
-	 * @param template
-	 *      Template the command was found in as list of Strings.
+	 * @param line
+	 *      The line containing the command.
+	 * @param compiled
+	 *      Compiled template the command was found in.
+	 * @param index
+	 *      Line of the compiled template the command was found at.
 	 * @param lineNumber
 	 *      Line number the command was found in. Used for warnings
-	 * @param parameters
-	 *      Parameters that were specified for the template containing the
-	 *      command.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
+	 * @param out
+	 *      Output to append the code produced by the command to.
 	 * @return
-	 *      A representation of the command result as lines to remove and lines
-	 *      to add.
+	 *      A representation of the command result as template lines used.
 	 */
 	private CommandResult pBlockCmd(
-					ArrayList<String> template,
+					TemplateLine line,
+					CompiledTemplate compiled,
+					int index,
 					int lineNumber,
-					Map<String, Param> parameters,
-					Map<String, String> variables
+					GenerationContext context,
+					VariableScope variables,
+					CodeSink out
 	) {
-		// line at which the p-block command was found
-		String line = template.get(lineNumber);
 		// find specified list of parameters
-		String[] params = findParamList(line, lineNumber);
+		String[] params = line.paramList;
 		// ignore if not found (user is warned)
 		if (null == params) {
-			return new CommandResult(1, null);
+			return noParamList(line, lineNumber);
 		}
 		
 		// check if the line contains an opening '{'
-		int block_start;
-		int start_bracket = line.indexOf("\\{");
-		if (-1 == start_bracket) {
+		if (!line.blockStart) {
 			Utilities.log("Error: no starting bracket '\\{' for p-block " +
 							"command" +
 							" " +
-							" : " + line + " on line : " + lineNumber + " : Line ignored!");
+							" : " + line.text + " on line : " + lineNumber + " : Line ignored!");
 			//TODO: assuming start bracket is on same line
-			return new CommandResult(1, null);
-		} else {
-			// block start is at lineNumber
-			block_start = lineNumber;
-		}
-		
-		// find end bracket
-		int block_end = -1;
-		int block_line = block_start + 1;
-		int size = template.size();
-		while (block_line < size) {
-			block_line++;
-			String currentLine = template.get(block_line);
-			int end_bracket = currentLine.indexOf("\\}");
-			if (-1 != end_bracket) {
-				block_end = block_line;
-				break;
-			}
+			return new CommandResult(1);
 		}
 		
+		// find end bracket, the block is found once when compiling
+		int block_end = compiled.blockEnd(index);
+		
 		if (-1 == block_end) {
 			Utilities.log("Error: no end bracket '\\}' for p-block command " +
-							" : " + line + " on line : " + lineNumber + " : Line ignored!");
-			return new CommandResult(1, null);
+							" : " + line.text + " on line : " + lineNumber + " : Line ignored!");
+			return new CommandResult(1);
 		}
 		
-		//TODO: assuming end bracket is on it's own line
-		
-		ArrayList<String> result = new ArrayList<>();
-		
-		int startIndex = block_start + 1;
-		int endIndex = block_end;
-		
 		// get parameter code block from template
-		ArrayList<String> code = new ArrayList<>(template.subList(startIndex,
-						endIndex));
+		CompiledTemplate code = compiled.block(index);
 		
-		// if keyword all is used in list -> fill template for all params
-		for (String p : params) {
-			if (p.equals("all")) {
-				// process parameter in order of id
-				ArrayList<Param> ps = new ArrayList<>();
-				parameters.forEach((name, par) -> ps.add(par));
-				ArrayList<Param> sorted = Param.sortParams(ps);
-				sorted.forEach(par -> {
-					// make local copy so parent variables aren't modified
-					HashMap<String, String> vars = new HashMap<>(variables);
-					ArrayList<String> pCode = new ArrayList<>(code);
-					// add param vars and process
-					par.addParamVariables(vars);
-					ArrayList<String> blockLines = processTemplate(null, pCode, parameters,
-									vars);
-					result.addAll(blockLines);
-				});
-				return new CommandResult((block_end + 1 - block_start), result);
-			}
-		}
-		// else only fill template for specified parameters
-		for (String p : params) {
-			// fill in the template
-			Param par = parameters.get(p);
-			if (null == par) {
-				Utilities.log("Error: Unknown parameter : " + p + " : Parameter " +
-								"skipped!");
-				continue;
-			}
-			// make local copy so parent variables aren't modified
-			HashMap<String, String> vars = new HashMap<>(variables);
-			ArrayList<String> pCode = new ArrayList<>(code);
+		// process the block once for each parameter
+		int expanded = forEachParam(params, context, out, null, (par, parOut) -> {
+			long start = System.nanoTime();
+			int size = parOut.size();
+			// use child scope so parent variables aren't modified
+			VariableScope vars = variables.child();
 			// add param vars and process
 			par.addParamVariables(vars);
-			ArrayList<String> blockLines = processTemplate(null, pCode, parameters,
-							vars);
-			result.addAll(blockLines);
-		}
-		return new CommandResult((block_end + 1 - block_start), result);
+			processTemplate(null, code, context, vars, parOut);
+			if (null != context.trace) {
+				context.trace.span("p-block " + par.name, "p-block", start,
+								parOut.size() - size, "parameter", par.name,
+								"template", compiled.source);
+			}
+		});
+		context.record(compiled.source, GenerationMetrics.Metric.P_BLOCK, expanded);
+		return new CommandResult(block_end + 1 - index);
 	}
 	
 	/**
@@ -627,115 +978,182 @@ public class TemplateProcessor {
 	 * parameter list.
 	 * @param line
 	 *      The line the command was found in.
+	 * @param compiled
+	 *      Compiled template in which the command line was found.
 	 * @param lineNumber
 	 *      The number of the line the command was found in. Used for warnings.
 	 * @param templateFile
 	 *      Filename of template that is being checked.
-	 * @param parameters
-	 *      The parameters that were specified for the current template.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
 	 * @param variables
 	 *      The variables that were specified for the current template.
+	 * @param out
+	 *      Output to append the resulting code to.
 	 * @return
-	 *      Resulting code from attempting to process the template for each
-	 *      parameter in the command's parameter list, along with an indication
-	 *      that one line should be removed (the line containing the command).
+	 *      An indication that one template line was used (the line containing
+	 *      the command).
 	 */
 	private CommandResult pTemplateCmd(
-					String line,
+					TemplateLine line,
+					CompiledTemplate compiled,
 					int lineNumber,
 					String templateFile,
-					Map<String, Param> parameters,
-					Map<String, String> variables
+					GenerationContext context,
+					VariableScope variables,
+					CodeSink out
 	) {
 		// find indentation used
-		String indent = Utilities.findIndentation(line);
+		String indent = line.indent;
 		
-		RegexResult paramListRR = Utilities.firstMatch(line, paramListPattern, 0);
-		if (null == paramListRR) {
-			Utilities.log("Error: no parameter list provided for command " +
-							"on line : " + lineNumber + " : " + line + " : Line ignored!");
-			return new CommandResult(1, null);
+		String[] params = line.paramList;
+		if (null == params) {
+			return noParamList(line, lineNumber);
 		}
-		String[] params = paramListRR.strRes.split(paramListDelimiter);
 		
-		RegexResult fileName = Utilities.firstMatch(line, templateNamePattern,
-						paramListRR.end);
-		if (null == fileName) {
+		if (null == line.fileName) {
 			return noTemplateFile(line, lineNumber, templateFile);
 		}
 		
-		String template = fileName.strRes;
-		
-		ArrayList<String> lines = new ArrayList<>();
+		String template = line.fileName;
 		
-		boolean foundAllKeyword = false;
-		// if keyword all is used in list -> fill template for all params
-		for (String p : params) {
-			if (p.equals("all")) {
-				foundAllKeyword = true;
-				// process parameter in order of id
-				ArrayList<Param> ps = new ArrayList<>();
-				parameters.forEach((name, par) -> ps.add(par));
-				ArrayList<Param> sorted = Param.sortParams(ps);
-				sorted.forEach(par -> {
-					// fill in parameters for template name if present
-					String temp = par.fillInParam(template);
-					// make local copy so parent variables aren't modified
-					HashMap<String, String> vars = new HashMap<>(variables);
-					// add param vars and process
-					par.addParamVariables(vars);
-					ArrayList<String> newLines = processTemplate(temp, parameters,
-									vars);
-					checkParamTemplateResult(lines, newLines, temp, par);
-				});
-				break;
-			}
-		}
-		if (!foundAllKeyword) {
-			// only fill template for specified parameters
-			for (String p : params) {
-				// fill in the template
-				Param par = parameters.get(p);
-				if (null == par) {
-					Utilities.log("Error: Unknown parameter : " + p + " : Parameter " +
-									"skipped!");
-					continue;
-				}
-				// fill in parameters for template name if present
-				String temp = par.fillInParam(template);
-				// make local copy so parent variables aren't modified
-				HashMap<String, String> vars = new HashMap<>(variables);
-				// add param vars and process
-				par.addParamVariables(vars);
-				ArrayList<String> newLines = processTemplate(temp, parameters,
-								vars);
-				checkParamTemplateResult(lines, newLines, temp, par);
-			}
-		}
 		if (continue_indentation) {
-			addPrefix(lines, indent);
+			out = new PrefixSink(out, indent);
 		}
-		return new CommandResult(1, lines);
+		
+		// process the template once for each parameter
+		// a missing template is created by the first parameter using it, so
+		// the parameters that follow find it empty, also when in parallel
+		Function<Param, String> missing = par -> {
+			String temp = par.fillInParam(template);
+			return new File(templateDir + temp).isFile() ? null : temp;
+		};
+		int expanded = forEachParam(params, context, out, missing, (par, parOut) -> {
+			long start = System.nanoTime();
+			// fill in parameters for template name if present
+			String temp = par.fillInParam(template);
+			// use child scope so parent variables aren't modified
+			VariableScope vars = variables.child();
+			// add param vars and process
+			par.addParamVariables(vars);
+			int size = parOut.size();
+			boolean found = processTemplate(temp, context, vars, parOut);
+			checkParamTemplateResult(parOut, found, size == parOut.size(), temp,
+							par);
+			if (null != context.trace) {
+				context.trace.span("p-template " + par.name, "p-template", start,
+								parOut.size() - size, "parameter", par.name,
+								"template", temp);
+			}
+		});
+		context.record(compiled.source, GenerationMetrics.Metric.P_TEMPLATE,
+						expanded);
+		return new CommandResult(1);
 	}
 	
 	/**
-	 * Adds the specified prefix string to each line in the specified set of
-	 * lines.
-	 * @param lines
-	 *      Lines that should have a prefix.
-	 * @param prefix
-	 *      Prefix to add for each line.
+	 * Produces code for each parameter in a parameter list, used by the
+	 * parameter commands that process a template for each parameter. If the
+	 * list contains the keyword all, code is produced for all parameters in
+	 * order of id. Otherwise code is produced for the listed parameters in the
+	 * order they are listed, unknown parameters are skipped.
+	 *
+	 * If the number of parameters reaches the parallel threshold, the code for
+	 * each parameter is produced in parallel. The output and the log output is
+	 * still combined in the same order as for sequential processing. The first
+	 * parameter of each ordered key is processed before the others, in order,
+	 * so later parameters with the same key see its side effects as they would
+	 * when processed sequentially.
+	 *
+	 * @param params
+	 *      List of parameter names from the command.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
+	 * @param out
+	 *      Output to append the code produced for all parameters to.
+	 * @param ordered
+	 *      Gives the key of parameters that must be processed in order, null
+	 *      for parameters that don't. May be null if no parameter has to be.
+	 * @param expansion
+	 *      Produces the code for a single parameter and appends it to the
+	 *      specified output.
+	 * @return
+	 *      Number of parameters code was produced for.
 	 */
-	private void addPrefix(ArrayList<String> lines, String prefix) {
-		if (null == lines || null == prefix) {
-			return;
+	private int forEachParam(
+					String[] params,
+					GenerationContext context,
+					CodeSink out,
+					Function<Param, String> ordered,
+					BiConsumer<Param, CodeSink> expansion
+	) {
+		// parameters to process in order, null for unknown parameters
+		List<Param> list;
+		// if keyword all is used in list -> process all params
+		if (Arrays.asList(params).contains("all")) {
+			// process parameter in order of id
+			list = context.parameters.byId();
+		} else {
+			// only process specified parameters
+			list = new ArrayList<>(params.length);
+			for (String p : params) {
+				list.add(context.parameters.get(p));
+			}
 		}
-		int size = lines.size();
+		
+		ObjIntConsumer<CodeSink> task = (parOut, i) -> {
+			Param par = list.get(i);
+			if (null == par) {
+				Utilities.log("Error: Unknown parameter : " + params[i] +
+								" : Parameter skipped!");
+				return;
+			}
+			expansion.accept(par, parOut);
+		};
+		
+		int size = list.size();
+		int expanded = size - Collections.frequency(list, null);
+		if (-1 == parallel_threshold || size < parallel_threshold) {
+			for (int i = 0; i < size; i++) {
+				task.accept(out, i);
+			}
+			return expanded;
+		}
+		
+		// hold back output and log output of each parameter, to add it in order
+		ArrayList<ArrayList<String>> logs = new ArrayList<>(size);
+		ArrayList<ListSink> outputs = new ArrayList<>(size);
 		for (int i = 0; i < size; i++) {
-			String line = lines.get(i);
-			line = prefix + line;
-			lines.set(i, line);
+			logs.add(null);
+			outputs.add(null);
 		}
+		IntConsumer capture = i -> {
+			ListSink parOut = new ListSink();
+			Utilities.startLogCapture();
+			try {
+				task.accept(parOut, i);
+			} finally {
+				logs.set(i, Utilities.stopLogCapture());
+			}
+			outputs.set(i, parOut);
+		};
+		// first parameter of each ordered key before the others
+		HashSet<String> keys = new HashSet<>();
+		for (int i = 0; null != ordered && i < size; i++) {
+			Param par = list.get(i);
+			String key = null == par ? null : ordered.apply(par);
+			if (null != key && keys.add(key)) {
+				capture.accept(i);
+			}
+		}
+		IntStream.range(0, size).parallel()
+						.filter(i -> null == outputs.get(i))
+						.forEach(capture);
+		for (int i = 0; i < size; i++) {
+			Utilities.log(logs.get(i));
+			out.addAll(outputs.get(i).lines);
+		}
+		return expanded;
 	}
 	
 	/**
@@ -745,41 +1163,49 @@ public class TemplateProcessor {
 	 * keywords in the content line are replaced with the parameter's values.
 	 * @param line
 	 *      Line containing a $template$ command
-	 * @param parameters
-	 *      Parameters specified for template containing this template command.
+	 * @param compiled
+	 *      Compiled template in which the command line was found.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
+	 * @param out
+	 *      Output to append the filled in lines to.
 	 * @return
-	 *      Command result specifying lines to remove and lines
+	 *      Command result specifying template lines used
 	 */
 	private CommandResult pLineCmd(
-					String line,
+					TemplateLine line,
+					CompiledTemplate compiled,
 					int lineNumber,
-					Map<String, Param> parameters
+					GenerationContext context,
+					CodeSink out
 	) {
 		// find indentation used
-		String indent = Utilities.findIndentation(line);
+		String indent = line.indent;
 		// find specified list of parameters
-		String[] params = findParamList(line, lineNumber);
+		String[] params = line.paramList;
 		// ignore if not found (user is warned)
 		if (null == params) {
-			return new CommandResult(1, null);
+			return noParamList(line, lineNumber);
 		}
 		
-		int p_list_end = line.indexOf(']');
-		String paramLine = line.substring(p_list_end + 2);
+		String paramLine = line.paramLine;
 		
-		ArrayList<String> lines = new ArrayList<>();
+		CodeSink lines = continue_indentation ? new PrefixSink(out, indent) : out;
+		long start = System.nanoTime();
+		int size = lines.size();
+		// reused to fill in the line for each parameter
+		StringBuilder filled = new StringBuilder();
 		boolean foundAllKeyword = false;
 		// if keyword all is used in list -> fill line for all params
 		for (String p : params) {
 			if (p.equals("all")) {
 				foundAllKeyword = true;
 				// process parameter in order of id
-				ArrayList<Param> ps = new ArrayList<>();
-				parameters.forEach((name, par) -> ps.add(par));
-				ArrayList<Param> sorted = Param.sortParams(ps);
-				sorted.forEach(par -> {
+				context.parameters.byId().forEach(par -> {
 					// fill in the code line with values of par
-					lines.add(par.fillInParam(paramLine));
+					filled.setLength(0);
+					par.fillInParam(paramLine, filled);
+					lines.add(filled.toString());
 				});
 				break;
 			}
@@ -788,18 +1214,23 @@ public class TemplateProcessor {
 			// only fill line for specified parameters
 			for (String p : params) {
 				// fill in the template
-				Param par = parameters.get(p);
+				Param par = context.parameters.get(p);
 				if (null == par) {
 					Utilities.log("Error: Unknown parameter : " + p + " : Parameter " + "skipped!");
 					continue;
 				}
-				lines.add(par.fillInParam(paramLine));
+				filled.setLength(0);
+				par.fillInParam(paramLine, filled);
+				lines.add(filled.toString());
 			}
 		}
-		if (continue_indentation) {
-			addPrefix(lines, indent);
+		context.record(compiled.source, GenerationMetrics.Metric.P_LINE,
+						lines.size() - size);
+		if (null != context.trace) {
+			context.trace.span("p-line", "p-line", start, lines.size() - size,
+							"template", compiled.source);
 		}
-		return new CommandResult(1, lines);
+		return new CommandResult(1);
 	}
 	
 	/**
@@ -815,50 +1246,45 @@ public class TemplateProcessor {
 	 *      Line containing a $template$ command.
 	 * @param templateFile
 	 *      Filename of template that is being checked.
-	 * @param parameters
-	 *      Parameters specified for template containing this template command.
+	 * @param context
+	 *      Context of the file being generated, holds the parameters.
 	 * @param variables
 	 *      Variables specified for template containing this template command.
+	 * @param out
+	 *      Output to append the code produced from the template to.
 	 * @return
-	 *      Output code produced from the template as a List of String objects.
+	 *      Command result specifying template lines used.
 	 */
 	private CommandResult templateCmd(
-					String line,
+					TemplateLine line,
 					int lineNumber,
 					String templateFile,
-					Map<String, Param> parameters,
-					Map<String, String> variables
+					GenerationContext context,
+					VariableScope variables,
+					CodeSink out
 	) {
 		// find indentation used
-		String indent = Utilities.findIndentation(line);
+		String indent = line.indent;
 		
-		RegexResult fileName = Utilities.firstMatch(line, templateNamePattern, 0);
-		if (null == fileName) {
+		if (null == line.fileName) {
 			return noTemplateFile(line, lineNumber, templateFile);
 		}
 		
-		String template = fileName.strRes;
+		String template = line.fileName;
 		
-		// process template
-		ArrayList<String> newLines = processTemplate(template, parameters,
-						variables);
 		if (continue_indentation) {
-			addPrefix(newLines, indent);
+			out = new PrefixSink(out, indent);
 		}
 		
-		if (null == newLines) {
-			// template not found, user is already warned, return empty
-			return new CommandResult(1, null);
-		} else {
-			// template found, return result from template
-			return new CommandResult(1, newLines);
-		}
+		// process template, if not found the user is already warned
+		processTemplate(template, context, variables, out);
+		return new CommandResult(1);
 	}
 	
 	/**
 	 * Checks if filling in a template for a specific parameter was successful.
 	 * - If the template existed and wasn't empty, the lines generated from
-	 * it are are added to the output.
+	 * it are already in the output, nothing is done.
 	 * - If the template was empty, a warning is displayed and a comment is
 	 * included in the output as an indication for the user where the parameter
 	 * specific code should have been.
@@ -869,31 +1295,31 @@ public class TemplateProcessor {
 	 * parameter specific code should have been.
 	 *
 	 * @param lines
-	 *      Output lines as a list of String objects.
-	 * @param newLines
-	 *      Set of lines generated from the template
+	 *      Output the lines generated from the template were appended to.
+	 * @param found
+	 *      Whether the template was found.
+	 * @param empty
+	 *      Whether no lines were generated from the template.
 	 * @param template
 	 *      Template file used for generating lines
 	 * @param param
 	 *      Parameter whose values were used to fill in template.
 	 */
 	private void checkParamTemplateResult(
-					ArrayList<String> lines,
-					ArrayList<String> newLines,
+					CodeSink lines,
+					boolean found,
+					boolean empty,
 					String template,
 					Param param
 	) {
-		if (null != newLines && 0 == newLines.size()) {
+		if (found && empty) {
 			// template was found but was empty, warn user
 			Utilities.log("Warning: template " + param.name + "/" + template +
 							" was empty!" +
 							" A comment line has been added in the output to indicate" +
 							" where the code for this template could be added.");
 			lines.add("// Add " + param.name + " code section here!");
-		} else if (null != newLines) {
-			// template was found and was not empty, add result to output
-			lines.addAll(newLines);
-		} else {
+		} else if (!found) {
 			// template was not found, warn user and make blank template
 			Utilities.log("Warning: the template " + param.name + "/" +
 							template + " was missing!" +
@@ -924,11 +1350,9 @@ public class TemplateProcessor {
 		// loop through code lines, iterator for safe removal in loop
 		Iterator<String> itr = code.iterator();
 		while (itr.hasNext()) {
-			// check if start of line matches comment regex
+			// check if line contains the comment identifier
 			String str = itr.next();
-			RegexResult commentRR = Utilities.firstMatch(str, templateCommentPattern, 0);
-			if (null != commentRR) {
-				// start of line matched comment regex -> remove line
+			if (str.contains(templateComment)) {
 				itr.remove();
 			}
 		}
@@ -0,0 +1,70 @@
+/**
+ * Represents a part of a template line found by the TemplateLexer, along with
+ * it's position in the line.
+ *
+ * The position is that of the content, without delimiters: for $p-line$ the
+ * command token holds p-line and starts after the first $.
+ */
+public class TemplateToken {
+	/**
+	 * Kinds of template line parts.
+	 */
+	public enum Type {
+		// leading whitespace of the line
+		INDENT,
+		// command name between $ and $
+		COMMAND,
+		// parameter list between [ and ], entries separated by |
+		LIST,
+		// variable name between \{ and \}
+		VARIABLE,
+		// template or variables file name, including the template extension
+		FILE,
+		// anything else, such as the value of a variable or a $p-line$ line
+		TEXT
+	}
+
+	public final Type type;
+	// start and end index of the content in the line
+	public final int start;
+	public final int end;
+	// content of the token
+	public final String text;
+
+	/**
+	 * Constructs a token for part of a line.
+	 *
+	 * @param type
+	 *      Kind of line part.
+	 * @param line
+	 *      Line the token was found in.
+	 * @param start
+	 *      Start index of the content in the line.
+	 * @param end
+	 *      End index of the content in the line.
+	 */
+	TemplateToken(Type type, String line, int start, int end) {
+		this.type = type;
+		this.start = start;
+		this.end = end;
+		this.text = line.substring(start, end);
+	}
+
+	/**
+	 * @return
+	 *      Column of the start of the content, counting from 1, for messages.
+	 */
+	public int column() {
+		return start + 1;
+	}
+
+	/**
+	 * Returns a string representation of the token, for debugging.
+	 *
+	 * @return
+	 *      Type, column and content of the token.
+	 */
+	public String toString() {
+		return type + "@" + column() + ":" + text;
+	}
+}
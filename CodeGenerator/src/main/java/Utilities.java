@@ -1,12 +1,15 @@
 import java.io.*;
 import java.lang.reflect.Array;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.List;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -16,7 +19,43 @@ import org.json.JSONObject;
  * @author Erik
  */
 public class Utilities {
-	private static ArrayList<String> loglines = new ArrayList<>();
+	// number of lines kept in the internal log, older lines are dropped first
+	static final int LOG_LIMIT = 100000;
+	private static final ArrayDeque<String> loglines = new ArrayDeque<>();
+	// log lines held back per thread, to keep output of parallel tasks grouped
+	// captures can be nested, the most recently started capture is used
+	private static final ThreadLocal<ArrayDeque<LogCapture>> captured =
+					ThreadLocal.withInitial(ArrayDeque::new);
+	// writes logged lines to the console and log file in the background
+	private static final LogWriter writer = new LogWriter();
+	// log file lines are written to as they are logged, null if none
+	private static String streamedLog;
+	// lines left out of the internal log, see configureLog
+	private static LogFilter filter = new LogFilter("info", -1);
+	
+	/**
+	 * Log lines held back for a thread, see startLogCapture. Holds at most the
+	 * last LOG_LIMIT lines.
+	 */
+	private static class LogCapture {
+		private final ArrayDeque<String> lines = new ArrayDeque<>();
+		// whether lines are passed on as well
+		private final boolean echo;
+		// lines left out of the capture, null to capture all lines
+		private final LogFilter filter;
+		
+		private LogCapture(boolean echo, LogFilter filter) {
+			this.echo = echo;
+			this.filter = filter;
+		}
+		
+		private void add(String line) {
+			if (lines.size() >= LOG_LIMIT) {
+				lines.removeFirst();
+			}
+			lines.add(line);
+		}
+	}
 	
 	/**
 	 * Attempts to read a specified file as a JSONObject
@@ -43,6 +82,11 @@ public class Utilities {
 	 * Reads a CSV file containing parameters as lines of comma separated values.
 	 * Format : param_id_value, param_id_name, data_type, default_value.
 	 *
+	 * Values are trimmed and can be quoted, empty lines and lines starting
+	 * with # are skipped. The file is parsed while it is read, see
+	 * ParamCSVReader. Records that can't be parsed are logged with their line
+	 * number and skipped.
+	 *
 	 * Allows an integer start value to be specified for auto incrementing
 	 * parameter ids. The parameters from the csv file will be given ids
 	 * in order of appearance starting from this value instead of whatever ids
@@ -57,64 +101,14 @@ public class Utilities {
 	 * @param auto_increment_start_id
 	 *      The start value to be used for auto incrementing ids. -1 to disable.
 	 * @return
-	 *      ArrayList of param objects representing the CSV file.
+	 *      Table of the parameters in the CSV file, a later parameter replaces
+	 *      an earlier one with the same name. Null if the file can't be read.
 	 */
-	public static ArrayList<Param> readParamCSV(String fileName, int auto_increment_start_id) {
-		
+	public static ParamTable readParamCSV(String fileName, int auto_increment_start_id) {
 		if (null == fileName) {
 			return null;
 		}
-		ArrayList<String> lines = readLinesFromFile(fileName);
-		if (null == lines) {
-			return null;
-		}
-		
-		ArrayList<Param> params = new ArrayList<>();
-		// start counter and keep track if we found a specified id
-		int current_id = auto_increment_start_id;
-		boolean found_specified_id = false;
-		
-		for (String str : lines) {
-			String[] parts = str.split(",", -1);
-			Param p;
-			
-			if (-1 != auto_increment_start_id) {
-				// should use auto-incrementing ids
-				String id_str = parts[0];
-				// read specified id (string -> int)
-				try {
-					if (null == id_str) {
-						throw new NumberFormatException();
-					} else {
-						int id = Integer.parseInt(id_str);
-						// if id is not -1 ít was specified
-						if (-1 != id) {
-							found_specified_id = true;
-						}
-					}
-				} catch (NumberFormatException e) {
-					Utilities.log("id value for parameter is not a number : " +
-									id_str + "," + parts[1] + "," + parts[2] + "," + parts[3]);
-				}
-				
-				p = new Param(current_id, parts[1], parts[2], parts[3]);
-				current_id++;
-			} else {
-				// use specified ids
-				p = new Param(parts[0], parts[1], parts[2], parts[3]);
-			}
-			params.add(p);
-		}
-		
-		// incrementing id was used, but some ids were specified (not -1)
-		if (found_specified_id) {
-			System.out.print("Warning: auto increment enabled for parameter ids," +
-							" id values from " + fileName + " ignored!");
-			Utilities.log(" Set id values to -1 in main .csv file to prevent " +
-							"this warning.");
-		}
-		
-		return params;
+		return ParamCSVReader.read(fileName, auto_increment_start_id);
 	}
 	
 	
@@ -163,7 +157,102 @@ public class Utilities {
 	public static void writeLinesToFile(ArrayList<String> code,
 	                                     String fileName,
 	                                     boolean overwriteExisting) {
+		writeLinesToFile(code, fileName, overwriteExisting, false);
+	}
+	
+	/**
+	 * Writes the specified list of Strings to a file as separate lines.
+	 *
+	 * If only writing changed files, the lines are written to memory first and
+	 * compared to the existing file. The file is left untouched if the content
+	 * is the same, so it's modification time doesn't change. Otherwise the
+	 * lines are written to a temporary file which then replaces the existing
+	 * file at once, so the file is never left half written.
+	 * @param code
+	 *      ArrayList of Strings to write to file.
+	 * @param fileName
+	 *      File path to write to.
+	 * @param overwriteExisting
+	 *      Whether or not to overwrite file if file already exists.
+	 * @param onlyIfChanged
+	 *      Whether or not to only write the file if it's content changed.
+	 */
+	public static void writeLinesToFile(ArrayList<String> code,
+	                                     String fileName,
+	                                     boolean overwriteExisting,
+	                                     boolean onlyIfChanged) {
 		//TODO : make this return a boolean as indication for success
+		Path filePath = prepareOutputFile(fileName, overwriteExisting,
+						!onlyIfChanged);
+		if (null == filePath) {
+			return;
+		}
+		
+		if (onlyIfChanged) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeLines(code, new BufferedWriter(new OutputStreamWriter(bytes,
+							Charset.forName("UTF-8"))));
+			replaceIfChanged(filePath, bytes.toByteArray(), fileName);
+			return;
+		}
+		
+		try {
+			writeLines(code, Files.newBufferedWriter(filePath,
+							Charset.forName("UTF-8")));
+		} catch (IOException e) {
+			Utilities.log("Error writing to file!");
+		}
+	}
+	
+	/**
+	 * Writes the specified list of Strings as separate lines and closes the
+	 * writer.
+	 * @param code
+	 *      ArrayList of Strings to write, null to write nothing.
+	 * @param writer
+	 *      Writer to write to.
+	 */
+	private static void writeLines(ArrayList<String> code, BufferedWriter writer) {
+		// try with resource -> gets closed automatically
+		try (BufferedWriter br = writer){
+			if (null == code) {
+				return;
+			}
+			// Loop through each list item, write to the file with a linebreak
+			code.forEach((str) -> {
+				if (null == str) return;
+				try {
+					br.write(str);
+					br.newLine();
+				} catch (IOException e) {
+					Utilities.log("Error: writing string" + str + "to " +
+									"file!");
+				}
+			});
+		} catch (FileNotFoundException e) {
+			Utilities.log("File not found!");
+		} catch (IOException e) {
+			Utilities.log("Error writing to file!");
+		}
+	}
+	
+	/**
+	 * Prepares writing to the specified file. Deletes an existing file if
+	 * overwriting is enabled, and creates missing parent directories.
+	 * @param fileName
+	 *      File that will be written.
+	 * @param overwriteExisting
+	 *      Whether an existing file should be overwritten.
+	 * @param deleteExisting
+	 *      Whether an existing file that is overwritten should be deleted now.
+	 * @return
+	 *      Absolute path of the file, null if the file should be skipped.
+	 */
+	static Path prepareOutputFile(
+					String fileName,
+					boolean overwriteExisting,
+					boolean deleteExisting
+	) {
 		// Find the referenced location, check if should be overridden
 		Path filePath = Paths.get(fileName);
 		File f = filePath.toFile();
@@ -172,16 +261,19 @@ public class Utilities {
 		
 		if (Files.exists(filePath)) {
 			if (overwriteExisting) {
-				try {
-					Files.delete(filePath);
-				} catch (IOException e) {
-					Utilities.log(
-									"Error: Unable to overwrite file : " + fileName + "!");
+				// otherwise replaced once the new content is complete
+				if (deleteExisting) {
+					try {
+						Files.delete(filePath);
+					} catch (IOException e) {
+						Utilities.log(
+										"Error: Unable to overwrite file : " + fileName + "!");
+					}
 				}
 			} else {
 				Utilities.log("Warning: file " + fileName + " already exists and" +
 								" overwriting is disabled. This file was skipped!");
-				return;
+				return null;
 			}
 		}
 		
@@ -196,30 +288,111 @@ public class Utilities {
 			}
 		}
 		
-		// try to open with BufferedReader resource -> gets closed automatically
-		try (BufferedWriter br = Files.newBufferedWriter(filePath,
-						Charset.forName("UTF-8"))){
-			if (null == code) {
+		return filePath;
+	}
+	
+	/**
+	 * Replaces the specified file with the specified content, unless the file
+	 * already has exactly that content. The content is written to a temporary
+	 * file first, see replaceIfChanged(Path, Path, String).
+	 * @param filePath
+	 *      File to replace.
+	 * @param content
+	 *      New content of the file.
+	 * @param fileName
+	 *      File name used for warnings.
+	 */
+	static void replaceIfChanged(Path filePath, byte[] content, String fileName) {
+		try {
+			if (Files.isRegularFile(filePath) && Files.size(filePath) == content.length
+							&& Arrays.equals(Files.readAllBytes(filePath), content)) {
+				// unchanged, keep existing file
 				return;
 			}
-			// Loop through each list item, write to the file with a linebreak
-			code.forEach((str) -> {
-				if (null == str) return;
-				try {
-					br.write(str);
-					br.newLine();
-				} catch (IOException e) {
-					Utilities.log("Error: writing string" + str + "to " +
-									"file!");
-				}
-			});
-		} catch (FileNotFoundException e) {
-			Utilities.log("File not found!");
+			Path temp = createTempFile(filePath);
+			Files.write(temp, content);
+			replaceIfChanged(temp, filePath, fileName);
 		} catch (IOException e) {
 			Utilities.log("Error writing to file!");
 		}
 	}
 	
+	/**
+	 * Replaces the specified file with a temporary file, unless both files
+	 * have exactly the same content. The temporary file is moved in place
+	 * atomically if the file system supports it, otherwise it is deleted.
+	 * @param temp
+	 *      Temporary file with the new content, in the same directory.
+	 * @param filePath
+	 *      File to replace.
+	 * @param fileName
+	 *      File name used for warnings.
+	 */
+	static void replaceIfChanged(Path temp, Path filePath, String fileName) {
+		try {
+			if (sameContent(temp, filePath)) {
+				Files.delete(temp);
+				return;
+			}
+			try {
+				Files.move(temp, filePath, StandardCopyOption.REPLACE_EXISTING,
+								StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, filePath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			Utilities.log("Error: Unable to overwrite file : " + fileName + "!");
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+				// nothing left to do
+			}
+		}
+	}
+	
+	/**
+	 * Creates a temporary file next to the specified file, so it can replace
+	 * the file by renaming.
+	 * @param filePath
+	 *      File the temporary file is for.
+	 * @return
+	 *      The created empty temporary file.
+	 * @throws IOException
+	 *      If the temporary file could not be created.
+	 */
+	static Path createTempFile(Path filePath) throws IOException {
+		return Files.createTempFile(filePath.getParent(),
+						"." + filePath.getFileName(), ".tmp");
+	}
+	
+	/**
+	 * Checks if two files have exactly the same content.
+	 * @param a
+	 *      First file.
+	 * @param b
+	 *      Second file, may not exist.
+	 * @return
+	 *      Whether both files exist and have the same content.
+	 * @throws IOException
+	 *      If either file could not be read.
+	 */
+	private static boolean sameContent(Path a, Path b) throws IOException {
+		if (!Files.isRegularFile(b) || Files.size(a) != Files.size(b)) {
+			return false;
+		}
+		try (InputStream inA = new BufferedInputStream(Files.newInputStream(a));
+		     InputStream inB = new BufferedInputStream(Files.newInputStream(b))) {
+			int c;
+			do {
+				c = inA.read();
+				if (c != inB.read()) {
+					return false;
+				}
+			} while (-1 != c);
+			return true;
+		}
+	}
+	
 	/**
 	 * Reads the specified file into program memory as a single String.
 	 * @param fileName
@@ -263,61 +436,23 @@ public class Utilities {
 	}
 	
 	/**
-	 * Returns an exact String copy of the leading whitespace used in the
-	 * specified line.
-	 * @param line
-	 *      Line of which leading whitespace should be found.
-	 * @return
-	 *      Leading whitespace of line.
-	 */
-	static String findIndentation(String line) {
-		// regex matching anything except whitespace
-		Pattern notWhiteSpace = Pattern.compile("\\S");
-		// first occurrence of regex
-		int indentationEnd = indexOf(notWhiteSpace, line);
-		// return part between string start and first non whitespace
-		return line.substring(0, indentationEnd);
-	}
-	
-	/**
-	 * Returns the index of the first occurrence of the pattern within the
-	 * specified String.
+	 * Returns the location of a file within the specified directory.
 	 *
-	 * @param pattern
-	 *      Pattern to look for.
-	 * @param str
-	 *      String to search.
-	 * @return
-	 *      Index of Pattern in String (first occurrence).
-	 */
-	static int indexOf(Pattern pattern, String str) {
-		Matcher matcher = pattern.matcher(str);
-		return matcher.find() ? matcher.start() : -1;
-	}
-	
-	/**
-	 * Returns the first match the pattern within the specified String. Starting
-	 * from the specified start index.
-	 *
-	 * @param str
-	 *      String to search.
-	 * @param pattern
-	 *      Pattern to look for.
-	 * @param startIndex
-	 *      Index in string to start looking.
+	 * @param dir
+	 *      Directory to resolve the file in, "" or null for the working
+	 *      directory.
+	 * @param fileName
+	 *      File name, relative to the directory.
 	 * @return
-	 *      Resulting string and it's position in the original string.
+	 *      The file name unchanged if it is absolute or no directory is
+	 *      specified, the file name within the directory otherwise.
 	 */
-	static RegexResult firstMatch(String str, Pattern pattern, int startIndex) {
-		Matcher matcher = pattern.matcher(str);
-		if (matcher.find(startIndex)) {
-			int start = matcher.start();
-			int end = matcher.end();
-			String strRes = str.substring(start,end);
-			return new RegexResult(start, end, strRes);
-		} else {
-			return null;
+	static String resolve(String dir, String fileName) {
+		if (null == dir || dir.isEmpty() || null == fileName
+						|| Paths.get(fileName).isAbsolute()) {
+			return fileName;
 		}
+		return dir.endsWith("/") ? dir + fileName : dir + "/" + fileName;
 	}
 	
 	/**
@@ -336,67 +471,228 @@ public class Utilities {
 					String fileName,
 					String templateFile
 	) {
-		// top to bottom for closing brackets
-		int braces, size, i;
-		braces = 0;
-		size = code.size();
-		for (i = 0; i < size; i++) {
-			String line = code.get(i);
-			int lineBraces = countBraces(line);
-			braces += lineBraces;
-			if (braces < 0) {
-				Utilities.log("Error: Extra closing bracket on line " + i + " of" +
-								" code produced by " + templateFile + " for " + fileName + "!");
-				break;
+		BraceChecker braces = new BraceChecker(null);
+		code.forEach(braces::add);
+		braces.check(fileName, templateFile);
+	}
+	
+	/**
+	 * Prints out the specified string to the internal log and the stdout.
+	 * The line is printed by a background thread, see LogWriter.
+	 *
+	 * If log lines are being captured for the current thread the line is held
+	 * back instead, see startLogCapture.
+	 * @param logline
+	 *        Line to print to the log / stdout
+	 */
+	static void log(String logline) {
+		String line = capture(logline);
+		if (null != line) {
+			synchronized (loglines) {
+				print(line);
 			}
 		}
-		// bottom to top for opening brackets
-		braces = 0;
-		size = code.size() - 1;
-		for (i = size; i > 0; i--) {
-			String line = code.get(i);
-			int lineBraces = countBraces(line);
-			braces += lineBraces;
-			if (braces > 0) {
-				Utilities.log("Error: Unclosed bracket on line " + (i+1) + " of" +
-								" code produced by " + templateFile + " for " + fileName + "!");
-				break;
+	}
+	
+	/**
+	 * Prints out the specified strings to the internal log and the stdout, in
+	 * order. Used to print lines that were captured by another thread.
+	 * @param lines
+	 *        Lines to print to the log / stdout
+	 */
+	static void log(List<String> lines) {
+		if (null == lines) {
+			return;
+		}
+		ArrayList<String> passed = new ArrayList<>();
+		for (String logline : lines) {
+			String line = capture(logline);
+			if (null != line) {
+				passed.add(line);
 			}
 		}
+		synchronized (loglines) {
+			passed.forEach(Utilities::print);
+		}
 	}
 	
 	/**
-	 * Compares the number of opening and closing braces on a specified line. 0
-	 * if matching, negative if too many closing braces, positive if too many
-	 * opening braces.
-	 * @param line
-	 *      Line to check braces on.
+	 * Adds a line to the log captures of the current thread, innermost first,
+	 * unless a capture leaves it out.
+	 * @param logline
+	 *        Line to capture.
 	 * @return
-	 *      Difference in number of opening and closing braces on the line.
+	 *        Line to print, null if the line is held back or left out.
 	 */
-	private static int countBraces(String line) {
-		int braces = 0;
-		char[] chars = line.toCharArray();
-		int size = chars.length;
-		for (int i = 0; i < size; i++) {
-			if (chars[i] == '{') {
-				braces++;
+	private static String capture(String logline) {
+		String line = logline;
+		for (LogCapture capture : captured.get()) {
+			if (null != capture.filter) {
+				line = capture.filter.apply(line);
+				if (null == line) {
+					return null;
+				}
 			}
-			if (chars[i] == '}') {
-				braces--;
+			capture.add(line);
+			if (!capture.echo) {
+				return null;
 			}
 		}
-		return braces;
+		return line;
 	}
 	
 	/**
-	 * Prints out the specified string to the internal log and the stdout.
+	 * Adds a line to the internal log and passes it to the log writer, unless
+	 * it is below the log level or repeated too often. Only called while
+	 * holding the lock on the internal log.
 	 * @param logline
-	 *        Line to print to the log / stdout
+	 *        Line to print.
 	 */
-	static void log(String logline) {
-		System.out.println(logline);
+	private static void print(String logline) {
+		logline = filter.apply(logline);
+		if (null == logline) {
+			return;
+		}
+		if (loglines.size() >= LOG_LIMIT) {
+			loglines.removeFirst();
+		}
 		loglines.add(logline);
+		writer.add(logline);
+	}
+	
+	/**
+	 * Sets which lines are left out of the internal log, from now on. Lines
+	 * captured by a generator run are filtered by the settings of that run
+	 * instead, see startLogCapture.
+	 * @param level
+	 *        Lowest level of lines to log: info, warning or error. Unknown
+	 *        levels log all lines, the generator run warns about them.
+	 * @param limit
+	 *        Number of times the same line is logged before further repeats are
+	 *        left out, -1 for no limit.
+	 */
+	static void configureLog(String level, int limit) {
+		synchronized (loglines) {
+			filter = new LogFilter(level, limit);
+		}
+	}
+	
+	/**
+	 * Starts capturing log lines for the current thread. Lines logged by this
+	 * thread are held back until stopLogCapture is called, so that tasks
+	 * running in parallel don't mix up their log output.
+	 *
+	 * Captures may be nested, each call should be matched by a call to
+	 * stopLogCapture on the same thread.
+	 */
+	static void startLogCapture() {
+		startLogCapture(false);
+	}
+	
+	/**
+	 * Starts capturing log lines for the current thread, see startLogCapture.
+	 * @param echo
+	 *        Whether captured lines should be printed as they are logged as
+	 *        well, instead of only being held back.
+	 */
+	static void startLogCapture(boolean echo) {
+		startLogCapture(echo, null);
+	}
+	
+	/**
+	 * Starts capturing log lines for the current thread, see startLogCapture.
+	 * Lines left out by the filter are neither held back nor printed, so a
+	 * run logging many lines only keeps the lines it logs.
+	 * @param echo
+	 *        Whether captured lines should be printed as they are logged as
+	 *        well, instead of only being held back.
+	 * @param filter
+	 *        Lines to leave out, null to capture all lines.
+	 */
+	static void startLogCapture(boolean echo, LogFilter filter) {
+		captured.get().push(new LogCapture(echo, filter));
+	}
+	
+	/**
+	 * Stops the most recently started capture of log lines for the current
+	 * thread.
+	 * @return
+	 *        Lines logged by this thread since startLogCapture was called, at
+	 *        most the last LOG_LIMIT lines.
+	 */
+	static ArrayList<String> stopLogCapture() {
+		LogCapture capture = captured.get().poll();
+		return null == capture ? new ArrayList<>() : new ArrayList<>(capture.lines);
+	}
+	
+	/**
+	 * Clears the internal log, used to start a new log when generating again
+	 * in watch mode.
+	 */
+	static void clearLog() {
+		synchronized (loglines) {
+			loglines.clear();
+			filter.clear();
+		}
+	}
+	
+	/**
+	 * Waits until all logged lines are printed.
+	 */
+	static void flushLog() {
+		writer.flush();
+	}
+	
+	/**
+	 * Starts writing the log to the specified file: the lines logged so far,
+	 * then each line as it is logged, until printLog is called for the file.
+	 * Nothing is done if the file exists and overwriting is disabled, printLog
+	 * then reports it.
+	 * @param filename
+	 *        File to write the log to.
+	 * @param overwriteExisting
+	 *        Whether the logfile should be overwritten if it already exists.
+	 */
+	static void streamLog(String filename, boolean overwriteExisting) {
+		synchronized (loglines) {
+			if (!overwriteExisting && new File(filename).exists()) {
+				return;
+			}
+			// stop writing a previous log file
+			writer.setFile(null);
+			streamedLog = null;
+			Path filePath = prepareOutputFile(filename, true, true);
+			BufferedWriter file = null;
+			try {
+				file = Files.newBufferedWriter(filePath, Charset.forName("UTF-8"));
+				for (String logline : loglines) {
+					file.write(logline);
+					file.newLine();
+				}
+				writer.setFile(file);
+				streamedLog = filename;
+			} catch (IOException e) {
+				log("Error writing to file!");
+				try {
+					if (null != file) {
+						file.close();
+					}
+				} catch (IOException ignored) {
+					// already reported
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns a copy of the internal log.
+	 * @return
+	 *        All lines logged so far, at most the last LOG_LIMIT lines.
+	 */
+	static ArrayList<String> getLog() {
+		synchronized (loglines) {
+			return new ArrayList<>(loglines);
+		}
 	}
 	
 	/**
@@ -407,6 +703,14 @@ public class Utilities {
 	 *        Whether the logfile should be overwritten if it already exists.
 	 */
 	static void printLog(String filename, boolean overwriteExisting) {
-		writeLinesToFile(loglines, filename, overwriteExisting);
+		synchronized (loglines) {
+			if (filename.equals(streamedLog)) {
+				// already written while logging
+				writer.setFile(null);
+				streamedLog = null;
+				return;
+			}
+			writeLinesToFile(new ArrayList<>(loglines), filename, overwriteExisting);
+		}
 	}
 }
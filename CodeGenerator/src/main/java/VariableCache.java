@@ -0,0 +1,60 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of parsed variables files, so a variables file used by
+ * many templates, or for many output files, is only read and parsed once.
+ *
+ * Files are cached by canonical path. Cached tables are checked against the
+ * content hash of their file, as hashed once per run, see RunCache. A file
+ * that was changed on disk is read and parsed again.
+ *
+ * Cached tables are shared, they must not be changed.
+ */
+public class VariableCache {
+	private static final Map<String, VariableTable> tables = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the variables of the specified variables file, if it is cached
+	 * and the file did not change since it was parsed.
+	 *
+	 * @param fileName
+	 *      Variables file to look up.
+	 * @param hash
+	 *      Current content hash of the file, null if unknown.
+	 * @return
+	 *      Cached table, null if not cached or out of date.
+	 */
+	static VariableTable get(String fileName, String hash) {
+		String key = FileHashes.canonical(fileName);
+		VariableTable table = tables.get(key);
+		if (null == table) {
+			return null;
+		}
+		if (null == hash || !hash.equals(table.hash)) {
+			tables.remove(key, table);
+			return null;
+		}
+		return table;
+	}
+
+	/**
+	 * Adds a table to the cache, under it's variables file name. Tables
+	 * without a content hash are not cached.
+	 *
+	 * @param table
+	 *      Table to store.
+	 */
+	static void put(VariableTable table) {
+		if (null != table.hash) {
+			tables.put(FileHashes.canonical(table.fileName), table);
+		}
+	}
+
+	/**
+	 * Removes all variables files from the cache.
+	 */
+	static void clear() {
+		tables.clear();
+	}
+}
@@ -0,0 +1,422 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills in template variables in a single scan of a line, instead of
+ * searching the line once for each variable that was defined.
+ *
+ * All variable names are stored in a trie. The line is scanned from left to
+ * right, at each position the longest variable name starting there is
+ * replaced with it's value. This makes the result independent of the order in
+ * which variables were defined, and the cost of a scan independent of the
+ * number of variables.
+ *
+ * Values are inserted as they are, they are not scanned for variables again.
+ *
+ * Matchers for the frames of a VariableScope can be chained, a chained
+ * matcher searches the tries of all frames. A name in an inner frame shadows
+ * the same name in outer frames.
+ *
+ * Variables with single character names, as used by templates that translate
+ * text character by character, are looked up in a table indexed by character
+ * instead of the tries. The tries are only searched at characters that start
+ * a longer name as well, so a scan costs a single table lookup per character
+ * for such templates, even if other variables are visible.
+ *
+ * Each matcher builds the table for it's own frame once. A chained matcher
+ * overlays the tables of it's frames on the table of the outermost frame,
+ * a frame without single character names shares the arrays of the table
+ * below it, so a chain per parameter expansion doesn't copy the table.
+ */
+public class VariableMatcher {
+	// first trie node of each frame, innermost first, represents the empty name
+	private final Node[] roots;
+	// matchers chained by this matcher, innermost first, null if not chained
+	private final VariableMatcher[] frames;
+	// bit set of (first character % 64) for all names, quick rejection
+	private long firstChars = 0;
+	// table of single character variables, built on first use
+	private volatile CharTable table;
+
+	/**
+	 * Table indexed by character, up to the highest first character of any
+	 * name: the single character variable for it after shadowing, null if
+	 * none, and whether longer names start with it, which requires a trie
+	 * search. Of equal names the one in the innermost frame is used.
+	 *
+	 * Longer names of frames overlaid without copying the arrays are only
+	 * marked in a bit set of (first character % 64), a false positive only
+	 * costs a trie search.
+	 */
+	private static class CharTable {
+		private static final CharTable EMPTY =
+						new CharTable(new Node[0], new boolean[0], 0, 0, false);
+		
+		private final Node[] singles;
+		private final boolean[] longer;
+		// longer names of overlaid frames that are not in the arrays
+		private final long longerChars;
+		// bit set of the first characters of all longer names
+		private final long allLongerChars;
+		// whether the table holds any single character variable
+		private final boolean hasSingles;
+
+		private CharTable(Node[] singles, boolean[] longer, long longerChars,
+						long allLongerChars, boolean hasSingles) {
+			this.singles = singles;
+			this.longer = longer;
+			this.longerChars = longerChars;
+			this.allLongerChars = allLongerChars;
+			this.hasSingles = hasSingles;
+		}
+
+		/**
+		 * Builds the table of a single frame from the first level of it's trie.
+		 *
+		 * @param root
+		 *      First trie node of the frame.
+		 * @return
+		 *      Table of the frame.
+		 */
+		private static CharTable of(Node root) {
+			int count = root.chars.length;
+			long allLongerChars = 0;
+			boolean hasSingles = false;
+			for (int i = 0; i < count; i++) {
+				Node node = root.next[i];
+				hasSingles |= null != node.name;
+				if (0 != node.chars.length) {
+					allLongerChars |= 1L << root.chars[i];
+				}
+			}
+			if (!hasSingles) {
+				// only longer names, found through the bit set and the trie
+				return 0 == count ? EMPTY : new CharTable(EMPTY.singles, EMPTY.longer,
+								allLongerChars, allLongerChars, false);
+			}
+			int size = root.chars[count - 1] + 1;
+			Node[] singles = new Node[size];
+			boolean[] longer = new boolean[size];
+			for (int i = 0; i < count; i++) {
+				char c = root.chars[i];
+				Node node = root.next[i];
+				singles[c] = null == node.name ? null : node;
+				longer[c] = 0 != node.chars.length;
+			}
+			return new CharTable(singles, longer, 0, allLongerChars, true);
+		}
+
+		/**
+		 * Overlays the table of an inner frame on this table. The arrays of
+		 * this table are shared if the inner frame has no single character
+		 * variables.
+		 *
+		 * @param inner
+		 *      Table of the inner frame, it's variables shadow those of this
+		 *      table.
+		 * @return
+		 *      Table for the variables of both.
+		 */
+		private CharTable overlay(CharTable inner) {
+			if (EMPTY == inner) {
+				return this;
+			}
+			if (!inner.hasSingles) {
+				return new CharTable(singles, longer,
+								longerChars | inner.allLongerChars,
+								allLongerChars | inner.allLongerChars, hasSingles);
+			}
+			int size = Math.max(singles.length, inner.singles.length);
+			Node[] newSingles = Arrays.copyOf(singles, size);
+			boolean[] newLonger = Arrays.copyOf(longer, size);
+			for (int c = 0; c < inner.singles.length; c++) {
+				if (null != inner.singles[c]) {
+					newSingles[c] = inner.singles[c];
+				}
+				newLonger[c] |= inner.longer[c];
+			}
+			return new CharTable(newSingles, newLonger,
+							longerChars | inner.longerChars,
+							allLongerChars | inner.allLongerChars, true);
+		}
+	}
+
+	/**
+	 * Node in the trie of variable names. Children are kept in sorted arrays
+	 * of characters and corresponding nodes.
+	 */
+	private static class Node {
+		private char[] chars = new char[0];
+		private Node[] next = new Node[0];
+		// variable name and value, if a name ends at this node
+		private String name;
+		private String value;
+
+		/**
+		 * Returns the child node for the specified character.
+		 * @param c
+		 *      Character to look up.
+		 * @return
+		 *      Child node, null if there is none.
+		 */
+		private Node get(char c) {
+			int i = Arrays.binarySearch(chars, c);
+			return i < 0 ? null : next[i];
+		}
+
+		/**
+		 * Returns the child node for the specified character, adds a new child
+		 * node if there is none.
+		 * @param c
+		 *      Character to look up.
+		 * @return
+		 *      Child node.
+		 */
+		private Node add(char c) {
+			int i = Arrays.binarySearch(chars, c);
+			if (i >= 0) {
+				return next[i];
+			}
+			i = -(i + 1);
+			int size = chars.length;
+			char[] newChars = new char[size + 1];
+			Node[] newNext = new Node[size + 1];
+			System.arraycopy(chars, 0, newChars, 0, i);
+			System.arraycopy(next, 0, newNext, 0, i);
+			System.arraycopy(chars, i, newChars, i + 1, size - i);
+			System.arraycopy(next, i, newNext, i + 1, size - i);
+			newChars[i] = c;
+			newNext[i] = new Node();
+			chars = newChars;
+			next = newNext;
+			return newNext[i];
+		}
+	}
+
+	/**
+	 * Builds a matcher for the specified set of variables. Empty variable names
+	 * are ignored.
+	 *
+	 * @param variables
+	 *      Variables as (name, value) pairs.
+	 */
+	VariableMatcher(Map<String, String> variables) {
+		Node root = new Node();
+		roots = new Node[] {root};
+		frames = null;
+		variables.forEach((name, value) -> {
+			if (name.isEmpty()) {
+				return;
+			}
+			Node node = root;
+			for (int i = 0; i < name.length(); i++) {
+				node = node.add(name.charAt(i));
+			}
+			node.name = name;
+			node.value = value;
+			firstChars |= 1L << name.charAt(0);
+		});
+	}
+	
+	/**
+	 * Constructs a matcher from the tries of several frames.
+	 *
+	 * @param roots
+	 *      First trie node of each frame, innermost first.
+	 * @param firstChars
+	 *      Combined quick rejection bit set of all frames.
+	 * @param frames
+	 *      Matchers that are chained, innermost first.
+	 */
+	private VariableMatcher(Node[] roots, long firstChars,
+					VariableMatcher[] frames) {
+		this.roots = roots;
+		this.firstChars = firstChars;
+		this.frames = frames;
+	}
+	
+	/**
+	 * Chains the matchers of several scope frames into one matcher. The frame
+	 * matchers are not changed and can still be used on their own.
+	 *
+	 * @param frames
+	 *      Matchers of the frames, innermost first.
+	 * @return
+	 *      Matcher for the variables of all frames.
+	 */
+	static VariableMatcher chain(List<VariableMatcher> frames) {
+		if (1 == frames.size()) {
+			return frames.get(0);
+		}
+		ArrayList<Node> roots = new ArrayList<>();
+		long firstChars = 0;
+		for (VariableMatcher frame : frames) {
+			roots.addAll(Arrays.asList(frame.roots));
+			firstChars |= frame.firstChars;
+		}
+		return new VariableMatcher(roots.toArray(new Node[0]), firstChars,
+						frames.toArray(new VariableMatcher[0]));
+	}
+
+	/**
+	 * Returns the single character table of this matcher, building it on first
+	 * use. A chained matcher overlays the tables of it's frames, which are
+	 * built once per frame matcher.
+	 *
+	 * @return
+	 *      Table of the single character variables.
+	 */
+	private CharTable table() {
+		CharTable table = this.table;
+		if (null == table) {
+			// built once, another thread building it at the same time is harmless
+			if (null == frames) {
+				table = CharTable.of(roots[0]);
+			} else {
+				table = frames[frames.length - 1].table();
+				for (int f = frames.length - 2; f >= 0; f--) {
+					table = table.overlay(frames[f].table());
+				}
+			}
+			this.table = table;
+		}
+		return table;
+	}
+
+	/**
+	 * Fills in all variables in the specified String.
+	 *
+	 * @param str
+	 *      String to fill in.
+	 * @return
+	 *      String with variables filled in. The same String object if no
+	 *      variable was found.
+	 */
+	String substitute(String str) {
+		StringBuilder sb = substitute(str, 0, str.length(), null);
+		return null == sb ? str : sb.toString();
+	}
+
+	/**
+	 * Fills in all variables in the specified String, except for the specified
+	 * section which is left unchanged. Used to keep commands unchanged.
+	 *
+	 * @param str
+	 *      String to fill in.
+	 * @param skipStart
+	 *      Start index of the unchanged section, inclusive.
+	 * @param skipEnd
+	 *      End index of the unchanged section, exclusive.
+	 * @return
+	 *      String with variables filled in. The same String object if no
+	 *      variable was found.
+	 */
+	String substitute(String str, int skipStart, int skipEnd) {
+		StringBuilder sb = substitute(str, 0, skipStart, null);
+		if (null != sb) {
+			sb.append(str, skipStart, skipEnd);
+		}
+		sb = substitute(str, skipEnd, str.length(), sb);
+		return null == sb ? str : sb.toString();
+	}
+
+	/**
+	 * Scans a section of a String and fills in variables. The output builder
+	 * is only created once the first variable is found.
+	 *
+	 * @param str
+	 *      String to scan.
+	 * @param start
+	 *      Start index of the section, inclusive.
+	 * @param end
+	 *      End index of the section, exclusive.
+	 * @param sb
+	 *      Output to append to, null if nothing was appended yet.
+	 * @return
+	 *      Output containing everything up to the end of the section, null if
+	 *      no output was created and no variable was found.
+	 */
+	private StringBuilder substitute(
+					String str,
+					int start,
+					int end,
+					StringBuilder sb
+	) {
+		CharTable table = table();
+		Node[] singles = table.singles;
+		boolean[] longer = table.longer;
+		long longerChars = table.longerChars;
+		int copied = start;
+		int i = start;
+		while (i < end) {
+			char c = str.charAt(i);
+			Node match = null;
+			if (c < singles.length && !longer[c] &&
+							0 == (longerChars & (1L << c))) {
+				// only a single character name can start here
+				match = singles[c];
+			} else if (0 != (firstChars & (1L << c))) {
+				match = longestMatch(str, i, end);
+			}
+			if (null == match) {
+				i++;
+				continue;
+			}
+			if (null == sb) {
+				sb = new StringBuilder(str.length() + 16);
+				sb.append(str, 0, copied);
+			}
+			sb.append(str, copied, i);
+			if (null != match.value) {
+				sb.append(match.value);
+			}
+			i += match.name.length();
+			copied = i;
+		}
+		if (null != sb) {
+			sb.append(str, copied, end);
+		}
+		return sb;
+	}
+
+	/**
+	 * Finds the longest variable name starting at the specified index. Of
+	 * equally long names the one in the innermost frame is used, names that
+	 * are shadowed by an inner frame are not matched.
+	 *
+	 * @param str
+	 *      String to search.
+	 * @param start
+	 *      Index the variable name should start at.
+	 * @param end
+	 *      Index the variable name should end before.
+	 * @return
+	 *      Trie node of the longest matching variable, null if none.
+	 */
+	private Node longestMatch(
+					String str,
+					int start,
+					int end
+	) {
+		Node match = null;
+		int length = 0;
+		for (int f = 0; f < roots.length; f++) {
+			Node node = roots[f];
+			for (int i = start; i < end; i++) {
+				node = node.get(str.charAt(i));
+				if (null == node) {
+					break;
+				}
+				// frames are searched innermost first, so a shadowed name is never
+				// longer than the match found in the inner frame
+				if (null != node.name && i - start + 1 > length) {
+					match = node;
+					length = i - start + 1;
+				}
+			}
+		}
+		return match;
+	}
+}
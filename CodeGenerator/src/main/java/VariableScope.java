@@ -0,0 +1,294 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the template variables that are visible while processing a template.
+ *
+ * Scopes are chained frames: each template and each parameter expansion gets
+ * it's own child frame, in which new variables are stored. Variables of parent
+ * frames are visible in the child frame but are never copied into it, a
+ * variable in a child frame shadows a parent variable with the same name.
+ * This way a child scope only costs the variables it defines itself.
+ *
+ * Within a frame, variables are kept in layers. A variables file attached to
+ * the frame is a shared layer, see VariableTable, variables defined after it
+ * go in a new layer on top, so attaching a file doesn't copy it. A later layer
+ * shadows earlier layers, the same way a child frame shadows it's parents.
+ *
+ * Each layer keeps a VariableMatcher for it's own variables, which is only
+ * rebuilt when variables are added to that layer, and an index of it's
+ * variable names by value, so values are found without walking every variable. Parent frames are only read
+ * while child frames exist, so child frames may be used on separate threads.
+ */
+public class VariableScope {
+	/**
+	 * Variables of a frame that were defined together.
+	 */
+	private static class Layer {
+		private final Map<String, String> variables;
+		// names of the variables by value
+		private final Map<String, Set<String>> names;
+		// table the variables are shared with, null if they belong to the frame
+		private final VariableTable table;
+		// matcher for the variables of this layer, null if not yet built
+		private VariableMatcher matcher;
+
+		private Layer(Map<String, String> variables, VariableTable table) {
+			this.variables = variables;
+			this.table = table;
+			if (null != table) {
+				names = table.namesByValue();
+				matcher = table.matcher();
+			} else {
+				names = new HashMap<>();
+			}
+		}
+	}
+
+	// enclosing frame, null for the outermost frame
+	private final VariableScope parent;
+	// variables defined in this frame, by layer, latest layer last
+	private final ArrayList<Layer> layers = new ArrayList<>(1);
+	// matcher for all visible variables and the parent matcher it was built
+	// with, null if not yet built or this frame changed since
+	private VariableMatcher chained;
+	private VariableMatcher chainedParent;
+
+	/**
+	 * Constructs an empty outermost scope.
+	 */
+	VariableScope() {
+		this(null);
+	}
+
+	/**
+	 * Constructs an empty frame within the specified parent scope.
+	 *
+	 * @param parent
+	 *      Enclosing scope, null for an outermost scope.
+	 */
+	private VariableScope(VariableScope parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Creates a new empty frame within this scope. Variables added to the child
+	 * frame are not visible in this scope.
+	 *
+	 * @return
+	 *      The child frame.
+	 */
+	VariableScope child() {
+		return new VariableScope(this);
+	}
+
+	/**
+	 * Defines a variable in this frame, replacing any earlier definition in
+	 * this frame and shadowing definitions in parent frames.
+	 *
+	 * @param name
+	 *      Variable name.
+	 * @param value
+	 *      Variable value.
+	 */
+	synchronized void put(String name, String value) {
+		Layer top = layers.isEmpty() ? null : layers.get(layers.size() - 1);
+		if (null == top || null != top.table) {
+			top = new Layer(new HashMap<>(), null);
+			layers.add(top);
+		}
+		String old = top.variables.put(name, value);
+		if (null != old) {
+			Set<String> names = top.names.get(old);
+			names.remove(name);
+			if (names.isEmpty()) {
+				top.names.remove(old);
+			}
+		}
+		top.names.computeIfAbsent(value, v -> new HashSet<>()).add(name);
+		top.matcher = null;
+		chained = null;
+	}
+
+	/**
+	 * Defines all variables of a variables file in this frame, as if they were
+	 * put one by one. The table is shared, not copied.
+	 *
+	 * @param table
+	 *      Variables to define.
+	 */
+	synchronized void attach(VariableTable table) {
+		if (!table.variables().isEmpty()) {
+			layers.add(new Layer(table.variables(), table));
+			chained = null;
+		}
+	}
+
+	/**
+	 * Finds the value of the specified variable, searching from this frame
+	 * outwards.
+	 *
+	 * @param name
+	 *      Variable name.
+	 * @return
+	 *      Value of the innermost definition, null if not defined.
+	 */
+	String get(String name) {
+		for (VariableScope s = this; null != s; s = s.parent) {
+			synchronized (s) {
+				for (int i = s.layers.size() - 1; i >= 0; i--) {
+					Map<String, String> variables = s.layers.get(i).variables;
+					if (variables.containsKey(name)) {
+						return variables.get(name);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the specified variable is defined in this frame or a parent
+	 * frame.
+	 *
+	 * @param name
+	 *      Variable name.
+	 * @return
+	 *      Whether the variable is defined.
+	 */
+	boolean contains(String name) {
+		for (VariableScope s = this; null != s; s = s.parent) {
+			synchronized (s) {
+				for (int i = s.layers.size() - 1; i >= 0; i--) {
+					if (s.layers.get(i).variables.containsKey(name)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if any visible variable has the specified value. Variables that
+	 * are shadowed by a child frame or a later layer are not visible. Only the
+	 * names indexed under the value are checked for shadowing.
+	 *
+	 * @param value
+	 *      Value to look for.
+	 * @return
+	 *      Whether a visible variable has the specified value.
+	 */
+	boolean containsValue(String value) {
+		return containsValue(value, Collections.emptyMap());
+	}
+
+	/**
+	 * Checks if any visible variable has the specified value, as if the
+	 * specified variables were defined in a later layer of this frame. Visible
+	 * variables with the name of a specified variable are shadowed by it, the
+	 * values of the specified variables themselves are not checked.
+	 *
+	 * @param value
+	 *      Value to look for.
+	 * @param shadowing
+	 *      Variables shadowing the visible variables, by name.
+	 * @return
+	 *      Whether a visible variable that is not shadowed has the value.
+	 */
+	boolean containsValue(String value, Map<String, String> shadowing) {
+		for (VariableScope s = this; null != s; s = s.parent) {
+			synchronized (s) {
+				for (int i = s.layers.size() - 1; i >= 0; i--) {
+					Set<String> names = s.layers.get(i).names.get(value);
+					if (null == names) {
+						continue;
+					}
+					for (String name : names) {
+						if (!shadowing.containsKey(name) && !shadowed(name, s, i)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a variable of a layer is shadowed by a later layer of it's
+	 * frame, or by a frame between this frame and it's frame. The caller holds
+	 * the lock of the frame of the variable.
+	 *
+	 * @param name
+	 *      Variable name.
+	 * @param frame
+	 *      Frame of the variable, this frame or a parent frame.
+	 * @param layer
+	 *      Index of the layer of the variable within it's frame.
+	 * @return
+	 *      Whether the variable is shadowed.
+	 */
+	private boolean shadowed(String name, VariableScope frame, int layer) {
+		for (VariableScope s = this; frame != s; s = s.parent) {
+			synchronized (s) {
+				for (Layer l : s.layers) {
+					if (l.variables.containsKey(name)) {
+						return true;
+					}
+				}
+			}
+		}
+		for (int i = layer + 1; i < frame.layers.size(); i++) {
+			if (frame.layers.get(i).variables.containsKey(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a matcher that fills in all variables visible in this scope.
+	 * Only the matchers of layers that changed since their last use are
+	 * rebuilt. The matcher is kept until this frame or a parent frame changes,
+	 * a frame without variables of it's own uses the matcher of it's parent.
+	 *
+	 * @return
+	 *      Matcher for all visible variables.
+	 */
+	VariableMatcher matcher() {
+		VariableMatcher outer = null == parent ? null : parent.matcher();
+		synchronized (this) {
+			if (null == chained || chainedParent != outer) {
+				ArrayList<VariableMatcher> frames = new ArrayList<>();
+				addMatchers(frames);
+				if (null != outer) {
+					frames.add(outer);
+				}
+				chained = VariableMatcher.chain(frames);
+				chainedParent = outer;
+			}
+			return chained;
+		}
+	}
+
+	/**
+	 * Adds the matchers for the layers of this frame only, latest layer first.
+	 *
+	 * @param matchers
+	 *      Matchers to add to.
+	 */
+	private synchronized void addMatchers(ArrayList<VariableMatcher> matchers) {
+		for (int i = layers.size() - 1; i >= 0; i--) {
+			Layer layer = layers.get(i);
+			if (null == layer.matcher) {
+				layer.matcher = new VariableMatcher(layer.variables);
+			}
+			matchers.add(layer.matcher);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The variables defined in a single variables file, as used by the $vars$
+ * command. Each line of the file defines a variable as "\{name\} value".
+ *
+ * The file is parsed once, the table holds the definitions in file order, the
+ * resulting variables and a VariableMatcher for them. A table can be attached
+ * to any number of VariableScopes at once, see VariableScope.attach, so a
+ * variables file used by many templates is not copied into each of them.
+ *
+ * Tables are shared, they are never changed after construction.
+ */
+public class VariableTable {
+	final String fileName;
+	// content hash of the file when it was read, see FileHashes
+	final String hash;
+	// lines of the file, and the variable defined on each line, null if none
+	private final String[] lines;
+	private final String[] names;
+	private final String[] values;
+	// indexes of the lines without a variable
+	private final int[] unnamed;
+	// resulting variables, later definitions replace earlier ones
+	private final Map<String, String> variables;
+	// names of the resulting variables, by value
+	private final Map<String, Set<String>> namesByValue;
+	private final VariableMatcher matcher;
+	// whether a definition may override a variable defined earlier in the file
+	// with the same value as it's name, see overridesValue
+	private final boolean overridesOwnValue;
+
+	/**
+	 * Parses the lines of a variables file.
+	 *
+	 * @param fileName
+	 *      Variables file the lines were read from.
+	 * @param hash
+	 *      Content hash of the file, null if unknown.
+	 * @param code
+	 *      Lines of the file.
+	 * @param lexer
+	 *      Lexer to find the variable on each line.
+	 */
+	VariableTable(String fileName, String hash, List<String> code, TemplateLexer lexer) {
+		this.fileName = fileName;
+		this.hash = hash;
+		int size = code.size();
+		lines = code.toArray(new String[size]);
+		names = new String[size];
+		values = new String[size];
+		HashMap<String, String> vars = new HashMap<>();
+		HashSet<String> allValues = new HashSet<>();
+		ArrayList<Integer> unnamedLines = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			List<TemplateToken> variable = lexer.variable(lines[i]);
+			if (variable.isEmpty()) {
+				unnamedLines.add(i);
+				continue;
+			}
+			names[i] = variable.get(0).text;
+			// remainder of string (one separating character) = variable value
+			values[i] = variable.get(1).text;
+			vars.put(names[i], values[i]);
+			allValues.add(values[i]);
+		}
+		unnamed = unnamedLines.stream().mapToInt(Integer::intValue).toArray();
+		variables = Collections.unmodifiableMap(vars);
+		HashMap<String, Set<String>> byValue = new HashMap<>();
+		vars.forEach((name, value) ->
+						byValue.computeIfAbsent(value, v -> new HashSet<>()).add(name));
+		namesByValue = Collections.unmodifiableMap(byValue);
+		matcher = new VariableMatcher(vars);
+		boolean overrides = false;
+		for (String name : vars.keySet()) {
+			overrides |= allValues.contains(name);
+		}
+		overridesOwnValue = overrides;
+	}
+
+	/**
+	 * @return
+	 *      Number of lines in the file.
+	 */
+	int size() {
+		return lines.length;
+	}
+
+	/**
+	 * @return
+	 *      The specified line of the file.
+	 */
+	String line(int index) {
+		return lines[index];
+	}
+
+	/**
+	 * @return
+	 *      Name of the variable defined on the specified line, null if the line
+	 *      does not define a variable.
+	 */
+	String name(int index) {
+		return names[index];
+	}
+
+	/**
+	 * @return
+	 *      Value of the variable defined on the specified line, null if the line
+	 *      does not define a variable.
+	 */
+	String value(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @return
+	 *      The variables of the file, by name.
+	 */
+	Map<String, String> variables() {
+		return variables;
+	}
+
+	/**
+	 * @return
+	 *      Names of the variables of the file, by value.
+	 */
+	Map<String, Set<String>> namesByValue() {
+		return namesByValue;
+	}
+
+	/**
+	 * @return
+	 *      Matcher for the variables of the file.
+	 */
+	VariableMatcher matcher() {
+		return matcher;
+	}
+
+	/**
+	 * Checks if any definition in the file could have a name equal to the value
+	 * of a variable visible when it is defined, either a visible value before
+	 * the table is attached or one defined earlier in the file. If not,
+	 * attaching the table overrides no values and there is nothing to warn
+	 * about. Only the names of the file are looked up as values.
+	 *
+	 * @param visibleValue
+	 *      Whether a value is the value of a variable visible before the table
+	 *      is attached.
+	 * @return
+	 *      Whether a definition may override a visible value.
+	 */
+	boolean overridesValue(Predicate<String> visibleValue) {
+		if (overridesOwnValue) {
+			return true;
+		}
+		for (String name : variables.keySet()) {
+			if (visibleValue.test(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return
+	 *      Indexes of the lines that do not define a variable, in file order.
+	 */
+	int[] unnamedLines() {
+		return unnamed.clone();
+	}
+}
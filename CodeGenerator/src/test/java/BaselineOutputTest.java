@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+/**
+ * Generates the shipped templates and compares the output with the output of
+ * the original generator, kept in src/test/resources/baseline.
+ *
+ * In the main file the original generator filled in variables one variable
+ * at a time, in HashMap order, so values were partly filled in again. Those
+ * lines hold the values as inserted in a single pass.
+ */
+public class BaselineOutputTest extends TestCase {
+	private static final Path BASELINE = Paths.get("src/test/resources/baseline");
+	private Path dir;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = Files.createTempDirectory("baseline");
+		copy(Paths.get("templates"), dir.resolve("templates"));
+		copy(Paths.get("params.csv"), dir.resolve("params.csv"));
+		copy(Paths.get("adb_params.csv"), dir.resolve("adb_params.csv"));
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		Files.walk(dir).sorted(Collections.reverseOrder())
+						.forEach(path -> path.toFile().delete());
+	}
+
+	public void testShippedTemplates() throws IOException {
+		GeneratorSettings settings = GeneratorSettings.load(
+						BASELINE.resolve("settings.json").toString());
+		settings.base_directory = dir.toString();
+		new Generator(settings).generate();
+
+		Path expected = BASELINE.resolve("ADB");
+		Path actual = dir.resolve("ADB");
+		assertEquals(files(expected), files(actual));
+		for (String file : files(expected)) {
+			assertEquals(file, read(expected.resolve(file)), read(actual.resolve(file)));
+		}
+	}
+
+	private static List<String> files(Path root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile)
+							.map(path -> root.relativize(path).toString())
+							.sorted()
+							.collect(Collectors.toList());
+		}
+	}
+
+	private static List<String> read(Path file) throws IOException {
+		return new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	private static void copy(Path source, Path target) throws IOException {
+		try (Stream<Path> paths = Files.walk(source)) {
+			for (Path path : paths.collect(Collectors.toList())) {
+				Path copy = target.resolve(source.relativize(path).toString());
+				if (Files.isDirectory(path)) {
+					Files.createDirectories(copy);
+				} else {
+					Files.copy(path, copy);
+				}
+			}
+		}
+	}
+}
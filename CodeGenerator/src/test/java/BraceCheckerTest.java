@@ -0,0 +1,73 @@
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class BraceCheckerTest extends TestCase {
+	public void testMatchingBraces() {
+		assertEquals(new ArrayList<String>(),
+						check("int main() {", "\tif (x) {", "\t}", "}"));
+	}
+
+	public void testExtraClosingBrace() {
+		ArrayList<String> log = check("{", "}", "}");
+		assertEquals(1, log.size());
+		assertTrue(log.get(0).startsWith("Error: Extra closing bracket on line 2 "));
+	}
+
+	public void testUnclosedBrace() {
+		ArrayList<String> log = check("x", "{", "{", "}");
+		assertEquals(1, log.size());
+		assertTrue(log.get(0).startsWith("Error: Unclosed bracket on line 2 "));
+	}
+
+	// Compares with checking the complete code from both ends
+	public void testSameAsFullCheck() {
+		Random random = new Random(42);
+		for (int n = 0; n < 2000; n++) {
+			String[] code = new String[random.nextInt(12)];
+			for (int i = 0; i < code.length; i++) {
+				code[i] = new String[] {"{", "}", "", "{}", "}}", "{{"}[random.nextInt(6)];
+			}
+			assertEquals(fullCheck(code), check(code));
+		}
+	}
+
+	private static ArrayList<String> check(String... code) {
+		Utilities.startLogCapture();
+		BraceChecker braces = new BraceChecker(null);
+		for (String line : code) {
+			braces.add(line);
+		}
+		braces.check("file", "template");
+		return Utilities.stopLogCapture();
+	}
+
+	private static ArrayList<String> fullCheck(String... code) {
+		ArrayList<String> log = new ArrayList<>();
+		int braces = 0;
+		for (int i = 0; i < code.length; i++) {
+			braces += count(code[i]);
+			if (braces < 0) {
+				log.add("Error: Extra closing bracket on line " + i +
+								" of code produced by template for file!");
+				break;
+			}
+		}
+		braces = 0;
+		for (int i = code.length - 1; i > 0; i--) {
+			braces += count(code[i]);
+			if (braces > 0) {
+				log.add("Error: Unclosed bracket on line " + (i + 1) +
+								" of code produced by template for file!");
+				break;
+			}
+		}
+		return log;
+	}
+
+	private static int count(String line) {
+		return line.length() - line.replace("{", "").length()
+						- (line.length() - line.replace("}", "").length());
+	}
+}
@@ -0,0 +1,84 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import junit.framework.TestCase;
+
+public class GeneratorDaemonTest extends TestCase {
+	private int port;
+	private Path tokenFile;
+	private ServerSocket daemon;
+
+	@Override
+	protected void setUp() throws IOException {
+		try (ServerSocket free = new ServerSocket(0, 1,
+						InetAddress.getLoopbackAddress())) {
+			port = free.getLocalPort();
+		}
+		tokenFile = GeneratorDaemon.tokenFile(port);
+		daemon = GeneratorDaemon.start(port);
+		assertNotNull(daemon);
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		if (null != daemon) {
+			daemon.close();
+		}
+		Files.deleteIfExists(tokenFile);
+	}
+
+	public void testTokenRequired() throws IOException {
+		String token = new String(Files.readAllBytes(tokenFile),
+						StandardCharsets.UTF_8);
+		assertEquals(64, token.length());
+		if (Files.getFileStore(tokenFile).supportsFileAttributeView("posix")) {
+			assertEquals("rw-------", PosixFilePermissions.toString(
+							Files.getPosixFilePermissions(tokenFile)));
+		}
+		assertTrue(send("generate wrong /").startsWith("ERROR invalid token"));
+		assertTrue(send("generate " + token + " /elsewhere")
+						.startsWith("ERROR the daemon is running in"));
+	}
+
+	public void testSilentClientDoesNotBlock() throws IOException {
+		// connects without sending a request, while another client is served
+		Socket silent = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			assertTrue(send("generate wrong /").startsWith("ERROR invalid token"));
+		} finally {
+			silent.close();
+		}
+	}
+
+	public void testStop() throws IOException {
+		daemon.close();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			fail("daemon still listening on port " + socket.getLocalPort());
+		} catch (ConnectException e) {
+			// stopped
+		}
+	}
+
+	private String send(String request) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setSoTimeout(5000);
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(
+							socket.getOutputStream(), StandardCharsets.UTF_8));
+			out.println(request);
+			out.flush();
+			return new BufferedReader(new InputStreamReader(
+							socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+		}
+	}
+}
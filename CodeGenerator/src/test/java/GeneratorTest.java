@@ -0,0 +1,466 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class GeneratorTest extends TestCase {
+	private Path dir;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = Files.createTempDirectory("generator");
+		Files.createDirectories(dir.resolve("templates"));
+		write("params.csv", "0,alpha,uint8_t,1", "1,beta,uint16_t,2");
+		write("other.csv", "7,gamma,uint32_t,3");
+		write("templates/list.cgen_template",
+						"$var$ \\{type\\} int",
+						"type s#name;",
+						"\t$p-line$ [all] p#name = p#defaultValue;");
+		write("templates/unknown.cgen_template", "$p-line$ [nope] p#name");
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		Files.walk(dir).sorted(Collections.reverseOrder())
+						.forEach(path -> path.toFile().delete());
+	}
+
+	public void testGenerateInBaseDirectory() throws IOException {
+		GeneratorSettings settings = settings();
+		settings.addFile("list.c", "list.cgen_template");
+		settings.addFile("other.c", "list.cgen_template", "other.csv");
+		GenerationResult result = new Generator(settings).generate();
+
+		assertTrue(result.errors().toString(), result.success());
+		assertEquals(Arrays.asList("list.c", "other.c"),
+						sortedCopy(result.generatedFiles()));
+		assertEquals(Arrays.asList("int TEST;", "\talpha = 1;", "\tbeta = 2;"),
+						read("TEST/list.c"));
+		assertEquals(Arrays.asList("int TEST;", "\tgamma = 3;"),
+						read("TEST/other.c"));
+	}
+
+	public void testNestedBlocks() throws IOException {
+		write("templates/blocks.cgen_template",
+						"$p-block$ [alpha|beta] \\{",
+						"\t// p#name",
+						"\t$p-block$ [all] \\{ int p#name; \\}",
+						"\\}",
+						"$p-block$ [beta] \\{",
+						"\t$var$ \\{TYPE\\} long",
+						"\tTYPE p#name;",
+						"\\} // end");
+		GeneratorSettings settings = settings();
+		settings.addFile("blocks.c", "blocks.cgen_template");
+		GenerationResult result = new Generator(settings).generate();
+
+		assertTrue(result.errors().toString(), result.success());
+		assertEquals(Arrays.asList("\t// alpha", "\tint alpha;", "\tint beta;",
+						"\t// beta", "\tint alpha;", "\tint beta;", "\tlong beta;", "// end"),
+						read("TEST/blocks.c"));
+	}
+
+	public void testTextBeforeCommand() throws IOException {
+		write("templates/leading.cgen_template",
+						"price $1 or $2",
+						"x $p-block$ [alpha] \\{",
+						"\tint p#name;",
+						"\\}",
+						"int last;");
+		GeneratorSettings settings = settings();
+		settings.addFile("leading.c", "leading.cgen_template");
+		GenerationResult result = new Generator(settings).generate();
+
+		assertEquals(1, result.errors().size());
+		assertTrue(result.errors().get(0),
+						result.errors().get(0).contains("Unrecognized command : 1 or  " +
+										"on line : 0, column : 8"));
+		assertEquals(Arrays.asList("\tint alpha;", "int last;"),
+						read("TEST/leading.c"));
+	}
+
+	public void testTouchedTemplateStaysCached() throws IOException {
+		GeneratorSettings settings = settings();
+		settings.metrics = true;
+		settings.addFile("list.c", "list.cgen_template");
+		new Generator(settings).generate();
+		// newer modification time, same content
+		Path template = dir.resolve("templates/list.cgen_template");
+		Files.setLastModifiedTime(template, FileTime.fromMillis(
+						Files.getLastModifiedTime(template).toMillis() + 10000));
+		new Generator(settings).generate();
+
+		JSONObject templates = Utilities.readJSONFromFile(
+						dir.resolve("CodeGenerator.metrics.json").toString())
+						.getJSONObject("files").getJSONObject("list.c")
+						.getJSONObject("templates");
+		JSONObject metrics = templates.getJSONObject(templates.keys().next());
+		assertEquals(1, metrics.getLong("cache_hits"));
+		assertEquals(0, metrics.getLong("cache_misses"));
+	}
+
+	public void testChangedTemplateIsReadAgain() throws IOException {
+		GeneratorSettings settings = settings();
+		settings.addFile("list.c", "list.cgen_template");
+		Generator generator = new Generator(settings);
+		generator.generate();
+		// same size and modification time, only the content differs
+		Path template = dir.resolve("templates/list.cgen_template");
+		FileTime modified = Files.getLastModifiedTime(template);
+		write("templates/list.cgen_template",
+						"$var$ \\{type\\} unt",
+						"type s#name;",
+						"\t$p-line$ [all] p#name = p#defaultValue;");
+		Files.setLastModifiedTime(template, modified);
+		generator.generate();
+
+		assertEquals(Arrays.asList("unt TEST;", "\talpha = 1;", "\tbeta = 2;"),
+						read("TEST/list.c"));
+	}
+
+	public void testRunsAreIndependent() {
+		GeneratorSettings settings = settings();
+		settings.addFile("unknown.c", "unknown.cgen_template");
+		Generator generator = new Generator(settings);
+		GenerationResult first = generator.generate();
+		GenerationResult second = generator.generate();
+
+		assertFalse(first.success());
+		assertEquals(1, first.errors().size());
+		assertEquals(first.errors(), second.errors());
+	}
+
+	public void testVariablesFileWarnsAboutOverriddenValues() throws IOException {
+		write("templates/defs.cgen_template", "\\{y\\} z", "\\{x\\} 1", "\\{z\\} 2");
+		write("templates/vars.cgen_template",
+						"$var$ \\{y\\} x",
+						"$vars$ templates/defs.cgen_template",
+						"y x z");
+		GeneratorSettings settings = settings();
+		settings.addFile("vars.c", "vars.cgen_template");
+		GenerationResult result = new Generator(settings).generate();
+
+		// x is no longer a visible value once y is redefined, z is
+		List<String> warnings = new ArrayList<>();
+		result.log().stream().filter(line -> line.contains("overrides parent"))
+						.forEach(warnings::add);
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0), warnings.get(0).startsWith("Warning: Line : 2 : "));
+		assertEquals(Collections.singletonList("z 1 2"), read("TEST/vars.c"));
+	}
+
+	public void testIncrementalGenerationSkipsUnchangedFiles() {
+		GeneratorSettings settings = settings();
+		settings.incremental_generation = true;
+		settings.addFile("list.c", "list.cgen_template");
+		new Generator(settings).generate();
+		GenerationResult result = new Generator(settings).generate();
+
+		assertTrue(result.generatedFiles().isEmpty());
+		assertEquals(Collections.singletonList("list.c"), result.skippedFiles());
+	}
+
+	public void testIncrementalGenerationHashesContent() throws IOException {
+		GeneratorSettings settings = settings();
+		settings.incremental_generation = true;
+		settings.addFile("list.c", "list.cgen_template");
+		new Generator(settings).generate();
+		// same size and modification time, only the content differs
+		Path template = dir.resolve("templates/list.cgen_template");
+		FileTime modified = Files.getLastModifiedTime(template);
+		write("templates/list.cgen_template",
+						"$var$ \\{type\\} unt",
+						"type s#name;",
+						"\t$p-line$ [all] p#name = p#defaultValue;");
+		Files.setLastModifiedTime(template, modified);
+		GenerationResult result = new Generator(settings).generate();
+
+		assertEquals(Collections.singletonList("list.c"), result.generatedFiles());
+		assertEquals("unt TEST;", read("TEST/list.c").get(0));
+	}
+
+	public void testIncrementalGenerationSeesOtherTemplateDir() throws IOException {
+		GeneratorSettings settings = settings();
+		settings.incremental_generation = true;
+		settings.addFile("list.c", "list.cgen_template");
+		new Generator(settings).generate();
+		Files.createDirectories(dir.resolve("other"));
+		write("other/list.cgen_template", "int other;");
+		settings.template_dir = "other/";
+		GenerationResult result = new Generator(settings).generate();
+
+		assertEquals(Collections.singletonList("list.c"), result.generatedFiles());
+		assertEquals(Collections.singletonList("int other;"), read("TEST/list.c"));
+	}
+
+	public void testWriteIfChanged() throws IOException {
+		// keyword failing only for this test's parameter, blocks fill in all keywords
+		Param.addKeyword("p#failure", par -> {
+			if ("failing".equals(par.name)) {
+				throw new IllegalStateException("template failed");
+			}
+			return "";
+		});
+		write("failing.csv", "9,failing,uint8_t,0");
+		for (boolean stream : new boolean[] {false, true}) {
+			GeneratorSettings settings = settings();
+			settings.write_if_changed = true;
+			settings.stream_output = stream;
+			settings.addFile("list.c", "list.cgen_template", "failing.csv");
+			Path output = dir.resolve("TEST/list.c");
+			new Generator(settings).generate();
+			FileTime old = FileTime.fromMillis(
+							Files.getLastModifiedTime(output).toMillis() - 100000);
+			Files.setLastModifiedTime(output, old);
+
+			// same content, the file is left untouched
+			new Generator(settings).generate();
+			assertEquals(old, Files.getLastModifiedTime(output));
+
+			// changed content, the file is replaced
+			write("templates/list.cgen_template", "int changed;");
+			new Generator(settings).generate();
+			assertEquals(Collections.singletonList("int changed;"), read("TEST/list.c"));
+
+			// failing template, the file keeps it's content
+			write("templates/list.cgen_template", "int partial;",
+							"$p-line$ [all] p#failure");
+			GenerationResult result = new Generator(settings).generate();
+			assertFalse(result.success());
+			assertEquals(Collections.singletonList("int changed;"), read("TEST/list.c"));
+			try (Stream<Path> files = Files.list(dir.resolve("TEST"))) {
+				assertEquals(1, files.count());
+			}
+			write("templates/list.cgen_template", "int first;");
+		}
+	}
+
+	public void testLogSettings() throws IOException {
+		write("templates/repeat.cgen_template", "$p-line$ [nope] a", "$p-line$ [nope] a",
+						"$p-line$ [nope] a");
+		GeneratorSettings settings = settings();
+		settings.log_level = "warning";
+		settings.log_repeat_limit = 1;
+		settings.addFile("repeat.c", "repeat.cgen_template");
+		GenerationResult result = new Generator(settings).generate();
+
+		String unknown = "Error: Unknown parameter : nope : Parameter skipped!";
+		assertEquals(Arrays.asList(unknown, "Warning: line logged 1 times, " +
+						"further repeats are left out : " + unknown), result.log());
+		assertEquals(1, result.errors().size());
+	}
+
+	public void testConcurrentRuns() throws Exception {
+		write("templates/repeat.cgen_template", "$p-line$ [nope] a", "$p-line$ [nope] a",
+						"$p-line$ [nope] a");
+		GeneratorSettings errors = settings();
+		errors.log_level = "error";
+		errors.addFile("list.c", "list.cgen_template");
+		errors.addFile("repeat.c", "repeat.cgen_template");
+		GeneratorSettings repeats = settings();
+		repeats.subsystem_name = "OTHER";
+		repeats.log_repeat_limit = 1;
+		repeats.parallel_generation = true;
+		repeats.addFile("list.c", "list.cgen_template");
+		repeats.addFile("repeat.c", "repeat.cgen_template");
+		// the first runs create the directories, later runs warn they exist
+		new Generator(errors).generate();
+		new Generator(repeats).generate();
+		List<String> errorsLog = new Generator(errors).generate().log();
+		List<String> repeatsLog = new Generator(repeats).generate().log();
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 20; i++) {
+				Future<GenerationResult> first = pool.submit(
+								() -> new Generator(errors).generate());
+				Future<GenerationResult> second = pool.submit(
+								() -> new Generator(repeats).generate());
+				assertEquals(errorsLog, first.get().log());
+				assertEquals(repeatsLog, second.get().log());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(3, errorsLog.size());
+		assertTrue(repeatsLog.contains("\nProcessing file : list.c"));
+	}
+
+	public void testParallelGenerationMatchesSequential() throws IOException {
+		write("templates/both.cgen_template",
+						"$template$ list.cgen_template",
+						"$template$ unknown.cgen_template");
+		GeneratorSettings settings = settings();
+		settings.addFile("list.c", "list.cgen_template");
+		settings.addFile("other.c", "list.cgen_template", "other.csv");
+		settings.addFile("unknown.c", "unknown.cgen_template");
+		settings.addFile("both.c", "both.cgen_template", "other.csv");
+		String[] files = {"list.c", "other.c", "unknown.c", "both.c"};
+		// the first run creates the directories, later runs warn they exist
+		new Generator(settings).generate();
+		GenerationResult sequential = new Generator(settings).generate();
+		Map<String, List<String>> code = new HashMap<>();
+		for (String file : files) {
+			code.put(file, read("TEST/" + file));
+		}
+		settings.parallel_generation = true;
+		for (int i = 0; i < 10; i++) {
+			for (String file : files) {
+				Files.delete(dir.resolve("TEST/" + file));
+			}
+			GenerationResult parallel = new Generator(settings).generate();
+
+			assertEquals(sequential.log(), parallel.log());
+			assertEquals(sequential.generatedFiles(), parallel.generatedFiles());
+			for (String file : files) {
+				assertEquals(code.get(file), read("TEST/" + file));
+			}
+		}
+		assertEquals(2, sequential.errors().size());
+		assertEquals(Arrays.asList("int TEST;", "\tgamma = 3;"), code.get("both.c"));
+	}
+
+	public void testRegenerateAffectedFiles() throws IOException {
+		GeneratorSettings settings = settings();
+		settings.addFile("list.c", "list.cgen_template");
+		settings.addFile("unknown.c", "unknown.cgen_template");
+		settings.parallel_generation = true;
+		Generator generator = new Generator(settings);
+		generator.generate();
+		write("templates/list.cgen_template", "int changed;");
+		Path template = dir.resolve("templates/list.cgen_template")
+						.toAbsolutePath().normalize();
+		GenerationResult result = generator.regenerate(
+						Collections.singleton(template));
+
+		assertEquals(Collections.singletonList("list.c"), result.generatedFiles());
+		assertEquals(Collections.singletonList("int changed;"), read("TEST/list.c"));
+		assertNull(generator.regenerate(Collections.singleton(
+						dir.resolve("unused.txt").toAbsolutePath().normalize())));
+	}
+
+	public void testParallelExpansionMatchesSequential() throws IOException {
+		write("templates/alpha.cgen_template", "int p#name;");
+		write("templates/expand.cgen_template",
+						"$p-template$ [alpha|nope|beta|alpha] missing.cgen_template",
+						"$p-template$ [all] p#name.cgen_template",
+						"$p-block$ [all] \\{ p#dataType p#name; \\}");
+		GeneratorSettings settings = settings();
+		settings.addFile("expand.c", "expand.cgen_template");
+		// the first run creates the directories, later runs warn they exist
+		new Generator(settings).generate();
+		List<String> log = null;
+		List<String> code = null;
+		for (int i = 0; i < 10; i++) {
+			// missing templates are created again by each run
+			Files.delete(dir.resolve("templates/missing.cgen_template"));
+			Files.delete(dir.resolve("templates/beta.cgen_template"));
+			settings.parallel_expansion_threshold = 0 == i ? -1 : 1;
+			GenerationResult result = new Generator(settings).generate();
+			if (null == log) {
+				log = result.log();
+				code = read("TEST/expand.c");
+			}
+			assertEquals(log, result.log());
+			assertEquals(code, read("TEST/expand.c"));
+		}
+		assertEquals(Arrays.asList("// Add alpha code section here!",
+						"// Add beta code section here!", "// Add alpha code section here!",
+						"int alpha;", "// Add beta code section here!",
+						"uint8_t alpha;", "uint16_t beta;"), code);
+		assertEquals(2, log.stream().filter(line -> line.contains(" was missing!"))
+						.count());
+		assertEquals(2, log.stream().filter(line -> line.contains(" was empty!"))
+						.count());
+	}
+
+	public void testMetricsReport() {
+		GeneratorSettings settings = settings();
+		settings.metrics = true;
+		settings.addFile("list.c", "list.cgen_template");
+		new Generator(settings).generate();
+
+		JSONObject file = Utilities.readJSONFromFile(
+						dir.resolve("CodeGenerator.metrics.json").toString())
+						.getJSONObject("files").getJSONObject("list.c");
+		assertEquals(3, file.getLong("lines"));
+		assertEquals(30 + 3 * System.lineSeparator().length(), file.getLong("bytes"));
+		assertEquals(2, file.getLong("p-line"));
+		assertFalse(file.getBoolean("skipped"));
+		JSONObject templates = file.getJSONObject("templates");
+		assertEquals(1, templates.length());
+		JSONObject template = templates.getJSONObject(templates.keys().next());
+		assertEquals(1, template.getLong("uses"));
+		assertEquals(1, template.getLong("cache_hits") + template.getLong("cache_misses"));
+		assertEquals(3, template.getLong("lines"));
+	}
+
+	public void testTrace() {
+		GeneratorSettings settings = settings();
+		settings.trace = true;
+		settings.addFile("list.c", "list.cgen_template");
+		new Generator(settings).generate();
+
+		JSONArray events = Utilities.readJSONFromFile(
+						dir.resolve("CodeGenerator.trace.json").toString())
+						.getJSONArray("traceEvents");
+		Map<String, JSONObject> spans = new HashMap<>();
+		for (Object event : events) {
+			JSONObject span = (JSONObject) event;
+			if ("X".equals(span.getString("ph"))) {
+				spans.put(span.getString("cat"), span);
+			}
+		}
+		assertEquals(3, spans.size());
+		JSONObject file = spans.get("file");
+		JSONObject template = spans.get("template");
+		JSONObject pLine = spans.get("p-line");
+		assertEquals("list.c", file.getString("name"));
+		assertEquals("list.cgen_template", template.getString("name"));
+		assertEquals(3, file.getJSONObject("args").getInt("lines"));
+		assertEquals(2, pLine.getJSONObject("args").getInt("lines"));
+		// spans nest by time
+		assertTrue(file.getDouble("ts") <= template.getDouble("ts"));
+		assertTrue(template.getDouble("ts") <= pLine.getDouble("ts"));
+		assertTrue(pLine.getDouble("ts") + pLine.getDouble("dur") <=
+						template.getDouble("ts") + template.getDouble("dur"));
+	}
+
+	private GeneratorSettings settings() {
+		GeneratorSettings settings = new GeneratorSettings();
+		settings.base_directory = dir.toString();
+		settings.subsystem_name = "TEST";
+		return settings;
+	}
+
+	private void write(String fileName, String... lines) throws IOException {
+		Files.write(dir.resolve(fileName), Arrays.asList(lines),
+						StandardCharsets.UTF_8);
+	}
+
+	private List<String> read(String fileName) throws IOException {
+		return Files.readAllLines(dir.resolve(fileName), StandardCharsets.UTF_8);
+	}
+
+	private static List<String> sortedCopy(List<String> list) {
+		List<String> copy = new ArrayList<>(list);
+		Collections.sort(copy);
+		return copy;
+	}
+}
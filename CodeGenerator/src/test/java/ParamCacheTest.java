@@ -0,0 +1,51 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+public class ParamCacheTest extends TestCase {
+	private Path file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = Files.createTempFile("params", ".csv");
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	public void testSharedUntilChanged() throws IOException {
+		write("0,alpha,int,1\n1,beta\n");
+		Utilities.startLogCapture();
+		ParamTable first = read(file.toString(), -1);
+		ParamTable second = read(file.getParent().resolve(".")
+						.resolve(file.getFileName()).toString(), -1);
+		ArrayList<String> log = Utilities.stopLogCapture();
+		assertSame(first, second);
+		assertEquals(1, first.size());
+		// the parse error is logged on each use
+		assertEquals(2, log.size());
+		assertEquals(log.get(0), log.get(1));
+
+		assertNotSame(first, read(file.toString(), 5));
+
+		// same size, only the content differs
+		write("0,alpha,int,2\n1,beta\n");
+		ParamTable changed = read(file.toString(), -1);
+		assertNotSame(first, changed);
+		assertEquals("2", changed.get("alpha").defaultValue);
+	}
+
+	private static ParamTable read(String fileName, int autoIncrementStartId) {
+		return ParamCache.read(fileName, FileHashes.hash(fileName), autoIncrementStartId);
+	}
+
+	private void write(String content) throws IOException {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ParamTableTest extends TestCase {
+	public void testLookupByNameAndId() {
+		ParamTable table = new ParamTable();
+		for (int i = 100; i > 0; i--) {
+			table.add(i, "p" + i, "uint16_t", "0");
+		}
+		assertEquals(100, table.size());
+		assertEquals(42, table.get("p42").id);
+		assertEquals("p42", table.getById(42).name);
+		assertEquals("short", table.get("p42").dType);
+		// lookups share one object per parameter
+		assertSame(table.get("p42"), table.getById(42));
+		assertSame(table.get("p42"), table.byId().get(41));
+		assertSame(table.get("p42"), table.values().get(58));
+		assertFalse(table.contains("p0"));
+		assertNull(table.get("p0"));
+		assertNull(table.getById(0));
+		assertNull(table.getById(101));
+	}
+
+	public void testSameNameReplaces() {
+		ParamTable table = new ParamTable(Arrays.asList(new Param(1, "a", "int", "0"),
+						new Param(2, "b", "int", "0"), new Param(3, "a", "float", "1")));
+		assertEquals(2, table.size());
+		assertEquals(3, table.get("a").id);
+		assertEquals("float", table.get("a").dataType);
+		assertEquals("a", table.values().get(0).name);
+		assertNull(table.getById(1));
+	}
+
+	public void testByIdIsStable() {
+		ParamTable table = new ParamTable(Arrays.asList(new Param(3, "c", "int", "0"),
+						new Param(1, "a", "int", "0"), new Param(3, "d", "int", "0"),
+						new Param(-2, "b", "int", "0"), new Param(1, "e", "int", "0")));
+		assertEquals(Arrays.asList("b", "a", "e", "c", "d"), names(table.byId()));
+		assertEquals("a", table.getById(1).name);
+	}
+
+	public void testSparseIds() {
+		ParamTable table = new ParamTable();
+		for (int i = 0; i < 50; i++) {
+			table.add(i * 100000 - 1000000, "p" + i, "int", "0");
+		}
+		for (int i = 0; i < 50; i++) {
+			assertEquals("p" + i, table.getById(i * 100000 - 1000000).name);
+		}
+		assertNull(table.getById(1));
+		List<Param> byId = table.byId();
+		for (int i = 1; i < byId.size(); i++) {
+			assertTrue(byId.get(i - 1).id < byId.get(i).id);
+		}
+	}
+
+	private static List<String> names(List<Param> params) {
+		ArrayList<String> names = new ArrayList<>();
+		params.forEach(par -> names.add(par.name));
+		return names;
+	}
+}
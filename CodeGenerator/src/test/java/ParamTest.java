@@ -0,0 +1,30 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ParamTest extends TestCase {
+	public void testSortParamsIsStable() {
+		List<Param> params = Arrays.asList(new Param(3, "c", "int", "0"),
+						new Param(1, "a", "int", "0"), new Param(3, "d", "int", "0"),
+						new Param(2, "b", "int", "0"), new Param(1, "e", "int", "0"));
+		ArrayList<String> names = new ArrayList<>();
+		Param.sortParams(params).forEach(par -> names.add(par.name));
+		assertEquals(Arrays.asList("a", "e", "b", "c", "d"), names);
+	}
+
+	public void testFillInParam() {
+		Param par = new Param(26, "p#id", "uint16_t", "p#name");
+		assertEquals("uint16_t p#id = p#name; // 26 1a short p#id_param_id p#",
+						par.fillInParam("p#dataType p#name = p#defaultValue; " +
+										"// p#id p#hexId p#dType p#enumName p#"));
+		assertEquals("no keywords p#", par.fillInParam("no keywords p#"));
+	}
+
+	public void testAddKeywordLongestMatch() {
+		Param.addKeyword("p#nameLength", par -> Integer.toString(par.name.length()));
+		Param par = new Param(1, "speed", "uint8_t", "0");
+		assertEquals("speed 5 p#speed", par.fillInParam("p#name p#nameLength p#p#name"));
+	}
+}
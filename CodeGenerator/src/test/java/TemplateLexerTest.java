@@ -0,0 +1,56 @@
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TemplateLexerTest extends TestCase {
+	private final TemplateLexer lexer = new TemplateLexer("\\.cgen_template");
+
+	public void testTokenize() {
+		assertTokens(lexer.tokenize("\t$p-line$ [a|b] int p#name;"),
+						"INDENT@1:\t", "COMMAND@3:p-line", "TEXT@10: ", "LIST@12:a|b",
+						"TEXT@17:int p#name;");
+		assertTokens(lexer.tokenize("$var$ \\{x\\} 5"),
+						"COMMAND@2:var", "TEXT@6: ", "VARIABLE@9:x", "TEXT@13:5");
+		assertTokens(lexer.tokenize("$p-template$ [all] sub.cgen_template"),
+						"COMMAND@2:p-template", "TEXT@13: ", "LIST@15:all",
+						"FILE@20:sub.cgen_template");
+		assertTokens(lexer.tokenize("int x; $template"), "TEXT@1:int x; $template");
+		assertTokens(lexer.tokenize("  "), "INDENT@1:  ");
+	}
+
+	public void testLeadingText() {
+		assertTokens(lexer.tokenize("price $1 or $2"), "TEXT@1:price ",
+						"COMMAND@8:1 or ", "TEXT@14:2");
+		assertTokens(lexer.tokenize("x $p-block$ [a] \\{"), "TEXT@1:x ",
+						"COMMAND@4:p-block", "TEXT@12: ", "LIST@14:a", "TEXT@16: \\{");
+	}
+
+	public void testSpaceIndentedFile() {
+		assertTokens(lexer.tokenize("    $template$ foo.cgen_template"),
+						"INDENT@1:    ", "COMMAND@6:template", "FILE@16:foo.cgen_template");
+	}
+
+	public void testRegexExtension() {
+		assertNull(TemplateLexer.literal("\\.t[a-z]+"));
+		assertEquals(".cgen_template", TemplateLexer.literal("\\.cgen_template"));
+		TemplateLexer regex = new TemplateLexer("\\.t[a-z]+");
+		assertTrue(regex.hasExtension("$template$ a.tpl"));
+		assertTokens(regex.tokenize("$template$ a.tpl b.txt"),
+						"COMMAND@2:template", "FILE@12:a.tpl b.txt");
+	}
+
+	public void testVariable() {
+		List<TemplateToken> tokens = lexer.variable("\\{name\\} some value");
+		assertEquals(2, tokens.size());
+		assertEquals("name", tokens.get(0).text);
+		assertEquals("some value", tokens.get(1).text);
+		assertTrue(lexer.variable("name value").isEmpty());
+	}
+
+	private static void assertTokens(List<TemplateToken> tokens, String... expected) {
+		assertEquals(tokens.toString(), expected.length, tokens.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], tokens.get(i).toString());
+		}
+	}
+}
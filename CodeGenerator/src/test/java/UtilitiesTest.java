@@ -1,7 +1,165 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
 import junit.framework.TestCase;
 
 public class UtilitiesTest extends TestCase {
 	public void testParseCommand() {
 	
 	}
+
+	public void testReadParamCSV() throws IOException {
+		ParamTable params = readCSV("\uFEFF# id, name, type, value\r\n" +
+						"0,alpha,uint8_t, 4000\r\n" +
+						"\r\n" +
+						"  1 , beta ,\tuint16_t , \" a, \"\"b\"\" \" \n" +
+						"2,gamma,uint32_t,\"x\ny\",ignored\r" +
+						"3,delta,int,7", -1);
+		assertEquals(4, params.size());
+		assertEquals("4000", params.get("alpha").defaultValue);
+		assertEquals(1, params.get("beta").id);
+		assertEquals("uint16_t", params.get("beta").dataType);
+		assertEquals(" a, \"b\" ", params.get("beta").defaultValue);
+		assertEquals("x\ny", params.get("gamma").defaultValue);
+		assertEquals(3, params.getById(3).id);
+	}
+
+	public void testReadParamCSVErrors() throws IOException {
+		Utilities.startLogCapture();
+		ParamTable params = readCSV("0,alpha,uint8_t,1\n" +
+						"1,beta\n" +
+						"x,gamma,int,\"2\n" +
+						"\n" +
+						"3\",delta,int,3\n" +
+						"4,\"epsilon\" e,int,4\n" +
+						"5,zeta,int,5\n", -1);
+		ArrayList<String> log = Utilities.stopLogCapture();
+		assertEquals(3, params.size());
+		assertEquals(0, params.get("gamma").id);
+		assertEquals("2\n\n3", params.get("gamma").defaultValue);
+		assertEquals(5, params.get("zeta").id);
+		assertEquals(3, log.size());
+		assertTrue(log.get(0), log.get(0).startsWith("Error: ") &&
+						log.get(0).contains(" line 2 : expected 4 values, found 2"));
+		assertTrue(log.get(1), log.get(1).contains(" line 3 : Enum value"));
+		assertTrue(log.get(2), log.get(2).contains(" line 6 : unexpected character"));
+	}
+
+	public void testReadParamCSVAutoIncrement() throws IOException {
+		Utilities.startLogCapture();
+		ParamTable params = readCSV("-1,alpha,int,0\n-1,beta,int,0\n", 10);
+		assertTrue(Utilities.stopLogCapture().isEmpty());
+		assertEquals(11, params.get("beta").id);
+
+		Utilities.startLogCapture();
+		readCSV("-1,alpha,int,0\n5,beta,int,0\n", 10);
+		ArrayList<String> log = Utilities.stopLogCapture();
+		assertEquals(1, log.size());
+		assertTrue(log.get(0), log.get(0).startsWith("Warning: auto increment"));
+	}
+
+	public void testReadParamCSVLargeRecords() throws IOException {
+		StringBuilder csv = new StringBuilder();
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			value.append((char) ('a' + i % 26));
+		}
+		for (int i = 0; i < 20; i++) {
+			csv.append(i).append(",p").append(i).append(",int,").append(value).append('\n');
+		}
+		ParamTable params = readCSV(csv.toString(), -1);
+		assertEquals(20, params.size());
+		assertEquals(value.toString(), params.get("p19").defaultValue);
+	}
+
+	public void testLogLevelAndRepeatLimit() {
+		Utilities.clearLog();
+		Utilities.configureLog("warning", 1);
+		try {
+			Utilities.log("Processing file : a");
+			Utilities.log("Warning: missing template");
+			Utilities.log("Error: Unknown parameter : x");
+			Utilities.log("Warning: missing template");
+			Utilities.log("\nWarning: missing template");
+			Utilities.log("Warning: missing template");
+			ArrayList<String> log = Utilities.getLog();
+			assertEquals(4, log.size());
+			assertEquals("Warning: missing template", log.get(0));
+			assertEquals("Error: Unknown parameter : x", log.get(1));
+			assertTrue(log.get(2), log.get(2).startsWith("Warning: line logged 1 times"));
+			assertEquals("\nWarning: missing template", log.get(3));
+		} finally {
+			Utilities.configureLog("info", -1);
+			Utilities.clearLog();
+		}
+	}
+
+	public void testFilteredCapture() {
+		Utilities.startLogCapture(false, new LogFilter("warning", 1));
+		Utilities.log("Processing file : a");
+		Utilities.log("Warning: missing template");
+		Utilities.log(Arrays.asList("Warning: missing template",
+						"Warning: missing template", "Error: Unknown parameter : x"));
+		ArrayList<String> log = Utilities.stopLogCapture();
+		assertEquals(3, log.size());
+		assertEquals("Warning: missing template", log.get(0));
+		assertTrue(log.get(1), log.get(1).startsWith("Warning: line logged 1 times"));
+		assertEquals("Error: Unknown parameter : x", log.get(2));
+	}
+
+	public void testCaptureIsBounded() {
+		Utilities.startLogCapture();
+		for (int i = 0; i < Utilities.LOG_LIMIT + 5; i++) {
+			Utilities.log("line " + i);
+		}
+		ArrayList<String> log = Utilities.stopLogCapture();
+		assertEquals(Utilities.LOG_LIMIT, log.size());
+		assertEquals("line 5", log.get(0));
+	}
+
+	public void testLogIsBounded() {
+		Utilities.clearLog();
+		Utilities.configureLog("error", -1);
+		try {
+			for (int i = 0; i < Utilities.LOG_LIMIT + 5; i++) {
+				Utilities.log("Error: " + i);
+			}
+			ArrayList<String> log = Utilities.getLog();
+			assertEquals(Utilities.LOG_LIMIT, log.size());
+			assertEquals("Error: 5", log.get(0));
+		} finally {
+			Utilities.configureLog("info", -1);
+			Utilities.clearLog();
+		}
+	}
+
+	public void testEchoedLogCapture() {
+		Utilities.clearLog();
+		Utilities.startLogCapture(true);
+		Utilities.log("first");
+		Utilities.startLogCapture();
+		Utilities.log("second");
+		ArrayList<String> inner = Utilities.stopLogCapture();
+		ArrayList<String> outer = Utilities.stopLogCapture();
+		assertEquals(Collections.singletonList("second"), inner);
+		assertEquals(Collections.singletonList("first"), outer);
+		assertEquals(Collections.singletonList("first"), Utilities.getLog());
+		Utilities.clearLog();
+	}
+
+	private static ParamTable readCSV(String content, int autoIncrementStartId)
+					throws IOException {
+		Path file = Files.createTempFile("params", ".csv");
+		try {
+			Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+			return Utilities.readParamCSV(file.toString(), autoIncrementStartId);
+		} finally {
+			Files.delete(file);
+		}
+	}
 }
@@ -0,0 +1,89 @@
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class VariableMatcherTest extends TestCase {
+	public void testLongestMatch() {
+		HashMap<String, String> vars = new HashMap<>();
+		vars.put("bar", "monkey");
+		vars.put("bar madness", "confusing");
+		VariableMatcher matcher = new VariableMatcher(vars);
+		assertEquals("Is this confusing? monkeys",
+						matcher.substitute("Is this bar madness? bars"));
+	}
+
+	public void testLeftToRight() {
+		HashMap<String, String> vars = new HashMap<>();
+		vars.put("aa", "b");
+		VariableMatcher matcher = new VariableMatcher(vars);
+		assertEquals("ba", matcher.substitute("aaa"));
+	}
+
+	public void testValuesInsertedVerbatim() {
+		HashMap<String, String> vars = new HashMap<>();
+		vars.put("bar", "monkey");
+		vars.put("monkey", "chimpanzee");
+		vars.put("a", "b");
+		vars.put("b", "a");
+		VariableMatcher matcher = new VariableMatcher(vars);
+		// values are not searched for variables again
+		assertEquals("monkeys", matcher.substitute("bars"));
+		assertEquals("a b", matcher.substitute("b a"));
+	}
+
+	public void testNullValue() {
+		HashMap<String, String> vars = new HashMap<>();
+		vars.put("foo", null);
+		assertEquals("x  y", new VariableMatcher(vars).substitute("x foo y"));
+	}
+
+	public void testUnchanged() {
+		HashMap<String, String> vars = new HashMap<>();
+		vars.put("foo", "10");
+		VariableMatcher matcher = new VariableMatcher(vars);
+		String line = "nothing to fill in";
+		assertSame(line, matcher.substitute(line));
+		assertEquals("$foo$ 10", matcher.substitute("$foo$ foo", 1, 4));
+	}
+
+	public void testSingleCharacters() {
+		HashMap<String, String> outer = new HashMap<>();
+		outer.put("a", ".-");
+		outer.put("b", "-...");
+		outer.put("s#name", "morse");
+		HashMap<String, String> inner = new HashMap<>();
+		inner.put("b", "inner");
+		inner.put("x", "b");
+		VariableMatcher matcher = VariableMatcher.chain(Arrays.asList(
+						new VariableMatcher(inner), new VariableMatcher(outer)));
+		assertEquals(".- inner b morse s", matcher.substitute("a b x s#name s"));
+		HashMap<String, String> swap = new HashMap<>();
+		swap.put("a", "ab");
+		swap.put("b", "ba");
+		assertEquals("abba", new VariableMatcher(swap).substitute("ab"));
+	}
+
+	public void testChainedLongerNames() {
+		HashMap<String, String> outer = new HashMap<>();
+		outer.put("a", ".-");
+		outer.put("p", ".--.");
+		HashMap<String, String> param = new HashMap<>();
+		param.put("p#name", "alpha");
+		param.put("ab", "both");
+		VariableMatcher parent = VariableMatcher.chain(Arrays.asList(
+						new VariableMatcher(new HashMap<>()), new VariableMatcher(outer)));
+		assertEquals(".- .--.", parent.substitute("a p"));
+		// the parameter frame only adds longer names, also starting with a single
+		VariableMatcher child = VariableMatcher.chain(Arrays.asList(
+						new VariableMatcher(param), parent));
+		assertEquals("alpha .--. both .-", child.substitute("p#name p ab a"));
+		HashMap<String, String> single = new HashMap<>();
+		single.put("p", "inner");
+		VariableMatcher grandChild = VariableMatcher.chain(Arrays.asList(
+						new VariableMatcher(single), child));
+		assertEquals("alpha inner both .-", grandChild.substitute("p#name p ab a"));
+		// the chains don't change the tables they were built from
+		assertEquals(".- .--.", parent.substitute("a p"));
+	}
+}
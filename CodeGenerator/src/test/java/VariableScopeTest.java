@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class VariableScopeTest extends TestCase {
+	public void testShadowing() {
+		VariableScope parent = new VariableScope();
+		parent.put("foo", "parent");
+		parent.put("bar", "monkey");
+		VariableScope child = parent.child();
+		child.put("foo", "child");
+		assertEquals("child monkey", child.matcher().substitute("foo bar"));
+		assertEquals("parent monkey", parent.matcher().substitute("foo bar"));
+		assertNull(parent.child().get("baz"));
+		assertEquals("parent", parent.child().get("foo"));
+	}
+
+	public void testLongestMatchAcrossFrames() {
+		VariableScope parent = new VariableScope();
+		parent.put("bar madness", "confusing");
+		VariableScope child = parent.child();
+		child.put("bar", "monkey");
+		assertEquals("confusing monkeys",
+						child.matcher().substitute("bar madness bars"));
+	}
+
+	public void testMatcherKeptUntilChanged() {
+		VariableScope parent = new VariableScope();
+		parent.put("a", ".-");
+		VariableScope child = parent.child();
+		VariableMatcher matcher = parent.matcher();
+		assertSame(matcher, parent.matcher());
+		// a frame without variables of it's own uses the parent matcher
+		assertSame(matcher, child.matcher());
+		child.put("b", "-...");
+		VariableMatcher childMatcher = child.matcher();
+		assertNotSame(matcher, childMatcher);
+		assertSame(childMatcher, child.matcher());
+		parent.put("c", "-.-.");
+		assertEquals(".- -... -.-.", child.matcher().substitute("a b c"));
+	}
+
+	public void testNestedValues() {
+		VariableScope parent = new VariableScope();
+		parent.put("a", "b");
+		VariableScope child = parent.child();
+		child.put("b", "a");
+		child.put("c", "a");
+		// values are inserted as they are, also across frames
+		assertEquals("b a a", child.matcher().substitute("a b c"));
+		assertFalse(child.containsValue("x"));
+		assertTrue(child.containsValue("a"));
+		// shadowed values are not visible, also after a value is replaced
+		assertTrue(child.containsValue("b"));
+		child.put("a", "x");
+		assertFalse(child.containsValue("b"));
+		assertTrue(child.containsValue("x"));
+		child.put("a", "y");
+		assertFalse(child.containsValue("x"));
+	}
+
+	public void testAttachedTable() {
+		TemplateLexer lexer = new TemplateLexer("\\.cgen_template");
+		VariableTable table = new VariableTable("vars", null, Arrays.asList(
+						"\\{foo\\} table", "no variable", "\\{bar\\} monkey"), lexer);
+		assertEquals(1, table.unnamedLines().length);
+		assertFalse(table.overridesValue("x"::equals));
+		assertTrue(table.overridesValue("bar"::equals));
+
+		VariableScope parent = new VariableScope();
+		parent.put("foo", "parent");
+		VariableScope child = parent.child();
+		child.put("bar", "before");
+		child.attach(table);
+		assertEquals("table monkey", child.matcher().substitute("foo bar"));
+		child.put("foo", "after");
+		assertEquals("after monkey", child.matcher().substitute("foo bar"));
+		assertEquals("monkey", child.get("bar"));
+		assertEquals("parent", parent.get("foo"));
+		assertEquals("after", child.get("foo"));
+		assertFalse(child.containsValue("table"));
+		assertFalse(child.containsValue("before"));
+		assertTrue(child.containsValue("monkey"));
+		// as if shadowed by later definitions, which are not checked themselves
+		assertFalse(child.containsValue("monkey",
+						Collections.singletonMap("bar", "monkey")));
+		assertTrue(child.containsValue("after", Collections.singletonMap("bar", "")));
+		// the shared table is not changed by later definitions
+		assertEquals("table", table.variables().get("foo"));
+	}
+}
@@ -0,0 +1,105 @@
+#include "parameters.h"
+// satellite parameter definitions
+#include "satellite.h"
+#include "devices.h"
+#include <stdint.h>
+// contains utility functions for conversion between parameter data types.
+#include "packet_utilities.h"
+
+/*
+ * Defines a mem_pool struct containing all the parameters that are required
+ * by this subsystem.
+ */
+struct parameters_memory_pool {
+		uint16_t testing_2;
+		uint32_t testing_4;
+		uint32_t SBSYS_sensor_loop;
+} mem_pool;
+
+/*
+ * Can be called to (re)set all parameters of this subsystem to default values.
+ */
+void init_parameters() {
+		mem_pool.testing_2 = 0xCAFE;
+		mem_pool.testing_4 = 0xDEADBEEF;
+		mem_pool.SBSYS_sensor_loop = 100000;
+}
+
+/*
+ * Returns the current values of the requested parameter id. The pid argument
+ * defines the requested parameter, the *value, *buf and *size pointer
+ * arguments are used as output for the return values.
+ *
+ * pid : parameter id (input)
+ * *value : parameter value in it's original data type (output)
+ * *buf : value of parameter as a uint8_t representation (output)
+ * *size : size in bytes of the data type stored in *(*value) (output)
+ */
+void get_parameter(param_id pid, void *value, uint8_t *buf, uint16_t *size) {
+	switch (pid) {
+		case testing_2_param_id :
+			*((uint16_t*)value) = mem_pool.testing_2;
+			cnv16_8(mem_pool.testing_2, buf);
+			*size = 2;
+			break;
+		case testing_4_param_id :
+			*((uint32_t*)value) = mem_pool.testing_4;
+			cnv32_8(mem_pool.testing_4, buf);
+			*size = 4;
+			break;
+		case SBSYS_sensor_loop_param_id :
+			*((uint32_t*)value) = mem_pool.SBSYS_sensor_loop;
+			cnv32_8(mem_pool.SBSYS_sensor_loop, buf);
+			*size = 4;
+			break;
+		case adb_sensor_status_param_id :
+			// Add adb_sensor_status code section here!
+			break;
+		case adb_int_temp_param_id :
+			// Add adb_int_temp code section here!
+			break;
+		case adb_deb_param_id :
+			// Add adb_deb code section here!
+			break;
+		case SBSYS_reset_clr_int_wdg_param_id :
+			// Add SBSYS_reset_clr_int_wdg code section here!
+			break;
+		case SBSYS_reset_cmd_int_wdg_param_id :
+			// Add SBSYS_reset_cmd_int_wdg code section here!
+			break;
+		default :
+			*size = 0;
+	}
+}
+
+/*
+ * Updates the local value to the specified value for the specified parameter id.
+ */
+bool set_parameter(param_id pid, void* value) {{
+	bool res = true;
+	switch (pid) {
+
+		case adb_deb_param_id : {
+			// Add adb_deb code section here!
+			break;
+		}
+		case SBSYS_reset_clr_int_wdg_param_id : {
+			// Add SBSYS_reset_clr_int_wdg code section here!
+			break;
+		}
+		case SBSYS_reset_cmd_int_wdg_param_id : {
+			// Add SBSYS_reset_cmd_int_wdg code section here!
+			break;
+		}
+		case SBSYS_sensor_loop_param_id : {
+			uint8_t *buf;
+			buf = (uint8_t*)value;
+			cnv8_32LE(&buf[0], &mem_pool.SBSYS_sensor_loop );
+			break;
+		}
+		default :
+			res = false;
+	}
+
+	return res;
+}
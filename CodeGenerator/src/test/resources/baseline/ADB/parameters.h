@@ -0,0 +1,15 @@
+#ifndef __PARAMETERS_H
+#define __PARAMETERS_H
+
+#include "satellite.h"
+#include "packet_engine.h"
+#include "satellite_ids.h"
+#include "PQ9_bus_engine.h"
+
+void init_parameters();
+
+void get_parameter(param_id pid, void* value, uint8_t *buf, uint16_t *size);
+
+bool set_parameter(param_id pid, void* value);
+
+#endif